@@ -90,6 +90,7 @@ public class TransactionCoordinator implements RemoteCoordinator, TransactionBea
 			transaction.setTransactionTimeout((int) timeoutMillis);
 
 			transactionRepository.putTransaction(globalXid, transaction);
+			this.beanFactory.getTransactionTimer().startTiming(transaction);
 			logger.info("{}> begin-participant", ByteUtils.byteArrayToString(globalXid.getGlobalTransactionId()));
 		}
 
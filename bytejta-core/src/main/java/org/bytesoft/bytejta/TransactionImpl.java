@@ -20,6 +20,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.transaction.HeuristicCommitException;
 import javax.transaction.HeuristicMixedException;
@@ -75,6 +77,13 @@ public class TransactionImpl implements Transaction {
 	private transient boolean timing = true;
 	private TransactionBeanFactory beanFactory;
 
+	/* presumed-abort: nothing is logged until the commit decision has been made. */
+	private boolean presumedAbort;
+	private Executor terminatorExecutor; // drives the branches of a phase in parallel if specified
+	private Executor secondPhaseExecutor; // commits the branches in background once the decision is logged
+	private volatile boolean secondPhaseDeferred;
+	private transient boolean archived;
+
 	private TransactionStrategy transactionStrategy;
 
 	private int transactionStatus;
@@ -432,6 +441,7 @@ public class TransactionImpl implements Transaction {
 		TransactionArchive archive = this.getTransactionArchive();
 		this.transactionListenerList.onCommitStart(xid);
 		transactionLogger.updateTransaction(archive);
+		this.archived = true;
 
 		boolean unFinishExists = true;
 		try {
@@ -561,11 +571,19 @@ public class TransactionImpl implements Transaction {
 		this.transactionStatus = Status.STATUS_PREPARING;// .setStatusPreparing();
 
 		TransactionArchive archive = this.getTransactionArchive();// new TransactionArchive();
-		transactionLogger.createTransaction(archive);
+
+		// nobody asks a remote participant to abort its in-doubt branch, so its transaction is logged before prepare.
+		this.presumedAbort = this.presumedAbort && this.remoteParticipantList.isEmpty();
+		TransactionStrategy currentStrategy = this.getTransactionStrategy();
+
+		// the last resource is committed while preparing, so the decision has to be logged before that.
+		this.presumedAbort = this.presumedAbort && LastResourceOptimizeStrategy.class.isInstance(currentStrategy) == false;
+		if (this.presumedAbort == false) {
+			transactionLogger.createTransaction(archive);
+		} // end-if (this.presumedAbort == false)
 
 		this.transactionListenerList.onPrepareStart(xid);
 
-		TransactionStrategy currentStrategy = this.getTransactionStrategy();
 		int vote = XAResource.XA_RDONLY;
 		try {
 			vote = currentStrategy.prepare(xid);
@@ -602,7 +620,9 @@ public class TransactionImpl implements Transaction {
 			logger.info("{}> prepare-participant & commit-participant complete successfully",
 					ByteUtils.byteArrayToString(xid.getGlobalTransactionId()));
 
-			transactionLogger.updateTransaction(archive);
+			if (this.isArchiveRequired()) {
+				transactionLogger.updateTransaction(archive);
+			} // end-if (this.isArchiveRequired())
 		} else {
 			// this.transactionStatus = Status.STATUS_PREPARED;// .setStatusPrepared();
 
@@ -614,33 +634,93 @@ public class TransactionImpl implements Transaction {
 			archive.setVote(this.transactionVote);
 			archive.setStatus(this.transactionStatus);
 			this.transactionListenerList.onCommitStart(xid);
-			transactionLogger.updateTransaction(archive);
-
-			try {
-				currentStrategy.commit(xid, false);
-			} catch (HeuristicMixedException ex) {
-				this.transactionListenerList.onCommitHeuristicMixed(xid);
-				throw ex;
-			} catch (HeuristicRollbackException ex) {
-				this.transactionListenerList.onCommitHeuristicRolledback(xid);
-				throw ex;
-			} catch (SystemException ex) {
-				this.transactionListenerList.onCommitFailure(xid);
-				throw ex;
-			} catch (RuntimeException ex) {
-				this.transactionListenerList.onCommitFailure(xid);
-				throw ex;
+			if (this.isArchiveRequired()) {
+				transactionLogger.updateTransaction(archive);
+			} else {
+				transactionLogger.createTransaction(archive); // the commit decision
+				this.archived = true;
 			}
 
+			if (this.secondPhaseExecutor != null) {
+				this.secondPhaseDeferred = true;
+				try {
+					this.secondPhaseExecutor.execute(new Runnable() {
+						public void run() {
+							fireSecondPhaseQuietly();
+						}
+					});
+					logger.info("{}> commit-participant deferred", ByteUtils.byteArrayToString(xid.getGlobalTransactionId()));
+					return;
+				} catch (RejectedExecutionException rex) {
+					this.secondPhaseDeferred = false; // all the workers are busy, commit the branches in place
+					logger.debug("{}> commit-participant not deferred, the second-phase executor is saturated",
+							ByteUtils.byteArrayToString(xid.getGlobalTransactionId()));
+				}
+			} // end-if (this.secondPhaseExecutor != null)
+
+			this.fireSecondPhase();
+		} // end-else-if (vote == XAResource.XA_RDONLY)
+
+	}
+
+	/* the commit decision has been logged, the outcome can only be committed from now on. */
+	private void fireSecondPhase() throws HeuristicRollbackException, HeuristicMixedException, SystemException {
+		TransactionLogger transactionLogger = beanFactory.getTransactionLogger();
+		TransactionXid xid = this.transactionContext.getXid();
+		TransactionArchive archive = this.getTransactionArchive();
+		TransactionStrategy currentStrategy = this.getTransactionStrategy();
+
+		try {
+			currentStrategy.commit(xid, false);
+		} catch (HeuristicMixedException ex) {
+			this.transactionListenerList.onCommitHeuristicMixed(xid);
+			throw ex;
+		} catch (HeuristicRollbackException ex) {
+			this.transactionListenerList.onCommitHeuristicRolledback(xid);
+			throw ex;
+		} catch (SystemException ex) {
+			this.transactionListenerList.onCommitFailure(xid);
+			throw ex;
+		} catch (RuntimeException ex) {
+			this.transactionListenerList.onCommitFailure(xid);
+			throw ex;
+		}
+
+		synchronized (this) {
 			this.transactionStatus = Status.STATUS_COMMITTED; // Status.STATUS_COMMITTED;
 			archive.setStatus(this.transactionStatus);
 			this.transactionListenerList.onCommitSuccess(xid);
 			transactionLogger.updateTransaction(archive);
+		}
 
-			logger.info("{}> commit-participant complete successfully",
-					ByteUtils.byteArrayToString(xid.getGlobalTransactionId()));
-		} // end-else-if (vote == XAResource.XA_RDONLY)
+		logger.info("{}> commit-participant complete successfully", ByteUtils.byteArrayToString(xid.getGlobalTransactionId()));
+	}
 
+	/**
+	 * Runs on the second-phase executor without holding the monitor of the transaction, so that the committing thread
+	 * is not blocked in fireAfterTransactionCompletion while the branches are committed. The strategy has been fixed
+	 * by the prepare phase and nothing else changes the participants once the decision is logged. The caller has
+	 * been told that the transaction is committed, so every failure, heuristic ones included, is left to the recovery.
+	 */
+	private void fireSecondPhaseQuietly() {
+		TransactionRepository transactionRepository = beanFactory.getTransactionRepository();
+		TransactionXid xid = this.transactionContext.getXid();
+		try {
+			this.fireSecondPhase();
+			this.forgetQuietly(); // forget transaction
+		} catch (HeuristicMixedException hmex) {
+			logger.error("Error occurred while committing transaction.", hmex);
+			transactionRepository.putErrorTransaction(xid, this);
+		} catch (HeuristicRollbackException hrex) {
+			logger.error("Error occurred while committing transaction.", hrex);
+			transactionRepository.putErrorTransaction(xid, this);
+		} catch (SystemException ex) {
+			logger.error("Error occurred while committing transaction.", ex);
+			transactionRepository.putErrorTransaction(xid, this);
+		} catch (RuntimeException rex) {
+			logger.error("Error occurred while committing transaction.", rex);
+			transactionRepository.putErrorTransaction(xid, this);
+		}
 	}
 
 	public synchronized boolean delistResource(XAResource xaRes, int flag) throws IllegalStateException, SystemException {
@@ -1027,7 +1107,9 @@ public class TransactionImpl implements Transaction {
 		this.transactionStatus = Status.STATUS_ROLLING_BACK;
 		TransactionArchive archive = this.getTransactionArchive();
 		this.transactionListenerList.onRollbackStart(xid);
-		transactionLogger.updateTransaction(archive); // don't create!
+		if (this.isArchiveRequired()) {
+			transactionLogger.updateTransaction(archive); // don't create!
+		} // end-if (this.isArchiveRequired())
 
 		try {
 			TransactionStrategy currentStrategy = this.getTransactionStrategy();
@@ -1055,7 +1137,9 @@ public class TransactionImpl implements Transaction {
 		this.transactionStatus = Status.STATUS_ROLLEDBACK; // Status.STATUS_ROLLEDBACK;
 		archive.setStatus(this.transactionStatus);
 		this.transactionListenerList.onRollbackSuccess(xid);
-		transactionLogger.updateTransaction(archive);
+		if (this.isArchiveRequired()) {
+			transactionLogger.updateTransaction(archive);
+		} // end-if (this.isArchiveRequired())
 
 		logger.info("{}> rollback-participant complete successfully",
 				ByteUtils.byteArrayToString(xid.getGlobalTransactionId()));
@@ -1122,7 +1206,9 @@ public class TransactionImpl implements Transaction {
 	}
 
 	public synchronized void fireAfterTransactionCompletion() {
-		this.synchronizationList.afterCompletion(this.transactionStatus);
+		// the outcome of a deferred second phase is fixed, and recovery completes it if the background commit fails.
+		int status = this.secondPhaseDeferred ? Status.STATUS_COMMITTED : this.transactionStatus;
+		this.synchronizationList.afterCompletion(status);
 	}
 
 	public void delistAllResourceQuietly() {
@@ -1229,8 +1315,10 @@ public class TransactionImpl implements Transaction {
 		if (unPrepareExists == false) {
 			this.transactionStatus = Status.STATUS_PREPARED;
 
-			TransactionArchive archive = this.getTransactionArchive();
-			transactionLogger.updateTransaction(archive);
+			if (this.isArchiveRequired()) {
+				TransactionArchive archive = this.getTransactionArchive();
+				transactionLogger.updateTransaction(archive);
+			} // end-if (this.isArchiveRequired())
 		}
 
 	}
@@ -1303,8 +1391,10 @@ public class TransactionImpl implements Transaction {
 		if (unRollbackExists == false) {
 			this.transactionStatus = Status.STATUS_ROLLEDBACK;
 
-			TransactionArchive archive = this.getTransactionArchive();
-			transactionLogger.updateTransaction(archive);
+			if (this.isArchiveRequired()) {
+				TransactionArchive archive = this.getTransactionArchive();
+				transactionLogger.updateTransaction(archive);
+			} // end-if (this.isArchiveRequired())
 		}
 
 	}
@@ -1361,6 +1451,11 @@ public class TransactionImpl implements Transaction {
 		return xidRecovered;
 	}
 
+	/* a presumed-abort transaction is archived only after its commit decision has been logged. */
+	private boolean isArchiveRequired() {
+		return this.presumedAbort == false || this.archived;
+	}
+
 	public synchronized void forgetQuietly() {
 		TransactionXid xid = this.transactionContext.getXid();
 		try {
@@ -1382,10 +1477,13 @@ public class TransactionImpl implements Transaction {
 
 		this.cleanup(); // forget branch-transaction has been hueristic completed.
 
+		this.beanFactory.getTransactionTimer().stopTiming(this); // participants are timed from start on
 		repository.removeErrorTransaction(xid);
 		repository.removeTransaction(xid);
 
-		transactionLogger.deleteTransaction(this.getTransactionArchive());
+		if (this.isArchiveRequired()) {
+			transactionLogger.deleteTransaction(this.getTransactionArchive());
+		} // end-if (this.isArchiveRequired())
 	}
 
 	public synchronized void cleanup() throws SystemException {
@@ -1517,10 +1615,14 @@ public class TransactionImpl implements Transaction {
 		} else if (this.participant == null) /* TODO: LRO */ {
 			XATerminatorImpl nativeTerminator = new XATerminatorImpl();
 			nativeTerminator.setBeanFactory(this.beanFactory);
+			nativeTerminator.setPresumedAbort(this.presumedAbort);
+			nativeTerminator.setExecutor(this.terminatorExecutor);
 			nativeTerminator.getResourceArchives().addAll(this.nativeParticipantList);
 
 			XATerminatorImpl remoteTerminator = new XATerminatorImpl();
 			remoteTerminator.setBeanFactory(this.beanFactory);
+			remoteTerminator.setPresumedAbort(this.presumedAbort);
+			remoteTerminator.setExecutor(this.terminatorExecutor);
 			remoteTerminator.getResourceArchives().addAll(this.remoteParticipantList);
 
 			if (nativeResNum == 0) {
@@ -1528,7 +1630,9 @@ public class TransactionImpl implements Transaction {
 			} else if (remoteResNum == 0) {
 				transactionStrategy = new SimpleTransactionStrategy(nativeTerminator);
 			} else {
-				transactionStrategy = new CommonTransactionStrategy(nativeTerminator, remoteTerminator);
+				CommonTransactionStrategy commonStrategy = new CommonTransactionStrategy(nativeTerminator, remoteTerminator);
+				commonStrategy.setExecutor(this.terminatorExecutor);
+				transactionStrategy = commonStrategy;
 			}
 
 		} else {
@@ -1538,6 +1642,7 @@ public class TransactionImpl implements Transaction {
 
 			XATerminatorImpl terminatorTwo = new XATerminatorImpl();
 			terminatorTwo.setBeanFactory(this.beanFactory);
+			terminatorTwo.setExecutor(this.terminatorExecutor);
 			terminatorTwo.getResourceArchives().addAll(this.nativeParticipantList);
 			terminatorTwo.getResourceArchives().addAll(this.remoteParticipantList);
 
@@ -1668,6 +1773,34 @@ public class TransactionImpl implements Transaction {
 		return transactionContext;
 	}
 
+	public boolean isPresumedAbort() {
+		return presumedAbort;
+	}
+
+	public void setPresumedAbort(boolean presumedAbort) {
+		this.presumedAbort = presumedAbort;
+	}
+
+	public Executor getTerminatorExecutor() {
+		return terminatorExecutor;
+	}
+
+	public void setTerminatorExecutor(Executor terminatorExecutor) {
+		this.terminatorExecutor = terminatorExecutor;
+	}
+
+	public Executor getSecondPhaseExecutor() {
+		return secondPhaseExecutor;
+	}
+
+	public void setSecondPhaseExecutor(Executor secondPhaseExecutor) {
+		this.secondPhaseExecutor = secondPhaseExecutor;
+	}
+
+	public boolean isSecondPhaseDeferred() {
+		return secondPhaseDeferred;
+	}
+
 	public boolean isTiming() {
 		return timing;
 	}
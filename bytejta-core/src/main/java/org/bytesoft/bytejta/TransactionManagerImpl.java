@@ -15,11 +15,16 @@
  */
 package org.bytesoft.bytejta;
 
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.transaction.HeuristicMixedException;
 import javax.transaction.HeuristicRollbackException;
@@ -30,6 +35,7 @@ import javax.transaction.Status;
 import javax.transaction.SystemException;
 import javax.transaction.xa.Xid;
 
+import org.bytesoft.bytejta.xa.XidFactoryImpl;
 import org.bytesoft.common.utils.ByteUtils;
 import org.bytesoft.transaction.RollbackRequiredException;
 import org.bytesoft.transaction.Transaction;
@@ -49,6 +55,7 @@ import org.slf4j.LoggerFactory;
 public class TransactionManagerImpl
 		implements TransactionManager, TransactionTimer, TransactionBeanFactoryAware, TransactionDebuggable {
 	static final Logger logger = LoggerFactory.getLogger(TransactionManagerImpl.class);
+	static final long MIN_TIMING_PRECISION = 10L;
 
 	@javax.inject.Inject
 	private TransactionBeanFactory beanFactory;
@@ -56,12 +63,31 @@ public class TransactionManagerImpl
 	private final Map<Thread, Transaction> thread2txMap = new ConcurrentHashMap<Thread, Transaction>();
 	private final Map<Xid, Transaction> xid2txMap = new ConcurrentHashMap<Xid, Transaction>();
 	private boolean debuggingEnabled;
+	private boolean presumedAbort;
+	private int terminatorParallelism; // 0: the branches of a phase are driven one after another
+	private volatile ThreadPoolExecutor terminatorExecutor;
+	private int secondPhaseThreads; // 0: commit returns after all the branches have been committed
+	private volatile ThreadPoolExecutor secondPhaseExecutor;
+	private long timingPrecision = 1000L; // millis of one tick of the timing wheel
+	private volatile TransactionTimingWheel timingWheel;
 
 	public void begin() throws NotSupportedException, SystemException {
 		if (this.getTransaction() != null) {
 			throw new NotSupportedException();
 		}
 
+		TransactionImpl transaction = this.createTransaction();
+		this.associateThread(transaction);
+		TransactionRepository transactionRepository = this.beanFactory.getTransactionRepository();
+		transactionRepository.putTransaction(transaction.getTransactionContext().getXid(), transaction);
+		this.startTiming(transaction);
+		// this.transactionStatistic.fireBeginTransaction(transaction);
+
+		logger.info("{}> begin-transaction",
+				ByteUtils.byteArrayToString(transaction.getTransactionContext().getXid().getGlobalTransactionId()));
+	}
+
+	private TransactionImpl createTransaction() {
 		XidFactory xidFactory = this.beanFactory.getXidFactory();
 		RemoteCoordinator transactionCoordinator = (RemoteCoordinator) this.beanFactory.getNativeParticipant();
 
@@ -76,22 +102,25 @@ public class TransactionManagerImpl
 		transactionContext.setExpiredTime(expiredTime);
 
 		TransactionXid globalXid = xidFactory.createGlobalXid();
+		if (this.presumedAbort) {
+			byte[] globalTransactionId = XidFactoryImpl.setInstanceBytes(globalXid.getGlobalTransactionId(),
+					transactionCoordinator.getIdentifier());
+			globalXid = xidFactory.createGlobalXid(globalTransactionId);
+		} // end-if (this.presumedAbort)
 		transactionContext.setXid(globalXid);
 
 		TransactionImpl transaction = new TransactionImpl(transactionContext);
 		transaction.setBeanFactory(this.beanFactory);
 		transaction.setTransactionTimeout(this.timeoutSeconds);
+		transaction.setPresumedAbort(this.presumedAbort);
+		transaction.setTerminatorExecutor(this.getTerminatorExecutor());
+		transaction.setSecondPhaseExecutor(this.getSecondPhaseExecutor());
 
 		if (this.debuggingEnabled) {
 			transaction.setCreatedAt(new Exception());
 		} // end-if (this.debuggingEnabled)
 
-		this.associateThread(transaction);
-		TransactionRepository transactionRepository = this.beanFactory.getTransactionRepository();
-		transactionRepository.putTransaction(globalXid, transaction);
-		// this.transactionStatistic.fireBeginTransaction(transaction);
-
-		logger.info("{}> begin-transaction", ByteUtils.byteArrayToString(globalXid.getGlobalTransactionId()));
+		return transaction;
 	}
 
 	public void commit() throws RollbackException, HeuristicMixedException, HeuristicRollbackException, SecurityException,
@@ -153,7 +182,9 @@ public class TransactionManagerImpl
 
 		try {
 			transaction.commit();
-			transaction.forgetQuietly(); // forget transaction
+			if (this.isSecondPhaseDeferred(transaction) == false) {
+				transaction.forgetQuietly(); // forget transaction
+			} // end-if (this.isSecondPhaseDeferred(transaction) == false)
 		} catch (IllegalStateException ex) {
 			logger.error("Error occurred while committing transaction.", ex);
 			transactionRepository.putErrorTransaction(transactionXid, transaction);
@@ -336,27 +367,19 @@ public class TransactionManagerImpl
 			// ignore
 		} else {
 			((TransactionImpl) transaction).changeTransactionTimeout(seconds * 1000);
+			this.startTiming(transaction);
 		}
 	}
 
 	public void timingExecution() {
-		List<Transaction> expiredTransactions = new ArrayList<Transaction>();
-		List<Transaction> activeTransactions = new ArrayList<Transaction>(this.thread2txMap.values());
-		long current = System.currentTimeMillis();
-		Iterator<Transaction> activeItr = activeTransactions.iterator();
-		while (activeItr.hasNext()) {
-			Transaction transaction = activeItr.next();
-			if (transaction.isTiming()) {
-				TransactionContext transactionContext = transaction.getTransactionContext();
-				if (transactionContext.getExpiredTime() <= current) {
-					expiredTransactions.add(transaction);
-				}
-			} // end-if (transaction.isTiming())
-		}
+		/* an extended timeout has been rescheduled by startTiming, so an expired one is not checked again. */
+		List<Transaction> expiredTransactions = this.getTimingWheel().advance();
+		for (int i = 0; i < expiredTransactions.size(); i++) {
+			Transaction transaction = expiredTransactions.get(i);
+			if (transaction.isTiming() == false) {
+				continue;
+			}
 
-		Iterator<Transaction> expiredItr = expiredTransactions.iterator();
-		while (activeItr.hasNext()) {
-			Transaction transaction = expiredItr.next();
 			if (transaction.getTransactionStatus() == Status.STATUS_ACTIVE
 					|| transaction.getTransactionStatus() == Status.STATUS_MARKED_ROLLBACK) {
 				this.timingRollback(transaction);
@@ -384,10 +407,28 @@ public class TransactionManagerImpl
 		}
 	}
 
+	public void startTiming(Transaction transaction) {
+		TransactionContext transactionContext = transaction.getTransactionContext();
+		long delayMillis = transactionContext.getExpiredTime() - System.currentTimeMillis();
+		this.getTimingWheel().schedule(transaction, delayMillis);
+	}
+
 	public void stopTiming(Transaction transaction) {
 		if (TransactionImpl.class.isInstance(transaction)) {
 			((TransactionImpl) transaction).stopTiming();
 		}
+		this.getTimingWheel().cancel(transaction);
+	}
+
+	private TransactionTimingWheel getTimingWheel() {
+		if (this.timingWheel == null) {
+			synchronized (this) {
+				if (this.timingWheel == null) {
+					this.timingWheel = new TransactionTimingWheel(this.timingPrecision);
+				} // end-if (this.timingWheel == null)
+			}
+		}
+		return this.timingWheel;
 	}
 
 	public boolean isDebuggingEnabled() {
@@ -398,6 +439,93 @@ public class TransactionManagerImpl
 		this.debuggingEnabled = debuggingEnabled;
 	}
 
+	/* the transaction is forgotten by the second-phase executor once its branches have been committed. */
+	private boolean isSecondPhaseDeferred(Transaction transaction) {
+		return TransactionImpl.class.isInstance(transaction) && ((TransactionImpl) transaction).isSecondPhaseDeferred();
+	}
+
+	private Executor getTerminatorExecutor() {
+		if (this.terminatorParallelism <= 0) {
+			return null;
+		} else if (this.terminatorExecutor == null) {
+			synchronized (this) {
+				if (this.terminatorExecutor == null) {
+					this.terminatorExecutor = this.createExecutor("bytejta-terminator-", this.terminatorParallelism,
+							new ThreadPoolExecutor.CallerRunsPolicy());
+				} // end-if (this.terminatorExecutor == null)
+			}
+		}
+		return this.terminatorExecutor;
+	}
+
+	private Executor getSecondPhaseExecutor() {
+		if (this.secondPhaseThreads <= 0) {
+			return null;
+		} else if (this.secondPhaseExecutor == null) {
+			synchronized (this) {
+				if (this.secondPhaseExecutor == null) {
+					this.secondPhaseExecutor = this.createExecutor("bytejta-second-phase-", this.secondPhaseThreads,
+							new ThreadPoolExecutor.AbortPolicy()); // the committing thread runs it once saturated
+				} // end-if (this.secondPhaseExecutor == null)
+			}
+		}
+		return this.secondPhaseExecutor;
+	}
+
+	/* bounded, the handler decides what happens to a task once all the threads are busy. */
+	private ThreadPoolExecutor createExecutor(String prefix, int threads, RejectedExecutionHandler handler) {
+		return new ThreadPoolExecutor(0, threads, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				this.createThreadFactory(prefix), handler);
+	}
+
+	private ThreadFactory createThreadFactory(final String prefix) {
+		final AtomicInteger counter = new AtomicInteger();
+		return new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	public int getTerminatorParallelism() {
+		return terminatorParallelism;
+	}
+
+	public void setTerminatorParallelism(int terminatorParallelism) {
+		this.terminatorParallelism = terminatorParallelism;
+	}
+
+	public int getSecondPhaseThreads() {
+		return secondPhaseThreads;
+	}
+
+	public void setSecondPhaseThreads(int secondPhaseThreads) {
+		this.secondPhaseThreads = secondPhaseThreads;
+	}
+
+	public long getTimingPrecision() {
+		return timingPrecision;
+	}
+
+	/* the timer runs about every 100 millis, a finer tick only makes each run step through more empty slots. */
+	public void setTimingPrecision(long timingPrecision) {
+		if (timingPrecision < MIN_TIMING_PRECISION) {
+			throw new IllegalArgumentException(
+					String.format("The timingPrecision must not be less than %s millis.", MIN_TIMING_PRECISION));
+		}
+		this.timingPrecision = timingPrecision;
+	}
+
+	public boolean isPresumedAbort() {
+		return presumedAbort;
+	}
+
+	public void setPresumedAbort(boolean presumedAbort) {
+		this.presumedAbort = presumedAbort;
+	}
+
 	public int getTimeoutSeconds() {
 		return timeoutSeconds;
 	}
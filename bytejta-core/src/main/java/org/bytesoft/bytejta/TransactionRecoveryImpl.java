@@ -15,15 +15,24 @@
  */
 package org.bytesoft.bytejta;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.transaction.Status;
 import javax.transaction.SystemException;
+import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
 
 import org.apache.commons.lang3.StringUtils;
+import org.bytesoft.bytejta.supports.resource.CommonResourceDescriptor;
 import org.bytesoft.bytejta.supports.resource.RemoteResourceDescriptor;
+import org.bytesoft.bytejta.xa.XidFactoryImpl;
 import org.bytesoft.common.utils.ByteUtils;
 import org.bytesoft.common.utils.CommonUtils;
 import org.bytesoft.transaction.CommitRequiredException;
@@ -39,8 +48,10 @@ import org.bytesoft.transaction.aware.TransactionBeanFactoryAware;
 import org.bytesoft.transaction.logging.TransactionLogger;
 import org.bytesoft.transaction.recovery.TransactionRecoveryCallback;
 import org.bytesoft.transaction.recovery.TransactionRecoveryListener;
+import org.bytesoft.transaction.remote.RemoteCoordinator;
 import org.bytesoft.transaction.remote.RemoteSvc;
 import org.bytesoft.transaction.supports.resource.XAResourceDescriptor;
+import org.bytesoft.transaction.supports.serialize.XAResourceDeserializer;
 import org.bytesoft.transaction.xa.TransactionXid;
 import org.bytesoft.transaction.xa.XidFactory;
 import org.slf4j.Logger;
@@ -54,22 +65,30 @@ public class TransactionRecoveryImpl implements TransactionRecovery, Transaction
 	@javax.inject.Inject
 	private TransactionBeanFactory beanFactory;
 	private volatile boolean initialized;
+	private long retryInterval = SECOND_MILLIS * 60L; // the least delay before a failed recovery is retried
+
+	private boolean presumedAbort;
+	private List<String> presumedAbortResources = new ArrayList<String>();
+	private final Set<TransactionXid> indoubtXids = new HashSet<TransactionXid>();
 
 	public synchronized void timingRecover() {
 		TransactionRepository transactionRepository = beanFactory.getTransactionRepository();
-		List<Transaction> transactions = transactionRepository.getErrorTransactionList();
-		int total = transactions == null ? 0 : transactions.size(), value = 0;
-		for (int i = 0; transactions != null && i < transactions.size(); i++) {
+		long current = System.currentTimeMillis();
+		List<Transaction> transactions = transactionRepository.pollErrorTransactionList(current);
+		int total = 0, value = 0;
+		for (int i = 0; i < transactions.size(); i++) {
 			Transaction transaction = transactions.get(i);
 			TransactionContext transactionContext = transaction.getTransactionContext();
 			TransactionXid xid = transactionContext.getXid();
-			int recoveredTimes = transactionContext.getRecoveredTimes() > 10 ? 10 : transactionContext.getRecoveredTimes();
-			long recoverMillis = transactionContext.getCreatedTime() + SECOND_MILLIS * 60L * (long) Math.pow(2, recoveredTimes);
 
-			if (System.currentTimeMillis() < recoverMillis) {
+			long recoverMillis = this.getRecoverMillis(transactionContext);
+			if (current < recoverMillis) {
+				transactionRepository.rescheduleErrorTransactionIfPresent(xid, transaction,
+						this.withJitter(recoverMillis, current));
 				continue;
-			} // end-if (System.currentTimeMillis() < recoverMillis)
+			} // end-if (current < recoverMillis)
 
+			total++;
 			try {
 				this.recoverTransaction(transaction);
 				value++;
@@ -91,9 +110,29 @@ public class TransactionRecoveryImpl implements TransactionRecovery, Transaction
 				logger.debug("{}> recover: branch={}, message= {}", ByteUtils.byteArrayToString(xid.getGlobalTransactionId()),
 						ByteUtils.byteArrayToString(xid.getBranchQualifier()), ex.getMessage(), ex);
 				continue;
+			} finally {
+				/* a transaction completed or removed meanwhile must not be scheduled again. */
+				long millis = System.currentTimeMillis();
+				long retryMillis = Math.max(this.getRecoverMillis(transactionContext), millis + this.retryInterval);
+				transactionRepository.rescheduleErrorTransactionIfPresent(xid, transaction, this.withJitter(retryMillis, millis));
 			}
 		}
-		logger.debug("[transaction-recovery] total= {}, success= {}", total, value);
+
+		if (total > 0) {
+			logger.debug("[transaction-recovery] total= {}, success= {}", total, value);
+		} // end-if (total > 0)
+	}
+
+	/* the recovery is backed off exponentially from the last attempt, which is kept as the created time. */
+	private long getRecoverMillis(TransactionContext transactionContext) {
+		int recoveredTimes = transactionContext.getRecoveredTimes() > 10 ? 10 : transactionContext.getRecoveredTimes();
+		return transactionContext.getCreatedTime() + SECOND_MILLIS * 60L * (1L << recoveredTimes);
+	}
+
+	/* spreads the recoveries of a backlog, which turned into error-transactions at once, over a tenth of the delay. */
+	private long withJitter(long recoverMillis, long currentMillis) {
+		long delay = recoverMillis - currentMillis;
+		return delay <= 0 ? recoverMillis : recoverMillis + ThreadLocalRandom.current().nextLong(delay / 10 + 1);
 	}
 
 	public void recoverTransaction(Transaction transaction)
@@ -259,12 +298,123 @@ public class TransactionRecoveryImpl implements TransactionRecovery, Transaction
 	public synchronized void branchRecover() {
 		// For a completed global transaction, if its branch receives a business request again, it will be rolled back by the
 		// RM's timeout mechanism, there is no need to deal with it.
+
+		if (this.presumedAbort && this.initialized) {
+			this.presumedAbortRecover();
+		} // end-if (this.presumedAbort && this.initialized)
+	}
+
+	/**
+	 * Presumed-abort: an in-doubt branch of a presumed-abort transaction begun by this coordinator instance, whose
+	 * transaction is unknown, neither logged nor running, is rolled back once it has been seen by two successive scans.
+	 * Such a gtrid carries the instance key of the coordinator, see XidFactoryImpl.getInstanceKey, so the branches of
+	 * other services sharing the resource manager are never touched. Transactions with remote branches are logged
+	 * before prepare and do not take part.
+	 */
+	protected void presumedAbortRecover() {
+		XAResourceDeserializer resourceDeserializer = this.beanFactory.getResourceDeserializer();
+		TransactionRepository transactionRepository = this.beanFactory.getTransactionRepository();
+		XidFactory xidFactory = this.beanFactory.getXidFactory();
+
+		RemoteCoordinator transactionCoordinator = (RemoteCoordinator) this.beanFactory.getNativeParticipant();
+		byte[] instanceKey = XidFactoryImpl.getInstanceKey(transactionCoordinator.getIdentifier());
+
+		Set<TransactionXid> candidateXids = new HashSet<TransactionXid>();
+		for (int i = 0; i < this.presumedAbortResources.size(); i++) {
+			String identifier = this.presumedAbortResources.get(i);
+			XAResourceDescriptor descriptor = resourceDeserializer.deserialize(identifier);
+			if (CommonResourceDescriptor.class.isInstance(descriptor) == false) {
+				logger.warn("Presumed-abort recovery is only supported by xa-resource(identifier= {}).", identifier);
+				continue;
+			}
+
+			Xid[] xidArray = null;
+			try {
+				xidArray = descriptor.recover(XAResource.TMSTARTRSCAN | XAResource.TMENDRSCAN);
+			} catch (XAException ex) {
+				logger.error("Error occurred while scanning xa-resource(identifier= {}), code= {}.", identifier, ex.errorCode, ex);
+				continue;
+			} catch (RuntimeException ex) {
+				logger.error("Error occurred while scanning xa-resource(identifier= {}).", identifier, ex);
+				continue;
+			}
+
+			for (int j = 0; xidArray != null && j < xidArray.length; j++) {
+				Xid xid = xidArray[j];
+				byte[] globalTransactionId = xid.getGlobalTransactionId();
+				if (xid.getFormatId() != XidFactory.JTA_FORMAT_ID) {
+					continue;
+				} else if (globalTransactionId == null || globalTransactionId.length != XidFactory.GLOBAL_TRANSACTION_LENGTH) {
+					continue;
+				} else if (Arrays.equals(instanceKey, XidFactoryImpl.getInstanceBytes(globalTransactionId)) == false) {
+					continue;
+				}
+
+				TransactionXid globalXid = xidFactory.createGlobalXid(globalTransactionId);
+				if (transactionRepository.getTransaction(globalXid) != null) {
+					continue;
+				} else if (transactionRepository.getErrorTransaction(globalXid) != null) {
+					continue;
+				}
+
+				TransactionXid branchXid = xidFactory.createBranchXid(globalXid, xid.getBranchQualifier());
+				if (this.indoubtXids.contains(branchXid) == false) {
+					candidateXids.add(branchXid);
+					continue;
+				}
+
+				try {
+					descriptor.rollback(xid);
+					logger.info("{}> presumed-abort: branch= {}, xares= {}", ByteUtils.byteArrayToString(globalTransactionId),
+							ByteUtils.byteArrayToString(xid.getBranchQualifier()), identifier);
+				} catch (XAException ex) {
+					if (ex.errorCode != XAException.XAER_NOTA) {
+						candidateXids.add(branchXid);
+						logger.error("{}> presumed-abort failed: branch= {}, xares= {}, code= {}",
+								ByteUtils.byteArrayToString(globalTransactionId),
+								ByteUtils.byteArrayToString(xid.getBranchQualifier()), identifier, ex.errorCode, ex);
+					}
+				} catch (RuntimeException ex) {
+					candidateXids.add(branchXid);
+					logger.error("{}> presumed-abort failed: branch= {}, xares= {}",
+							ByteUtils.byteArrayToString(globalTransactionId),
+							ByteUtils.byteArrayToString(xid.getBranchQualifier()), identifier, ex);
+				}
+			} // end-for (int j = 0; xidArray != null && j < xidArray.length; j++)
+		} // end-for (int i = 0; i < this.presumedAbortResources.size(); i++)
+
+		this.indoubtXids.clear();
+		this.indoubtXids.addAll(candidateXids);
 	}
 
 	public boolean isInitialized() {
 		return initialized;
 	}
 
+	public long getRetryInterval() {
+		return retryInterval;
+	}
+
+	public void setRetryInterval(long retryInterval) {
+		this.retryInterval = retryInterval;
+	}
+
+	public boolean isPresumedAbort() {
+		return presumedAbort;
+	}
+
+	public void setPresumedAbort(boolean presumedAbort) {
+		this.presumedAbort = presumedAbort;
+	}
+
+	public List<String> getPresumedAbortResources() {
+		return presumedAbortResources;
+	}
+
+	public void setPresumedAbortResources(List<String> presumedAbortResources) {
+		this.presumedAbortResources = presumedAbortResources;
+	}
+
 	public TransactionBeanFactory getBeanFactory() {
 		return beanFactory;
 	}
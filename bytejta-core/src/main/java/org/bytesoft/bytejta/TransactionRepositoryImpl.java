@@ -18,6 +18,7 @@ package org.bytesoft.bytejta;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.bytesoft.transaction.Transaction;
@@ -26,7 +27,10 @@ import org.bytesoft.transaction.xa.TransactionXid;
 
 public class TransactionRepositoryImpl implements TransactionRepository {
 	private final Map<TransactionXid, Transaction> xidToTxMap = new ConcurrentHashMap<TransactionXid, Transaction>();
-	private final Map<TransactionXid, Transaction> xidToErrTxMap = new ConcurrentHashMap<TransactionXid, Transaction>();
+	private final Map<TransactionXid, ErrorTransaction> xidToErrTxMap = new ConcurrentHashMap<TransactionXid, ErrorTransaction>();
+	/* ordered by the recovery time, holds exactly the entries of the xidToErrTxMap. */
+	private final TreeSet<ErrorTransaction> recoveryQueue = new TreeSet<ErrorTransaction>();
+	private long sequence; // breaks the ties of the recovery time
 
 	public void putTransaction(TransactionXid globalXid, Transaction transaction) {
 		this.xidToTxMap.put(globalXid, transaction);
@@ -40,24 +44,101 @@ public class TransactionRepositoryImpl implements TransactionRepository {
 		return this.xidToTxMap.remove(globalXid);
 	}
 
+	/* a new error-transaction is due at once, the recovery decides when it is actually recovered. */
 	public void putErrorTransaction(TransactionXid globalXid, Transaction transaction) {
-		this.xidToErrTxMap.put(globalXid, transaction);
+		this.scheduleErrorTransaction(globalXid, transaction, System.currentTimeMillis());
 	}
 
 	public Transaction getErrorTransaction(TransactionXid globalXid) {
-		return this.xidToErrTxMap.get(globalXid);
+		ErrorTransaction errorTransaction = this.xidToErrTxMap.get(globalXid);
+		return errorTransaction == null ? null : errorTransaction.transaction;
 	}
 
 	public Transaction removeErrorTransaction(TransactionXid globalXid) {
-		return this.xidToErrTxMap.remove(globalXid);
+		synchronized (this.recoveryQueue) {
+			ErrorTransaction errorTransaction = this.xidToErrTxMap.remove(globalXid);
+			if (errorTransaction == null) {
+				return null;
+			}
+			this.recoveryQueue.remove(errorTransaction);
+			return errorTransaction.transaction;
+		}
+	}
+
+	public void scheduleErrorTransaction(TransactionXid globalXid, Transaction transaction, long recoverMillis) {
+		synchronized (this.recoveryQueue) {
+			this.schedule(globalXid, transaction, recoverMillis);
+		}
+	}
+
+	public boolean rescheduleErrorTransactionIfPresent(TransactionXid globalXid, Transaction transaction,
+			long recoverMillis) {
+		synchronized (this.recoveryQueue) {
+			ErrorTransaction existing = this.xidToErrTxMap.get(globalXid);
+			if (existing == null || existing.transaction != transaction) {
+				return false;
+			} // end-if (existing == null || existing.transaction != transaction)
+
+			this.schedule(globalXid, transaction, recoverMillis);
+			return true;
+		}
+	}
+
+	private void schedule(TransactionXid globalXid, Transaction transaction, long recoverMillis) {
+		ErrorTransaction errorTransaction = new ErrorTransaction(globalXid, transaction, recoverMillis, this.sequence++);
+		ErrorTransaction previous = this.xidToErrTxMap.put(globalXid, errorTransaction);
+		if (previous != null) {
+			this.recoveryQueue.remove(previous);
+		} // end-if (previous != null)
+		this.recoveryQueue.add(errorTransaction);
+	}
+
+	public List<Transaction> pollErrorTransactionList(long currentMillis) {
+		List<Transaction> transactionList = new ArrayList<Transaction>();
+		synchronized (this.recoveryQueue) {
+			while (this.recoveryQueue.isEmpty() == false && this.recoveryQueue.first().recoverMillis <= currentMillis) {
+				ErrorTransaction errorTransaction = this.recoveryQueue.pollFirst();
+				transactionList.add(errorTransaction.transaction); // registered until removed, but not queued any more
+			}
+		}
+		return transactionList;
+	}
+
+	public long getNextRecoverMillis() {
+		synchronized (this.recoveryQueue) {
+			return this.recoveryQueue.isEmpty() ? Long.MAX_VALUE : this.recoveryQueue.first().recoverMillis;
+		}
 	}
 
 	public List<Transaction> getErrorTransactionList() {
-		return new ArrayList<Transaction>(this.xidToErrTxMap.values());
+		List<Transaction> transactionList = new ArrayList<Transaction>(this.xidToErrTxMap.size());
+		for (ErrorTransaction errorTransaction : this.xidToErrTxMap.values()) {
+			transactionList.add(errorTransaction.transaction);
+		}
+		return transactionList;
 	}
 
 	public List<Transaction> getActiveTransactionList() {
 		return new ArrayList<Transaction>(this.xidToTxMap.values());
 	}
 
+	static class ErrorTransaction implements Comparable<ErrorTransaction> {
+		final TransactionXid xid;
+		final Transaction transaction;
+		final long recoverMillis;
+		final long sequence;
+
+		ErrorTransaction(TransactionXid xid, Transaction transaction, long recoverMillis, long sequence) {
+			this.xid = xid;
+			this.transaction = transaction;
+			this.recoverMillis = recoverMillis;
+			this.sequence = sequence;
+		}
+
+		public int compareTo(ErrorTransaction that) {
+			int value = Long.compare(this.recoverMillis, that.recoverMillis);
+			return value != 0 ? value : Long.compare(this.sequence, that.sequence);
+		}
+	}
+
 }
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bytesoft.transaction.Transaction;
+
+/**
+ * Hierarchical timing wheel of the transaction timeouts. A timeout is scheduled and cancelled in constant time, and
+ * advancing the wheel only visits the timeouts which have expired, or which are moved down to a finer level. Ticks are
+ * counted on System.nanoTime, so a wall-clock adjustment neither fires nor stalls the timeouts.
+ */
+public class TransactionTimingWheel {
+	static final int WHEEL_BITS = 6;
+	static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+	static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	static final int WHEEL_LEVELS = 4;
+	static final int MAX_STEPS = WHEEL_SIZE * WHEEL_SIZE; // ticks stepped through one by one before rebuilding
+
+	private final long tickMillis;
+	private final long tickNanos;
+	private final long startNanos;
+	private final TimingNode[][] wheels = new TimingNode[WHEEL_LEVELS][WHEEL_SIZE];
+	private final Map<Transaction, TimingNode> nodeMap = new HashMap<Transaction, TimingNode>();
+	private long currentTick;
+
+	public TransactionTimingWheel(long tickMillis) {
+		this(tickMillis, System.nanoTime());
+	}
+
+	TransactionTimingWheel(long tickMillis, long startNanos) {
+		if (tickMillis <= 0) {
+			throw new IllegalArgumentException();
+		}
+
+		this.tickMillis = tickMillis;
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		this.startNanos = startNanos;
+		for (int level = 0; level < WHEEL_LEVELS; level++) {
+			for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+				TimingNode head = new TimingNode(null, 0);
+				head.prev = head;
+				head.next = head;
+				this.wheels[level][slot] = head;
+			}
+		}
+	}
+
+	/**
+	 * Schedules the timeout of the transaction after the specified delay, a timeout scheduled before is replaced.
+	 */
+	public void schedule(Transaction transaction, long delayMillis) {
+		this.schedule(transaction, delayMillis, System.nanoTime());
+	}
+
+	synchronized void schedule(Transaction transaction, long delayMillis, long currentNanos) {
+		TimingNode node = this.nodeMap.get(transaction);
+		if (node == null) {
+			node = new TimingNode(transaction, 0);
+			this.nodeMap.put(transaction, node);
+		} else {
+			node.unlink();
+		}
+
+		long delayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0));
+		long expiredTick = (currentNanos - this.startNanos + delayNanos + this.tickNanos - 1) / this.tickNanos;
+		node.expiredTick = Math.max(expiredTick, this.currentTick + 1);
+		this.place(node);
+	}
+
+	public synchronized boolean cancel(Transaction transaction) {
+		TimingNode node = this.nodeMap.remove(transaction);
+		if (node == null) {
+			return false;
+		}
+		node.unlink();
+		return true;
+	}
+
+	/**
+	 * Advances the wheel to the current time.
+	 *
+	 * @return the transactions whose timeouts have expired, they are no longer scheduled.
+	 */
+	public List<Transaction> advance() {
+		return this.advance(System.nanoTime());
+	}
+
+	synchronized List<Transaction> advance(long currentNanos) {
+		List<Transaction> expiredList = new ArrayList<Transaction>();
+		long targetTick = (currentNanos - this.startNanos) / this.tickNanos;
+		if (targetTick - this.currentTick > MAX_STEPS) {
+			this.rebuild(targetTick, expiredList); // lagging far behind, e.g. after a long gc pause
+			return expiredList;
+		} // end-if (targetTick - this.currentTick > MAX_STEPS)
+
+		while (this.currentTick < targetTick) {
+			this.currentTick++;
+
+			int level = 1;
+			while (level < WHEEL_LEVELS && (this.currentTick & ((1L << (WHEEL_BITS * level)) - 1)) == 0) {
+				level++;
+			}
+			for (int i = level - 1; i > 0; i--) {
+				this.cascade(i, (int) ((this.currentTick >>> (WHEEL_BITS * i)) & WHEEL_MASK));
+			}
+
+			TimingNode head = this.wheels[0][(int) (this.currentTick & WHEEL_MASK)];
+			for (TimingNode node = head.next; node != head;) {
+				TimingNode next = node.next;
+				node.unlink();
+				this.nodeMap.remove(node.transaction);
+				expiredList.add(node.transaction);
+				node = next;
+			}
+		}
+		return expiredList;
+	}
+
+	public synchronized int size() {
+		return this.nodeMap.size();
+	}
+
+	/* jumps to the target tick at once, instead of stepping through every tick the wheel has fallen behind. */
+	private void rebuild(long targetTick, List<Transaction> expiredList) {
+		this.currentTick = targetTick;
+		for (int level = 0; level < WHEEL_LEVELS; level++) {
+			for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+				TimingNode head = this.wheels[level][slot];
+				head.prev = head;
+				head.next = head;
+			}
+		}
+
+		Iterator<TimingNode> itr = this.nodeMap.values().iterator();
+		while (itr.hasNext()) {
+			TimingNode node = itr.next();
+			node.prev = null;
+			node.next = null;
+			if (node.expiredTick <= targetTick) {
+				itr.remove();
+				expiredList.add(node.transaction);
+			} else {
+				this.place(node);
+			}
+		}
+	}
+
+	private void cascade(int level, int slot) {
+		TimingNode head = this.wheels[level][slot];
+		TimingNode node = head.next;
+		head.prev = head;
+		head.next = head;
+		while (node != head) {
+			TimingNode next = node.next;
+			this.place(node);
+			node = next;
+		}
+	}
+
+	private void place(TimingNode node) {
+		long maxDelta = (1L << (WHEEL_BITS * WHEEL_LEVELS)) - 1;
+		long expiredTick = Math.min(node.expiredTick, this.currentTick + maxDelta); // re-placed while cascading
+		long delta = expiredTick - this.currentTick;
+
+		int level = 0;
+		while (level < WHEEL_LEVELS - 1 && delta >= (1L << (WHEEL_BITS * (level + 1)))) {
+			level++;
+		}
+
+		TimingNode head = this.wheels[level][(int) ((expiredTick >>> (WHEEL_BITS * level)) & WHEEL_MASK)];
+		node.prev = head.prev;
+		node.next = head;
+		head.prev.next = node;
+		head.prev = node;
+	}
+
+	public long getTickMillis() {
+		return tickMillis;
+	}
+
+	static class TimingNode {
+		final Transaction transaction;
+		long expiredTick;
+		TimingNode prev;
+		TimingNode next;
+
+		TimingNode(Transaction transaction, long expiredTick) {
+			this.transaction = transaction;
+			this.expiredTick = expiredTick;
+		}
+
+		void unlink() {
+			if (this.prev != null) {
+				this.prev.next = this.next;
+				this.next.prev = this.prev;
+			}
+			this.prev = null;
+			this.next = null;
+		}
+	}
+
+}
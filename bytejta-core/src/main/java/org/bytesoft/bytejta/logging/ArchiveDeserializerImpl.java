@@ -15,21 +15,49 @@
  */
 package org.bytesoft.bytejta.logging;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bytesoft.bytejta.logging.deserializer.ArchiveDeltaDeserializer;
+import org.bytesoft.bytejta.logging.deserializer.CompactArchiveDeserializer;
 import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.archive.TransactionArchiveDelta;
 import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.archive.XAResourceArchiveDelta;
 import org.bytesoft.transaction.logging.ArchiveDeserializer;
 import org.bytesoft.transaction.xa.TransactionXid;
 
 public class ArchiveDeserializerImpl implements ArchiveDeserializer {
 	static final byte TYPE_TRANSACTION = 0x0;
 	static final byte TYPE_XA_RESOURCE = 0x1;
+	static final byte TYPE_TRANSACTION_DELTA = 0x2;
+	static final byte TYPE_XA_RESOURCE_DELTA = 0x3;
+	static final byte TYPE_BATCH = 0x4;
+	static final byte TYPE_TRANSACTION_COMPACT = 0x5;
+	static final byte TYPE_XA_RESOURCE_COMPACT = 0x6;
 
 	private ArchiveDeserializer xaResourceArchiveDeserializer;
 	private ArchiveDeserializer transactionArchiveDeserializer;
+	private ArchiveDeserializer deltaArchiveDeserializer = new ArchiveDeltaDeserializer();
+	/* the archives are written in format v7 if specified, otherwise in format v6. */
+	private CompactArchiveDeserializer compactArchiveDeserializer;
 
 	public byte[] serialize(TransactionXid xid, Object archive) {
 
-		if (TransactionArchive.class.isInstance(archive)) {
+		if (this.compactArchiveDeserializer != null && TransactionArchive.class.isInstance(archive)) {
+			byte[] array = this.compactArchiveDeserializer.serialize(xid, archive);
+			byte[] byteArray = new byte[array.length + 1];
+			byteArray[0] = TYPE_TRANSACTION_COMPACT;
+			System.arraycopy(array, 0, byteArray, 1, array.length);
+			return byteArray;
+		} else if (this.compactArchiveDeserializer != null && XAResourceArchive.class.isInstance(archive)) {
+			byte[] array = this.compactArchiveDeserializer.serialize(xid, archive);
+			byte[] byteArray = new byte[array.length + 1];
+			byteArray[0] = TYPE_XA_RESOURCE_COMPACT;
+			System.arraycopy(array, 0, byteArray, 1, array.length);
+			return byteArray;
+		} else if (TransactionArchive.class.isInstance(archive)) {
 			byte[] array = this.transactionArchiveDeserializer.serialize(xid, archive);
 			byte[] byteArray = new byte[array.length + 1];
 			byteArray[0] = TYPE_TRANSACTION;
@@ -41,6 +69,20 @@ public class ArchiveDeserializerImpl implements ArchiveDeserializer {
 			byteArray[0] = TYPE_XA_RESOURCE;
 			System.arraycopy(array, 0, byteArray, 1, array.length);
 			return byteArray;
+		} else if (TransactionArchiveDelta.class.isInstance(archive)) {
+			byte[] array = this.deltaArchiveDeserializer.serialize(xid, archive);
+			byte[] byteArray = new byte[array.length + 1];
+			byteArray[0] = TYPE_TRANSACTION_DELTA;
+			System.arraycopy(array, 0, byteArray, 1, array.length);
+			return byteArray;
+		} else if (XAResourceArchiveDelta.class.isInstance(archive)) {
+			byte[] array = this.deltaArchiveDeserializer.serialize(xid, archive);
+			byte[] byteArray = new byte[array.length + 1];
+			byteArray[0] = TYPE_XA_RESOURCE_DELTA;
+			System.arraycopy(array, 0, byteArray, 1, array.length);
+			return byteArray;
+		} else if (List.class.isInstance(archive)) {
+			return this.serializeBatch(xid, (List<?>) archive);
 		} else {
 			throw new IllegalArgumentException();
 		}
@@ -61,12 +103,68 @@ public class ArchiveDeserializerImpl implements ArchiveDeserializer {
 			byte[] byteArray = new byte[array.length - 1];
 			System.arraycopy(array, 1, byteArray, 0, byteArray.length);
 			return this.xaResourceArchiveDeserializer.deserialize(xid, byteArray);
+		} else if (type == TYPE_TRANSACTION_DELTA || type == TYPE_XA_RESOURCE_DELTA) {
+			byte[] byteArray = new byte[array.length - 1];
+			System.arraycopy(array, 1, byteArray, 0, byteArray.length);
+			return this.deltaArchiveDeserializer.deserialize(xid, byteArray);
+		} else if (type == TYPE_BATCH) {
+			return this.deserializeBatch(xid, array);
+		} else if ((type == TYPE_TRANSACTION_COMPACT || type == TYPE_XA_RESOURCE_COMPACT)
+				&& this.compactArchiveDeserializer == null) {
+			throw new IllegalStateException("The compact archive deserializer is required!");
+		} else if (type == TYPE_TRANSACTION_COMPACT) {
+			byte[] byteArray = new byte[array.length - 1];
+			System.arraycopy(array, 1, byteArray, 0, byteArray.length);
+			return this.compactArchiveDeserializer.deserializeTransaction(xid, byteArray);
+		} else if (type == TYPE_XA_RESOURCE_COMPACT) {
+			byte[] byteArray = new byte[array.length - 1];
+			System.arraycopy(array, 1, byteArray, 0, byteArray.length);
+			return this.compactArchiveDeserializer.deserializeResource(xid, byteArray);
 		} else {
 			throw new IllegalArgumentException();
 		}
 
 	}
 
+	/* batch: type(1) + number(1) + [length(2) + element]* */
+	private byte[] serializeBatch(TransactionXid xid, List<?> archiveList) {
+		if (archiveList.isEmpty() || archiveList.size() > 0xFF) {
+			throw new IllegalArgumentException();
+		}
+
+		byte[][] elementArray = new byte[archiveList.size()][];
+		int length = 1 + 1;
+		for (int i = 0; i < elementArray.length; i++) {
+			Object element = archiveList.get(i);
+			if (List.class.isInstance(element)) {
+				throw new IllegalArgumentException();
+			}
+			elementArray[i] = this.serialize(xid, element);
+			length = length + 2 + elementArray[i].length;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.put(TYPE_BATCH);
+		buffer.put((byte) elementArray.length);
+		for (int i = 0; i < elementArray.length; i++) {
+			buffer.putShort((short) elementArray[i].length);
+			buffer.put(elementArray[i]);
+		}
+		return buffer.array();
+	}
+
+	private List<Object> deserializeBatch(TransactionXid xid, byte[] array) {
+		ByteBuffer buffer = ByteBuffer.wrap(array, 1, array.length - 1);
+		int number = buffer.get() & 0xFF;
+		List<Object> archiveList = new ArrayList<Object>(number);
+		for (int i = 0; i < number; i++) {
+			byte[] byteArray = new byte[buffer.getShort() & 0xFFFF];
+			buffer.get(byteArray);
+			archiveList.add(this.deserialize(xid, byteArray));
+		}
+		return archiveList;
+	}
+
 	public ArchiveDeserializer getXaResourceArchiveDeserializer() {
 		return xaResourceArchiveDeserializer;
 	}
@@ -83,4 +181,20 @@ public class ArchiveDeserializerImpl implements ArchiveDeserializer {
 		this.transactionArchiveDeserializer = transactionArchiveDeserializer;
 	}
 
+	public ArchiveDeserializer getDeltaArchiveDeserializer() {
+		return deltaArchiveDeserializer;
+	}
+
+	public void setDeltaArchiveDeserializer(ArchiveDeserializer deltaArchiveDeserializer) {
+		this.deltaArchiveDeserializer = deltaArchiveDeserializer;
+	}
+
+	public CompactArchiveDeserializer getCompactArchiveDeserializer() {
+		return compactArchiveDeserializer;
+	}
+
+	public void setCompactArchiveDeserializer(CompactArchiveDeserializer compactArchiveDeserializer) {
+		this.compactArchiveDeserializer = compactArchiveDeserializer;
+	}
+
 }
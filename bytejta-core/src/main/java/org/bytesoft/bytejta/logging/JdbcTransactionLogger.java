@@ -0,0 +1,474 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import javax.transaction.xa.Xid;
+
+import org.apache.commons.lang3.StringUtils;
+import org.bytesoft.bytejta.logging.store.VirtualLoggingRequest;
+import org.bytesoft.common.utils.ByteUtils;
+import org.bytesoft.transaction.TransactionBeanFactory;
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.aware.TransactionBeanFactoryAware;
+import org.bytesoft.transaction.aware.TransactionEndpointAware;
+import org.bytesoft.transaction.logging.ArchiveDeserializer;
+import org.bytesoft.transaction.logging.LoggingBatchable;
+import org.bytesoft.transaction.logging.LoggingFlushable;
+import org.bytesoft.transaction.logging.TransactionLogger;
+import org.bytesoft.transaction.logging.store.VirtualLoggingKey;
+import org.bytesoft.transaction.recovery.TransactionRecoveryCallback;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.bytesoft.transaction.xa.XidFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the records of {@link SampleTransactionLogger} in a table instead of the local files, for example:
+ *
+ * <pre>
+ * create table bytejta_log (
+ *     endpoint varchar(128) not null,
+ *     gxid     varchar(64)  not null,
+ *     seq      bigint       not null,
+ *     value    blob         not null,
+ *     primary key (endpoint, gxid, seq)
+ * )
+ * </pre>
+ *
+ * The records are written by a single writer in batches, one jdbc transaction per batch. The caller waits for its
+ * record to be committed, except for the terminal updates and the deletes, which are written behind.
+ */
+public class JdbcTransactionLogger implements TransactionLogger, LoggingFlushable, LoggingBatchable, Runnable,
+		TransactionBeanFactoryAware, TransactionEndpointAware {
+	static final Logger logger = LoggerFactory.getLogger(JdbcTransactionLogger.class);
+
+	static final byte OPERATOR_INSERT = 0x1;
+	static final byte OPERATOR_DELETE = 0x2;
+
+	@javax.inject.Inject
+	private TransactionBeanFactory beanFactory;
+	private String identifier;
+	private DataSource dataSource;
+	private String tableName = "bytejta_log";
+	private int batchSize = 256;
+
+	private final BlockingQueue<VirtualLoggingRequest> queue = new LinkedBlockingQueue<VirtualLoggingRequest>();
+	private final AtomicLong sequence = new AtomicLong();
+	private volatile boolean released;
+	private Thread thread;
+
+	@PostConstruct
+	public void construct() {
+		this.initializeIfNecessary();
+	}
+
+	private synchronized void initializeIfNecessary() {
+		if (this.thread != null || StringUtils.isBlank(this.identifier) || this.dataSource == null) {
+			return;
+		}
+
+		Connection conn = null;
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			conn = this.dataSource.getConnection();
+			stmt = conn.prepareStatement(String.format("select max(seq) from %s where endpoint = ?", this.tableName));
+			stmt.setString(1, this.identifier);
+			rs = stmt.executeQuery();
+			this.sequence.set(rs.next() ? rs.getLong(1) : 0);
+		} catch (SQLException ex) {
+			throw new IllegalStateException("Error occurred while initializing tx-log!", ex);
+		} finally {
+			this.closeQuietly(rs);
+			this.closeQuietly(stmt);
+			this.closeQuietly(conn);
+		}
+
+		this.released = false;
+		this.thread = new Thread(this, "bytejta-logging-jdbc");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public synchronized void shutdown() {
+		this.released = true;
+		if (this.thread != null) {
+			boolean interrupted = false;
+			while (this.thread.isAlive()) {
+				try {
+					this.thread.join();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			this.thread = null;
+		}
+
+		List<VirtualLoggingRequest> requestList = new ArrayList<VirtualLoggingRequest>();
+		this.queue.drainTo(requestList);
+		if (requestList.isEmpty() == false) {
+			this.write(requestList);
+		}
+	}
+
+	public void createTransaction(TransactionArchive archive) {
+		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
+		try {
+			byte[] byteArray = deserializer.serialize((TransactionXid) archive.getXid(), archive);
+			this.submit(archive.getXid(), OPERATOR_INSERT, byteArray, true);
+		} catch (RuntimeException rex) {
+			logger.error("Error occurred while creating transaction-archive.", rex);
+		}
+	}
+
+	public void updateTransaction(TransactionArchive archive) {
+		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
+		boolean terminated = SampleTransactionLogger.isTerminated(archive);
+		try {
+			byte[] byteArray = deserializer.serialize((TransactionXid) archive.getXid(), archive);
+			this.submit(archive.getXid(), OPERATOR_INSERT, byteArray, terminated == false);
+		} catch (RuntimeException rex) {
+			logger.error("Error occurred while modifying transaction-archive.", rex);
+		}
+	}
+
+	public void deleteTransaction(TransactionArchive archive) {
+		try {
+			this.submit(archive.getXid(), OPERATOR_DELETE, new byte[0], false);
+		} catch (RuntimeException rex) {
+			logger.error("Error occurred while deleting transaction-archive.", rex);
+		}
+	}
+
+	public void createParticipant(XAResourceArchive archive) {
+	}
+
+	public void updateParticipant(XAResourceArchive archive) {
+		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
+		try {
+			byte[] byteArray = deserializer.serialize((TransactionXid) archive.getXid(), archive);
+			this.submit(archive.getXid(), OPERATOR_INSERT, byteArray, true);
+		} catch (RuntimeException rex) {
+			logger.error("Error occurred while modifying resource-archive.", rex);
+		}
+	}
+
+	public void updateParticipants(List<XAResourceArchive> archiveList) {
+		if (archiveList.size() == 1) {
+			this.updateParticipant(archiveList.get(0));
+			return;
+		} else if (archiveList.isEmpty()) {
+			return;
+		}
+
+		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
+		Xid xid = archiveList.get(0).getXid();
+		try {
+			for (int i = 0; i < archiveList.size(); i += SampleTransactionLogger.MAX_BATCH_SIZE) {
+				List<XAResourceArchive> elementList = archiveList.subList(i,
+						Math.min(archiveList.size(), i + SampleTransactionLogger.MAX_BATCH_SIZE));
+				byte[] byteArray = deserializer.serialize((TransactionXid) xid, elementList);
+				this.submit(xid, OPERATOR_INSERT, byteArray, true);
+			}
+		} catch (RuntimeException rex) {
+			logger.error("Error occurred while modifying resource-archives.", rex);
+		}
+	}
+
+	public void deleteParticipant(XAResourceArchive archive) {
+	}
+
+	public void createResource(XAResourceArchive archive) {
+	}
+
+	public void updateResource(XAResourceArchive archive) {
+	}
+
+	public void deleteResource(XAResourceArchive archive) {
+	}
+
+	/* content: gtrid(16) + operator(1) + value */
+	private void submit(Xid xid, byte operator, byte[] valueByteArray, boolean durable) {
+		byte[] byteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH + 1 + valueByteArray.length];
+		System.arraycopy(xid.getGlobalTransactionId(), 0, byteArray, 0, XidFactory.GLOBAL_TRANSACTION_LENGTH);
+		byteArray[XidFactory.GLOBAL_TRANSACTION_LENGTH] = operator;
+		System.arraycopy(valueByteArray, 0, byteArray, XidFactory.GLOBAL_TRANSACTION_LENGTH + 1, valueByteArray.length);
+
+		this.submit(new VirtualLoggingRequest(byteArray), durable);
+	}
+
+	private void submit(VirtualLoggingRequest request, boolean durable) {
+		this.queue.offer(request);
+		if (this.released && this.queue.remove(request)) {
+			this.write(Collections.singletonList(request));
+		}
+
+		if (durable) {
+			request.awaitCompletion();
+		}
+	}
+
+	public void flushImmediately() {
+		this.submit(new VirtualLoggingRequest(null), true); // completed once the previous records are committed
+	}
+
+	public void run() {
+		List<VirtualLoggingRequest> requestList = new ArrayList<VirtualLoggingRequest>(this.batchSize);
+		while (this.released == false || this.queue.isEmpty() == false) {
+			try {
+				VirtualLoggingRequest request = this.queue.poll(100, TimeUnit.MILLISECONDS);
+				if (request == null) {
+					continue;
+				}
+
+				requestList.add(request);
+				this.queue.drainTo(requestList, this.batchSize - requestList.size());
+			} catch (InterruptedException ex) {
+				logger.debug(ex.getMessage(), ex);
+			}
+
+			if (requestList.isEmpty() == false) {
+				this.write(requestList);
+				requestList.clear();
+			}
+		}
+	}
+
+	/**
+	 * Executes the inserts before the deletes, a delete is always the last record of its transaction.
+	 */
+	private void write(List<VirtualLoggingRequest> requestList) {
+		RuntimeException error = null;
+
+		Connection conn = null;
+		PreparedStatement insert = null;
+		PreparedStatement delete = null;
+		Boolean autoCommit = null;
+		try {
+			conn = this.dataSource.getConnection();
+			autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			insert = conn.prepareStatement(
+					String.format("insert into %s(endpoint, gxid, seq, value) values(?, ?, ?, ?)", this.tableName));
+			delete = conn.prepareStatement(String.format("delete from %s where endpoint = ? and gxid = ?", this.tableName));
+
+			int inserts = 0;
+			int deletes = 0;
+			for (int i = 0; i < requestList.size(); i++) {
+				byte[] byteArray = requestList.get(i).getContent();
+				if (byteArray == null) {
+					continue;
+				}
+
+				byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
+				System.arraycopy(byteArray, 0, keyByteArray, 0, keyByteArray.length);
+				String gxid = ByteUtils.byteArrayToString(keyByteArray);
+				if (byteArray[XidFactory.GLOBAL_TRANSACTION_LENGTH] == OPERATOR_DELETE) {
+					delete.setString(1, this.identifier);
+					delete.setString(2, gxid);
+					delete.addBatch();
+					deletes++;
+				} else {
+					byte[] valueByteArray = new byte[byteArray.length - XidFactory.GLOBAL_TRANSACTION_LENGTH - 1];
+					System.arraycopy(byteArray, XidFactory.GLOBAL_TRANSACTION_LENGTH + 1, valueByteArray, 0,
+							valueByteArray.length);
+					insert.setString(1, this.identifier);
+					insert.setString(2, gxid);
+					insert.setLong(3, this.sequence.incrementAndGet());
+					insert.setBytes(4, valueByteArray);
+					insert.addBatch();
+					inserts++;
+				}
+			}
+
+			if (inserts > 0) {
+				insert.executeBatch();
+			}
+			if (deletes > 0) {
+				delete.executeBatch();
+			}
+			conn.commit();
+		} catch (SQLException ex) {
+			this.rollbackQuietly(conn);
+			logger.error("Error occurred while writing the transaction log!", ex);
+			error = new IllegalStateException(ex);
+		} catch (RuntimeException rex) {
+			this.rollbackQuietly(conn);
+			logger.error("Error occurred while writing the transaction log!", rex);
+			error = rex;
+		} finally {
+			this.setAutoCommitIfNecessary(conn, autoCommit);
+			this.closeQuietly(insert);
+			this.closeQuietly(delete);
+			this.closeQuietly(conn);
+		}
+
+		for (int i = 0; i < requestList.size(); i++) {
+			requestList.get(i).complete(error);
+		}
+	}
+
+	public void recover(TransactionRecoveryCallback callback) {
+		this.flushImmediately();
+
+		SampleTransactionRecovery recovery = new SampleTransactionRecovery();
+		recovery.setDeserializer(this.beanFactory.getArchiveDeserializer());
+		recovery.setXidFactory(this.beanFactory.getXidFactory());
+
+		Connection conn = null;
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			conn = this.dataSource.getConnection();
+			stmt = conn.prepareStatement(
+					String.format("select gxid, value from %s where endpoint = ? order by gxid, seq", this.tableName));
+			stmt.setString(1, this.identifier);
+			rs = stmt.executeQuery();
+			while (rs.next()) {
+				VirtualLoggingKey xid = new VirtualLoggingKey();
+				xid.setGlobalTransactionId(ByteUtils.stringToByteArray(rs.getString(1)));
+				recovery.append(xid, rs.getBytes(2));
+			}
+		} catch (SQLException ex) {
+			throw new IllegalStateException("Error occurred while recovering transactions!", ex);
+		} finally {
+			this.closeQuietly(rs);
+			this.closeQuietly(stmt);
+			this.closeQuietly(conn);
+		}
+
+		List<TransactionArchive> archiveList = recovery.call();
+		for (int i = 0; i < archiveList.size(); i++) {
+			TransactionArchive archive = archiveList.get(i);
+			try {
+				callback.recover(archive);
+			} catch (RuntimeException rex) {
+				logger.error("Error occurred while recovering transaction(xid= {}).", archive.getXid(), rex);
+			}
+		}
+	}
+
+	private void rollbackQuietly(Connection conn) {
+		if (conn != null) {
+			try {
+				conn.rollback();
+			} catch (Exception ex) {
+				logger.debug("Error occurred while rolling back the transaction log.", ex);
+			}
+		}
+	}
+
+	private void setAutoCommitIfNecessary(Connection conn, Boolean autoCommit) {
+		if (conn != null && autoCommit != null) {
+			try {
+				conn.setAutoCommit(autoCommit);
+			} catch (Exception ex) {
+				logger.debug("Error occurred while configuring attr 'autoCommit' of connection.", ex);
+			}
+		}
+	}
+
+	private void closeQuietly(ResultSet closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (Exception ex) {
+				logger.debug("Error occurred while closing resource {}.", closeable);
+			}
+		}
+	}
+
+	private void closeQuietly(Statement closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (Exception ex) {
+				logger.debug("Error occurred while closing resource {}.", closeable);
+			}
+		}
+	}
+
+	private void closeQuietly(Connection closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (Exception ex) {
+				logger.debug("Error occurred while closing resource {}.", closeable);
+			}
+		}
+	}
+
+	public String getEndpoint() {
+		return identifier;
+	}
+
+	public void setEndpoint(String identifier) {
+		this.identifier = identifier;
+		this.initializeIfNecessary();
+	}
+
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	public void setDataSource(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public void setTableName(String tableName) {
+		this.tableName = tableName;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public TransactionBeanFactory getBeanFactory() {
+		return beanFactory;
+	}
+
+	public void setBeanFactory(TransactionBeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+}
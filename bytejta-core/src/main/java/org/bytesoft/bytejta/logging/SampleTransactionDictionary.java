@@ -0,0 +1,143 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bytesoft.transaction.logging.LoggingDictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only dictionary file: [length(2) + value]*, the id of a value is its ordinal(starting from 1).
+ */
+public class SampleTransactionDictionary implements LoggingDictionary {
+	static final Logger logger = LoggerFactory.getLogger(SampleTransactionDictionary.class);
+	static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private final ConcurrentMap<String, Integer> identifierMap = new ConcurrentHashMap<String, Integer>();
+	private volatile String[] values = new String[0];
+
+	private final File file;
+	private RandomAccessFile raf;
+
+	public SampleTransactionDictionary(File file) throws IOException {
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "rw");
+		this.load();
+	}
+
+	private void load() throws IOException {
+		byte[] byteArray = new byte[(int) this.raf.length()];
+		this.raf.seek(0);
+		this.raf.readFully(byteArray);
+
+		String[] array = new String[16];
+		int number = 0;
+		int position = 0;
+		while (position + 2 <= byteArray.length) {
+			int length = ((byteArray[position] & 0xFF) << 8) | (byteArray[position + 1] & 0xFF);
+			if (position + 2 + length > byteArray.length) {
+				break;
+			}
+
+			if (number == array.length) {
+				array = Arrays.copyOf(array, array.length * 2);
+			}
+			String value = new String(byteArray, position + 2, length, CHARSET);
+			array[number++] = value;
+			this.identifierMap.put(value, number);
+
+			position = position + 2 + length;
+		}
+
+		if (position < byteArray.length) {
+			logger.warn("Incomplete entry(offset= {}) found in logging dictionary {}, truncated!", position,
+					this.file.getAbsolutePath());
+			this.raf.setLength(position);
+		}
+
+		this.raf.seek(position);
+		this.values = Arrays.copyOf(array, number);
+	}
+
+	public int register(String value) {
+		Integer id = this.identifierMap.get(value);
+		return id != null ? id : this.append(value);
+	}
+
+	private synchronized int append(String value) {
+		Integer id = this.identifierMap.get(value);
+		if (id != null) {
+			return id;
+		}
+
+		byte[] valueByteArray = value.getBytes(CHARSET);
+		if (valueByteArray.length > 0xFFFF) {
+			throw new IllegalArgumentException("The value is too long to be registered!");
+		}
+
+		byte[] byteArray = new byte[2 + valueByteArray.length];
+		byteArray[0] = (byte) (valueByteArray.length >>> 8);
+		byteArray[1] = (byte) valueByteArray.length;
+		System.arraycopy(valueByteArray, 0, byteArray, 2, valueByteArray.length);
+
+		try {
+			this.raf.write(byteArray);
+			this.raf.getChannel().force(true);
+		} catch (IOException ex) {
+			throw new IllegalStateException("Error occurred while writing the logging dictionary!", ex);
+		}
+
+		String[] current = this.values;
+		String[] expanded = Arrays.copyOf(current, current.length + 1);
+		expanded[current.length] = value;
+		this.values = expanded;
+
+		int registered = expanded.length;
+		this.identifierMap.put(value, registered);
+		return registered;
+	}
+
+	public String lookup(int id) {
+		String[] current = this.values;
+		if (id <= 0 || id > current.length) {
+			throw new IllegalStateException(String.format("Unknown dictionary id: %s!", id));
+		}
+		return current[id - 1];
+	}
+
+	public void closeQuietly() {
+		if (this.raf != null) {
+			try {
+				this.raf.close();
+			} catch (Exception ex) {
+				logger.debug(ex.getMessage(), ex);
+			}
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging;
+
+/**
+ * A preallocated slot of {@link SampleTransactionRingBuffer}, it is reused once the consumer has processed it.
+ */
+public class SampleTransactionEvent {
+	public static final int CREATE_TRANSACTION = 1;
+	public static final int UPDATE_TRANSACTION = 2;
+	public static final int DELETE_TRANSACTION = 3;
+	public static final int UPDATE_PARTICIPANT = 4;
+	public static final int UPDATE_PARTICIPANTS = 5;
+
+	/* the sequence of the published event, the slot is not readable until it is set. */
+	private volatile long sequence = -1;
+	private int type;
+	private Object archive;
+
+	public void publish(long sequence) {
+		this.sequence = sequence;
+	}
+
+	public void clear() {
+		this.archive = null;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public void setType(int type) {
+		this.type = type;
+	}
+
+	public Object getArchive() {
+		return archive;
+	}
+
+	public void setArchive(Object archive) {
+		this.archive = archive;
+	}
+
+}
@@ -17,13 +17,21 @@ package org.bytesoft.bytejta.logging;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.annotation.PostConstruct;
+import javax.transaction.Status;
 import javax.transaction.xa.Xid;
 
 import org.apache.commons.lang3.StringUtils;
@@ -31,15 +39,19 @@ import org.bytesoft.bytejta.logging.store.VirtualLoggingSystemImpl;
 import org.bytesoft.common.utils.ByteUtils;
 import org.bytesoft.transaction.TransactionBeanFactory;
 import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.archive.TransactionArchiveDelta;
 import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.archive.XAResourceArchiveDelta;
 import org.bytesoft.transaction.aware.TransactionBeanFactoryAware;
 import org.bytesoft.transaction.aware.TransactionEndpointAware;
 import org.bytesoft.transaction.logging.ArchiveDeserializer;
+import org.bytesoft.transaction.logging.LoggingBatchable;
+import org.bytesoft.transaction.logging.LoggingDictionary;
 import org.bytesoft.transaction.logging.LoggingFlushable;
 import org.bytesoft.transaction.logging.TransactionLogger;
-import org.bytesoft.transaction.logging.store.VirtualLoggingListener;
 import org.bytesoft.transaction.logging.store.VirtualLoggingRecord;
-import org.bytesoft.transaction.logging.store.VirtualLoggingSystem;
+import org.bytesoft.transaction.logging.store.VirtualLoggingView;
+import org.bytesoft.transaction.logging.store.VirtualLoggingViewListener;
 import org.bytesoft.transaction.recovery.TransactionRecoveryCallback;
 import org.bytesoft.transaction.xa.TransactionXid;
 import org.bytesoft.transaction.xa.XidFactory;
@@ -47,12 +59,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class SampleTransactionLogger extends VirtualLoggingSystemImpl
-		implements TransactionLogger, LoggingFlushable, TransactionBeanFactoryAware, TransactionEndpointAware {
+		implements TransactionLogger, LoggingFlushable, LoggingBatchable, LoggingDictionary, TransactionBeanFactoryAware,
+		TransactionEndpointAware {
 	static final Logger logger = LoggerFactory.getLogger(SampleTransactionLogger.class);
+	static final int MAX_BATCH_SIZE = 0xFF;
 
 	@javax.inject.Inject
 	private TransactionBeanFactory beanFactory;
 	private String identifier;
+	private int recoveryParallelism = Runtime.getRuntime().availableProcessors();
+	private boolean deltaRecords;
+	private final ConcurrentMap<Xid, SampleTransactionState> stateMap = new ConcurrentHashMap<Xid, SampleTransactionState>();
+	private volatile SampleTransactionDictionary dictionary;
+	private int ringBufferSize;
+	private volatile SampleTransactionRingBuffer ringBuffer;
 
 	@PostConstruct
 	public void construct() throws IOException {
@@ -62,40 +82,201 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 	private void initializeIfNecessary() throws IllegalStateException {
 		if (StringUtils.isNotBlank(this.identifier)) {
 			try {
+				this.initializeDictionaryIfNecessary();
 				super.construct();
+				this.initializeRingBufferIfNecessary();
 			} catch (IOException error) {
 				throw new IllegalStateException("Error occurred while initializing tx-log!", error);
 			}
 		} // end-if (StringUtils.isNotBlank(this.endpoint))
 	}
 
+	private synchronized void initializeRingBufferIfNecessary() {
+		if (this.ringBufferSize > 0 && this.ringBuffer == null) {
+			SampleTransactionRingBuffer loggingRingBuffer = new SampleTransactionRingBuffer(this, this.ringBufferSize);
+			loggingRingBuffer.start();
+			this.ringBuffer = loggingRingBuffer;
+		}
+	}
+
+	private synchronized void initializeDictionaryIfNecessary() throws IOException {
+		if (this.dictionary == null) {
+			File directory = this.getDirectory() == null ? this.getDefaultDirectory() : this.getDirectory();
+			if (directory.exists() == false && directory.mkdirs() == false) {
+				throw new IOException(String.format("Failed to create directory %s!", directory.getAbsolutePath()));
+			}
+			File file = new File(directory, String.format("%sdictionary.dat", this.getLoggingFilePrefix()));
+			this.dictionary = new SampleTransactionDictionary(file);
+		}
+	}
+
+	public int register(String value) {
+		SampleTransactionDictionary loggingDictionary = this.dictionary;
+		return loggingDictionary == null ? 0 : loggingDictionary.register(value);
+	}
+
+	public String lookup(int id) {
+		SampleTransactionDictionary loggingDictionary = this.dictionary;
+		if (loggingDictionary == null) {
+			throw new IllegalStateException("The logging dictionary has not been initialized yet!");
+		}
+		return loggingDictionary.lookup(id);
+	}
+
+	public void shutdown() {
+		SampleTransactionRingBuffer loggingRingBuffer = this.ringBuffer;
+		if (loggingRingBuffer != null) {
+			loggingRingBuffer.stop();
+		}
+
+		super.shutdown();
+
+		SampleTransactionDictionary loggingDictionary = this.dictionary;
+		if (loggingDictionary != null) {
+			loggingDictionary.closeQuietly();
+		}
+	}
+
+	/**
+	 * Invoked by the consumer of the ring buffer, the records of the events are appended at once.
+	 */
+	void processEvents(List<SampleTransactionEvent> eventList) {
+		List<byte[]> recordList = new ArrayList<byte[]>(eventList.size());
+		for (int i = 0; i < eventList.size(); i++) {
+			SampleTransactionEvent event = eventList.get(i);
+			Object archive = event.getArchive();
+			switch (event.getType()) {
+			case SampleTransactionEvent.CREATE_TRANSACTION:
+				this.createTransaction((TransactionArchive) archive, recordList);
+				break;
+			case SampleTransactionEvent.UPDATE_TRANSACTION:
+				this.updateTransaction((TransactionArchive) archive, recordList);
+				break;
+			case SampleTransactionEvent.DELETE_TRANSACTION:
+				this.deleteTransaction((TransactionArchive) archive, recordList);
+				break;
+			case SampleTransactionEvent.UPDATE_PARTICIPANT:
+				this.updateParticipant((XAResourceArchive) archive, recordList);
+				break;
+			case SampleTransactionEvent.UPDATE_PARTICIPANTS:
+				@SuppressWarnings("unchecked")
+				List<XAResourceArchive> archiveList = (List<XAResourceArchive>) archive;
+				this.updateParticipants(archiveList, recordList);
+				break;
+			default:
+				logger.error("Unknown transaction-archive event: type= {}.", event.getType());
+			}
+		}
+
+		if (recordList.isEmpty() == false) {
+			this.appendAll(recordList);
+		}
+	}
+
+	/* the archive is serialized by the consumer of the ring buffer if there is one. */
+	private boolean publish(int type, Object archive, boolean durable) {
+		SampleTransactionRingBuffer loggingRingBuffer = this.ringBuffer;
+		return loggingRingBuffer != null && loggingRingBuffer.publish(type, archive, durable);
+	}
+
 	public void createTransaction(TransactionArchive archive) {
+		if (this.publish(SampleTransactionEvent.CREATE_TRANSACTION, archive, true) == false) {
+			this.createTransaction(archive, null);
+		}
+	}
+
+	private void createTransaction(TransactionArchive archive, List<byte[]> recordList) {
 		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
 
 		try {
 			byte[] byteArray = deserializer.serialize((TransactionXid) archive.getXid(), archive);
-			this.create(archive.getXid(), byteArray);
+			this.create(archive.getXid(), byteArray, recordList);
+			this.registerState(archive);
 		} catch (RuntimeException rex) {
+			this.stateMap.remove(this.getGlobalXid(archive.getXid()));
 			logger.error("Error occurred while creating transaction-archive.", rex);
 		}
 	}
 
 	public void updateTransaction(TransactionArchive archive) {
+		boolean terminated = isTerminated(archive);
+		if (this.publish(SampleTransactionEvent.UPDATE_TRANSACTION, archive, terminated == false) == false) {
+			this.updateTransaction(archive, null);
+		}
+	}
+
+	/**
+	 * A terminal record need not be durable before returning, the recovery re-drives the transaction anyway. Shared by
+	 * the transaction loggers of this package.
+	 */
+	static boolean isTerminated(TransactionArchive archive) {
+		return archive.getStatus() == Status.STATUS_COMMITTED || archive.getStatus() == Status.STATUS_ROLLEDBACK;
+	}
+
+	private void updateTransaction(TransactionArchive archive, List<byte[]> recordList) {
 		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
+		boolean terminated = isTerminated(archive);
 
+		SampleTransactionState state = this.deltaRecords ? this.stateMap.get(this.getGlobalXid(archive.getXid())) : null;
 		try {
-			byte[] byteArray = deserializer.serialize((TransactionXid) archive.getXid(), archive);
-			this.modify(archive.getXid(), byteArray);
+			if (state == null) {
+				byte[] byteArray = deserializer.serialize((TransactionXid) archive.getXid(), archive);
+				this.modify(archive.getXid(), byteArray, terminated, recordList);
+				this.registerState(archive);
+				return;
+			} // end-if (state == null)
+
+			synchronized (state) {
+				TransactionArchiveDelta delta = state.createDelta(archive);
+				Object value = delta == null ? archive : delta;
+				byte[] byteArray = deserializer.serialize((TransactionXid) archive.getXid(), value);
+				this.modify(archive.getXid(), byteArray, terminated, recordList);
+				if (delta == null) {
+					state.reset(archive);
+				} // end-if (delta == null)
+			}
 		} catch (RuntimeException rex) {
+			this.stateMap.remove(this.getGlobalXid(archive.getXid()));
 			logger.error("Error occurred while modifying transaction-archive.", rex);
 		}
 	}
 
+	/* the record is collected into the record list if specified, which is appended by the caller. */
+	private void create(Xid xid, byte[] byteArray, List<byte[]> recordList) {
+		if (recordList != null) {
+			recordList.add(this.createCreateRecord(xid, byteArray));
+		} else {
+			this.create(xid, byteArray);
+		}
+	}
+
+	private void modify(Xid xid, byte[] byteArray, boolean terminated, List<byte[]> recordList) {
+		if (recordList != null) {
+			recordList.add(this.createModifyRecord(xid, byteArray));
+		} else if (terminated) {
+			this.modifyLater(xid, byteArray);
+		} else {
+			this.modify(xid, byteArray);
+		}
+	}
+
 	public void deleteTransaction(TransactionArchive archive) {
+		if (this.publish(SampleTransactionEvent.DELETE_TRANSACTION, archive, false) == false) {
+			this.deleteTransaction(archive, null);
+		}
+	}
+
+	private void deleteTransaction(TransactionArchive archive, List<byte[]> recordList) {
 		try {
-			this.delete(archive.getXid());
+			if (recordList != null) {
+				recordList.add(this.createDeleteRecord(archive.getXid()));
+			} else {
+				this.deleteLater(archive.getXid());
+			}
 		} catch (RuntimeException rex) {
 			logger.error("Error occurred while deleting transaction-archive.", rex);
+		} finally {
+			this.stateMap.remove(this.getGlobalXid(archive.getXid()));
 		}
 	}
 
@@ -103,16 +284,96 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 	}
 
 	public void updateParticipant(XAResourceArchive archive) {
+		if (this.publish(SampleTransactionEvent.UPDATE_PARTICIPANT, archive, true) == false) {
+			this.updateParticipant(archive, null);
+		}
+	}
+
+	private void updateParticipant(XAResourceArchive archive, List<byte[]> recordList) {
 		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
 
+		SampleTransactionState state = this.deltaRecords ? this.stateMap.get(this.getGlobalXid(archive.getXid())) : null;
 		try {
-			byte[] byteArray = deserializer.serialize((TransactionXid) archive.getXid(), archive);
-			this.modify(archive.getXid(), byteArray);
+			if (state == null) {
+				byte[] byteArray = deserializer.serialize((TransactionXid) archive.getXid(), archive);
+				this.modify(archive.getXid(), byteArray, false, recordList);
+				return;
+			} // end-if (state == null)
+
+			synchronized (state) {
+				XAResourceArchiveDelta delta = state.createDelta(archive);
+				Object value = delta == null ? archive : delta;
+				byte[] byteArray = deserializer.serialize((TransactionXid) archive.getXid(), value);
+				this.modify(archive.getXid(), byteArray, false, recordList);
+				if (delta == null) {
+					state.reset(archive);
+				} // end-if (delta == null)
+			}
 		} catch (RuntimeException rex) {
+			this.stateMap.remove(this.getGlobalXid(archive.getXid()));
 			logger.error("Error occurred while modifying resource-archive.", rex);
 		}
 	}
 
+	public void updateParticipants(List<XAResourceArchive> archiveList) {
+		if (archiveList.size() == 1) {
+			this.updateParticipant(archiveList.get(0));
+			return;
+		} else if (archiveList.isEmpty()) {
+			return;
+		}
+
+		if (this.publish(SampleTransactionEvent.UPDATE_PARTICIPANTS, archiveList, true) == false) {
+			this.updateParticipants(archiveList, null);
+		}
+	}
+
+	private void updateParticipants(List<XAResourceArchive> archiveList, List<byte[]> recordList) {
+		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
+
+		Xid xid = archiveList.get(0).getXid();
+		SampleTransactionState state = this.deltaRecords ? this.stateMap.get(this.getGlobalXid(xid)) : null;
+		try {
+			for (int i = 0; i < archiveList.size(); i += MAX_BATCH_SIZE) {
+				List<XAResourceArchive> elementList = archiveList.subList(i, Math.min(archiveList.size(), i + MAX_BATCH_SIZE));
+				if (state == null) {
+					byte[] byteArray = deserializer.serialize((TransactionXid) xid, elementList);
+					this.modify(xid, byteArray, false, recordList);
+					continue;
+				} // end-if (state == null)
+
+				synchronized (state) {
+					List<Object> valueList = new ArrayList<Object>(elementList.size());
+					for (int j = 0; j < elementList.size(); j++) {
+						XAResourceArchive archive = elementList.get(j);
+						XAResourceArchiveDelta delta = state.createDelta(archive);
+						if (delta == null) {
+							state.reset(archive);
+						} // end-if (delta == null)
+						valueList.add(delta == null ? archive : delta);
+					}
+
+					byte[] byteArray = deserializer.serialize((TransactionXid) xid, valueList);
+					this.modify(xid, byteArray, false, recordList);
+				}
+			}
+		} catch (RuntimeException rex) {
+			this.stateMap.remove(this.getGlobalXid(xid));
+			logger.error("Error occurred while modifying resource-archives.", rex);
+		}
+	}
+
+	private void registerState(TransactionArchive archive) {
+		if (this.deltaRecords) {
+			this.stateMap.put(this.getGlobalXid(archive.getXid()), new SampleTransactionState(archive));
+		} // end-if (this.deltaRecords)
+	}
+
+	private Xid getGlobalXid(Xid xid) {
+		XidFactory xidFactory = this.beanFactory.getXidFactory();
+		return xidFactory.createGlobalXid(xid.getGlobalTransactionId());
+	}
+
 	public void deleteParticipant(XAResourceArchive archive) {
 	}
 
@@ -131,7 +392,11 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 
 		List<VirtualLoggingRecord> resultList = new ArrayList<VirtualLoggingRecord>();
 
-		Map<TransactionXid, TransactionArchive> xidMap = new HashMap<TransactionXid, TransactionArchive>();
+		SampleTransactionRecovery recovery = new SampleTransactionRecovery();
+		recovery.setDeserializer(deserializer);
+		recovery.setXidFactory(xidFactory);
+
+		Map<TransactionXid, List<byte[]>> recordMap = new LinkedHashMap<TransactionXid, List<byte[]>>();
 		for (int index = 0; recordList != null && index < recordList.size(); index++) {
 			VirtualLoggingRecord record = recordList.get(index);
 			byte[] byteArray = record.getContent();
@@ -143,51 +408,20 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 
 			TransactionXid xid = xidFactory.createGlobalXid(keyByteArray);
 
-			Object obj = deserializer.deserialize(xid, valueByteArray);
-			if (TransactionArchive.class.isInstance(obj)) {
-				xidMap.put(xid, (TransactionArchive) obj);
-			} else if (XAResourceArchive.class.isInstance(obj)) {
-				TransactionArchive archive = xidMap.get(xid);
-				if (archive == null) {
-					logger.error("Error occurred while compressing resource archive: {}", obj);
-					continue;
-				}
-
-				XAResourceArchive resourceArchive = (XAResourceArchive) obj;
-				boolean matched = false;
-
-				List<XAResourceArchive> nativeResources = archive.getNativeResources();
-				for (int i = 0; matched == false && nativeResources != null && i < nativeResources.size(); i++) {
-					XAResourceArchive element = nativeResources.get(i);
-					if (resourceArchive.getXid().equals(element.getXid())) {
-						matched = true;
-						nativeResources.set(i, resourceArchive);
-					}
-				}
-
-				XAResourceArchive optimizedResource = archive.getOptimizedResource();
-				if (matched == false && optimizedResource != null) {
-					if (resourceArchive.getXid().equals(optimizedResource.getXid())) {
-						matched = true;
-						archive.setOptimizedResource(resourceArchive);
-					}
-				}
-
-				List<XAResourceArchive> remoteResources = archive.getRemoteResources();
-				for (int i = 0; matched == false && remoteResources != null && i < remoteResources.size(); i++) {
-					XAResourceArchive element = remoteResources.get(i);
-					if (resourceArchive.getXid().equals(element.getXid())) {
-						matched = true;
-						remoteResources.set(i, resourceArchive);
-					}
-				}
-
-				if (matched == false) {
-					logger.error("Error occurred while compressing resource archive: {}, invalid resoure!", obj);
-				}
+			List<byte[]> valueList = recordMap.get(xid);
+			if (valueList == null) {
+				valueList = new ArrayList<byte[]>(4);
+				recordMap.put(xid, valueList);
+			}
+			valueList.add(valueByteArray);
+		}
 
-			} else {
-				logger.error("unkown resource: {}!", obj);
+		Map<TransactionXid, TransactionArchive> xidMap = new LinkedHashMap<TransactionXid, TransactionArchive>();
+		for (Iterator<Map.Entry<TransactionXid, List<byte[]>>> itr = recordMap.entrySet().iterator(); itr.hasNext();) {
+			Map.Entry<TransactionXid, List<byte[]>> entry = itr.next();
+			TransactionArchive archive = recovery.recover(entry.getKey(), entry.getValue());
+			if (archive != null) {
+				xidMap.put(entry.getKey(), archive);
 			}
 		}
 
@@ -224,101 +458,75 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 	}
 
 	public void recover(TransactionRecoveryCallback callback) {
+		ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
+		XidFactory xidFactory = this.beanFactory.getXidFactory();
 
-		final Map<Xid, TransactionArchive> xidMap = new HashMap<Xid, TransactionArchive>();
-		final ArchiveDeserializer deserializer = this.beanFactory.getArchiveDeserializer();
-		final XidFactory xidFactory = this.beanFactory.getXidFactory();
-
-		this.traversal(new VirtualLoggingListener() {
-			public void recvOperation(VirtualLoggingRecord action) {
-				Xid xid = action.getIdentifier();
-				int operator = action.getOperator();
-				if (VirtualLoggingSystem.OPERATOR_DELETE == operator) {
-					xidMap.remove(xid);
-				} else if (xidMap.containsKey(xid) == false) {
-					xidMap.put(xid, null);
-				}
-			}
-		});
-
-		this.traversal(new VirtualLoggingListener() {
-			public void recvOperation(VirtualLoggingRecord action) {
-				Xid xid = action.getIdentifier();
-				if (xidMap.containsKey(xid)) {
-					this.execOperation(action);
-				}
-			}
-
-			public void execOperation(VirtualLoggingRecord action) {
-				Xid identifier = action.getIdentifier();
-
-				TransactionXid xid = xidFactory.createGlobalXid(identifier.getGlobalTransactionId());
-
-				Object obj = deserializer.deserialize(xid, action.getValue());
-				if (TransactionArchive.class.isInstance(obj)) {
-					TransactionArchive archive = (TransactionArchive) obj;
-					xidMap.put(identifier, archive);
-				} else if (XAResourceArchive.class.isInstance(obj)) {
-					TransactionArchive archive = xidMap.get(identifier);
-					if (archive == null) {
-						logger.error("Error occurred while recovering resource archive: {}", obj);
-						return;
-					}
-
-					XAResourceArchive resourceArchive = (XAResourceArchive) obj;
-					boolean matched = false;
+		int parallelism = Math.max(1, this.recoveryParallelism);
+		final SampleTransactionRecovery[] partitions = new SampleTransactionRecovery[parallelism == 1 ? 1 : parallelism * 4];
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i] = new SampleTransactionRecovery();
+			partitions[i].setDeserializer(deserializer);
+			partitions[i].setXidFactory(xidFactory);
+		}
 
-					List<XAResourceArchive> nativeResources = archive.getNativeResources();
-					for (int i = 0; matched == false && nativeResources != null && i < nativeResources.size(); i++) {
-						XAResourceArchive element = nativeResources.get(i);
-						if (resourceArchive.getXid().equals(element.getXid())) {
-							matched = true;
-							nativeResources.set(i, resourceArchive);
-						}
-					}
+		this.traversalLiveViews(new VirtualLoggingViewListener() {
+			public void recvOperation(VirtualLoggingView view) {
+				Xid identifier = view.getIdentifier();
 
-					XAResourceArchive optimizedResource = archive.getOptimizedResource();
-					if (matched == false && optimizedResource != null) {
-						if (resourceArchive.getXid().equals(optimizedResource.getXid())) {
-							matched = true;
-							archive.setOptimizedResource(resourceArchive);
-						}
-					}
+				ByteBuffer value = view.getValue();
+				byte[] valueByteArray = new byte[value.remaining()];
+				value.get(valueByteArray);
 
-					List<XAResourceArchive> remoteResources = archive.getRemoteResources();
-					for (int i = 0; matched == false && remoteResources != null && i < remoteResources.size(); i++) {
-						XAResourceArchive element = remoteResources.get(i);
-						if (resourceArchive.getXid().equals(element.getXid())) {
-							matched = true;
-							remoteResources.set(i, resourceArchive);
-						}
-					}
+				int index = (identifier.hashCode() & Integer.MAX_VALUE) % partitions.length;
+				partitions[index].append(identifier, valueByteArray);
+			}
+		});
 
-					if (matched == false) {
-						logger.error("Error occurred while recovering resource archive: {}, invalid resoure!", obj);
-					}
+		if (partitions.length == 1) {
+			this.recover(callback, partitions[0].call());
+			return;
+		} // end-if (partitions.length == 1)
 
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			CompletionService<List<TransactionArchive>> completionService = new ExecutorCompletionService<List<TransactionArchive>>(
+					pool);
+			int submitted = 0;
+			for (int i = 0; i < partitions.length; i++) {
+				if (partitions[i].isEmpty() == false) {
+					completionService.submit(partitions[i]);
+					submitted++;
 				}
-
 			}
-		});
 
-		for (Iterator<Map.Entry<Xid, TransactionArchive>> itr = xidMap.entrySet().iterator(); itr.hasNext();) {
-			Map.Entry<Xid, TransactionArchive> entry = itr.next();
-			TransactionArchive archive = entry.getValue();
-			if (archive == null) {
-				continue;
-			} else {
+			for (int i = 0; i < submitted; i++) {
 				try {
-					callback.recover(archive);
-				} catch (RuntimeException rex) {
-					logger.error("Error occurred while recovering transaction(xid= {}).", archive.getXid(), rex);
+					this.recover(callback, completionService.take().get());
+				} catch (ExecutionException ex) {
+					logger.error("Error occurred while recovering transactions.", ex.getCause());
 				}
 			}
+		} catch (InterruptedException ex) {
+			logger.error("Interrupted while recovering transactions.", ex);
+			Thread.currentThread().interrupt();
+		} finally {
+			pool.shutdown();
 		}
 
 	}
 
+	private void recover(TransactionRecoveryCallback callback, List<TransactionArchive> archiveList) {
+		for (int i = 0; i < archiveList.size(); i++) {
+			TransactionArchive archive = archiveList.get(i);
+			this.registerState(archive);
+			try {
+				callback.recover(archive);
+			} catch (RuntimeException rex) {
+				logger.error("Error occurred while recovering transaction(xid= {}).", archive.getXid(), rex);
+			}
+		}
+	}
+
 	public File getDefaultDirectory() {
 		String address = StringUtils.trimToEmpty(this.identifier);
 		File directory = new File(String.format("bytejta/%s", address.replaceAll("\\W", "_")));
@@ -339,10 +547,19 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 		return 0;
 	}
 
+	/* the files are upgraded to 8 only if framing is enabled, the unframed ones stay readable by the releases before. */
 	public int getMinorVersion() {
+		return this.isFramed() ? 8 : 7;
+	}
+
+	public int getMinimumMinorVersion() {
 		return 6;
 	}
 
+	public int getMaximumMinorVersion() {
+		return 8;
+	}
+
 	public String getLoggingFilePrefix() {
 		return "bytejta-";
 	}
@@ -360,6 +577,30 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 		this.initializeIfNecessary();
 	}
 
+	public int getRecoveryParallelism() {
+		return recoveryParallelism;
+	}
+
+	public void setRecoveryParallelism(int recoveryParallelism) {
+		this.recoveryParallelism = recoveryParallelism;
+	}
+
+	public int getRingBufferSize() {
+		return ringBufferSize;
+	}
+
+	public void setRingBufferSize(int ringBufferSize) {
+		this.ringBufferSize = ringBufferSize;
+	}
+
+	public boolean isDeltaRecords() {
+		return deltaRecords;
+	}
+
+	public void setDeltaRecords(boolean deltaRecords) {
+		this.deltaRecords = deltaRecords;
+	}
+
 	public TransactionBeanFactory getBeanFactory() {
 		return beanFactory;
 	}
@@ -368,4 +609,12 @@ public class SampleTransactionLogger extends VirtualLoggingSystemImpl
 		this.beanFactory = beanFactory;
 	}
 
+	public SampleTransactionDictionary getDictionary() {
+		return dictionary;
+	}
+
+	public void setDictionary(SampleTransactionDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
 }
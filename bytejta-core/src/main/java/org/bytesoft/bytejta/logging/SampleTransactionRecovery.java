@@ -0,0 +1,206 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.transaction.xa.Xid;
+
+import org.bytesoft.common.utils.ByteUtils;
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.archive.TransactionArchiveDelta;
+import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.archive.XAResourceArchiveDelta;
+import org.bytesoft.transaction.logging.ArchiveDeserializer;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.bytesoft.transaction.xa.XidFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SampleTransactionRecovery implements Callable<List<TransactionArchive>> {
+	static final Logger logger = LoggerFactory.getLogger(SampleTransactionRecovery.class);
+
+	static final int SLOT_OPTIMIZED = -1;
+
+	private final Map<Xid, List<byte[]>> recordMap = new LinkedHashMap<Xid, List<byte[]>>();
+
+	private ArchiveDeserializer deserializer;
+	private XidFactory xidFactory;
+
+	public void append(Xid identifier, byte[] valueByteArray) {
+		List<byte[]> valueList = this.recordMap.get(identifier);
+		if (valueList == null) {
+			valueList = new ArrayList<byte[]>(4);
+			this.recordMap.put(identifier, valueList);
+		}
+		valueList.add(valueByteArray);
+	}
+
+	public boolean isEmpty() {
+		return this.recordMap.isEmpty();
+	}
+
+	public List<TransactionArchive> call() {
+		List<TransactionArchive> archiveList = new ArrayList<TransactionArchive>(this.recordMap.size());
+		for (Iterator<Map.Entry<Xid, List<byte[]>>> itr = this.recordMap.entrySet().iterator(); itr.hasNext();) {
+			Map.Entry<Xid, List<byte[]>> entry = itr.next();
+			Xid identifier = entry.getKey();
+			try {
+				TransactionArchive archive = this.recover(identifier, entry.getValue());
+				if (archive != null) {
+					archiveList.add(archive);
+				}
+			} catch (RuntimeException rex) {
+				String gxid = ByteUtils.byteArrayToString(identifier.getGlobalTransactionId());
+				logger.error("Error occurred while recovering transaction(gxid= {}).", gxid, rex);
+			}
+		}
+		return archiveList;
+	}
+
+	public TransactionArchive recover(Xid identifier, List<byte[]> valueList) {
+		TransactionXid xid = this.xidFactory.createGlobalXid(identifier.getGlobalTransactionId());
+
+		TransactionArchive archive = null;
+		Map<Xid, Integer> branchMap = null;
+		for (int index = 0; index < valueList.size(); index++) {
+			Object value = this.deserializer.deserialize(xid, valueList.get(index));
+			List<?> objectList = List.class.isInstance(value) ? (List<?>) value : Collections.singletonList(value);
+			for (int i = 0; i < objectList.size(); i++) {
+				Object obj = objectList.get(i);
+				if (TransactionArchive.class.isInstance(obj)) {
+					archive = (TransactionArchive) obj;
+					branchMap = null;
+				} else if (XAResourceArchive.class.isInstance(obj)) {
+					if (archive == null) {
+						logger.error("Error occurred while recovering resource archive: {}", obj);
+						continue;
+					}
+
+					if (branchMap == null) {
+						branchMap = this.createBranchMap(archive);
+					}
+
+					XAResourceArchive resourceArchive = (XAResourceArchive) obj;
+					Integer slot = branchMap.get(resourceArchive.getXid());
+					if (slot == null) {
+						logger.error("Error occurred while recovering resource archive: {}, invalid resoure!", obj);
+					} else if (slot == SLOT_OPTIMIZED) {
+						archive.setOptimizedResource(resourceArchive);
+					} else if (slot >= 0) {
+						archive.getNativeResources().set(slot, resourceArchive);
+					} else {
+						archive.getRemoteResources().set(SLOT_OPTIMIZED - 1 - slot, resourceArchive);
+					}
+				} else if (TransactionArchiveDelta.class.isInstance(obj)) {
+					if (archive == null) {
+						logger.error("Error occurred while recovering transaction delta: {}", obj);
+						continue;
+					}
+
+					TransactionArchiveDelta delta = (TransactionArchiveDelta) obj;
+					archive.setStatus(delta.getStatus());
+					archive.setVote(delta.getVote());
+
+					List<XAResourceArchiveDelta> resources = delta.getResources();
+					if (resources.isEmpty() == false && branchMap == null) {
+						branchMap = this.createBranchMap(archive);
+					}
+					for (int j = 0; j < resources.size(); j++) {
+						this.applyResourceDelta(archive, branchMap, resources.get(j));
+					}
+				} else if (XAResourceArchiveDelta.class.isInstance(obj)) {
+					if (archive == null) {
+						logger.error("Error occurred while recovering resource delta: {}", obj);
+						continue;
+					}
+
+					if (branchMap == null) {
+						branchMap = this.createBranchMap(archive);
+					}
+
+					this.applyResourceDelta(archive, branchMap, (XAResourceArchiveDelta) obj);
+				}
+			} // end-for (int i = 0; i < objectList.size(); i++)
+		}
+
+		return archive;
+	}
+
+	private void applyResourceDelta(TransactionArchive archive, Map<Xid, Integer> branchMap, XAResourceArchiveDelta delta) {
+		Integer slot = branchMap.get(delta.getXid());
+		if (slot == null) {
+			logger.error("Error occurred while recovering resource delta: {}, invalid resoure!", delta);
+		} else if (slot == SLOT_OPTIMIZED) {
+			delta.applyTo(archive.getOptimizedResource());
+		} else if (slot >= 0) {
+			delta.applyTo(archive.getNativeResources().get(slot));
+		} else {
+			delta.applyTo(archive.getRemoteResources().get(SLOT_OPTIMIZED - 1 - slot));
+		}
+	}
+
+	private Map<Xid, Integer> createBranchMap(TransactionArchive archive) {
+		Map<Xid, Integer> branchMap = new HashMap<Xid, Integer>();
+
+		List<XAResourceArchive> nativeResources = archive.getNativeResources();
+		for (int i = 0; nativeResources != null && i < nativeResources.size(); i++) {
+			Xid branchXid = nativeResources.get(i).getXid();
+			if (branchMap.containsKey(branchXid) == false) {
+				branchMap.put(branchXid, i);
+			}
+		}
+
+		XAResourceArchive optimizedResource = archive.getOptimizedResource();
+		if (optimizedResource != null && branchMap.containsKey(optimizedResource.getXid()) == false) {
+			branchMap.put(optimizedResource.getXid(), SLOT_OPTIMIZED);
+		}
+
+		List<XAResourceArchive> remoteResources = archive.getRemoteResources();
+		for (int i = 0; remoteResources != null && i < remoteResources.size(); i++) {
+			Xid branchXid = remoteResources.get(i).getXid();
+			if (branchMap.containsKey(branchXid) == false) {
+				branchMap.put(branchXid, SLOT_OPTIMIZED - 1 - i);
+			}
+		}
+
+		return branchMap;
+	}
+
+	public ArchiveDeserializer getDeserializer() {
+		return deserializer;
+	}
+
+	public void setDeserializer(ArchiveDeserializer deserializer) {
+		this.deserializer = deserializer;
+	}
+
+	public XidFactory getXidFactory() {
+		return xidFactory;
+	}
+
+	public void setXidFactory(XidFactory xidFactory) {
+		this.xidFactory = xidFactory;
+	}
+
+}
@@ -0,0 +1,232 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands the archives over from the transaction threads to a single consumer, which serializes them in the order
+ * published and appends their records in batches. Only the callers of a durable event wait for its completion.
+ */
+public class SampleTransactionRingBuffer implements Runnable {
+	static final Logger logger = LoggerFactory.getLogger(SampleTransactionRingBuffer.class);
+
+	static final int SPIN_TIMES = Runtime.getRuntime().availableProcessors() > 1 ? 64 : 0;
+
+	private final SampleTransactionEvent[] events;
+	private final int mask;
+	private final SampleTransactionLogger transactionLogger;
+
+	/* the last claimed sequence. */
+	private final AtomicLong cursor = new AtomicLong(-1);
+	/* the last processed sequence, the slots up to it can be reused. */
+	private volatile long consumed = -1;
+
+	private final Lock lock = new ReentrantLock();
+	private final Condition condition = this.lock.newCondition();
+
+	private int batchSize = 256;
+
+	private final AtomicInteger publishing = new AtomicInteger();
+	private volatile boolean released;
+	private volatile boolean waiting;
+	private Thread thread;
+
+	public SampleTransactionRingBuffer(SampleTransactionLogger transactionLogger, int size) {
+		int capacity = 2;
+		while (capacity < size) {
+			capacity = capacity << 1;
+		}
+
+		this.events = new SampleTransactionEvent[capacity];
+		for (int i = 0; i < capacity; i++) {
+			this.events[i] = new SampleTransactionEvent();
+		}
+		this.mask = capacity - 1;
+		this.transactionLogger = transactionLogger;
+	}
+
+	public synchronized void start() {
+		if (this.thread == null) {
+			this.thread = new Thread(this, "bytejta-logging-ring");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+	}
+
+	public synchronized void stop() {
+		this.released = true;
+		if (this.thread != null) {
+			LockSupport.unpark(this.thread);
+			boolean interrupted = false;
+			while (this.thread.isAlive()) {
+				try {
+					this.thread.join();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			this.thread = null;
+		}
+	}
+
+	/**
+	 * @return false if the ring buffer has been stopped and the caller should write the archive by itself.
+	 */
+	public boolean publish(int type, Object archive, boolean durable) {
+		long sequence = 0;
+		this.publishing.incrementAndGet();
+		try {
+			if (this.released) {
+				return false;
+			}
+
+			sequence = this.cursor.incrementAndGet();
+			for (int i = 0; sequence - this.events.length > this.consumed; i++) {
+				this.idle(i);
+			}
+
+			SampleTransactionEvent event = this.events[(int) sequence & this.mask];
+			event.setType(type);
+			event.setArchive(archive);
+			event.publish(sequence);
+		} finally {
+			this.publishing.decrementAndGet();
+		}
+
+		if (this.waiting) {
+			LockSupport.unpark(this.thread);
+		}
+
+		if (durable) {
+			this.awaitCompletion(sequence);
+		}
+		return true;
+	}
+
+	private void awaitCompletion(long sequence) {
+		for (int i = 0; i < SPIN_TIMES && this.consumed < sequence; i++) {
+			Thread.yield();
+		}
+
+		if (this.consumed >= sequence) {
+			return;
+		}
+
+		try {
+			this.lock.lock();
+			while (this.consumed < sequence) {
+				this.condition.awaitUninterruptibly();
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void idle(int times) {
+		if (times < SPIN_TIMES) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(this, TimeUnit.MICROSECONDS.toNanos(50));
+		}
+	}
+
+	public void run() {
+		List<SampleTransactionEvent> eventList = new ArrayList<SampleTransactionEvent>(this.batchSize);
+		int idleTimes = 0;
+		while (this.released == false || this.publishing.get() > 0 || this.consumed < this.cursor.get()) {
+			long next = this.consumed + 1;
+			SampleTransactionEvent event = this.events[(int) next & this.mask];
+			if (event.getSequence() != next) {
+				this.await(event, next, idleTimes++);
+				continue;
+			}
+
+			idleTimes = 0;
+			long last = next;
+			eventList.add(event);
+			while (eventList.size() < this.batchSize) {
+				SampleTransactionEvent following = this.events[(int) (last + 1) & this.mask];
+				if (following.getSequence() != last + 1) {
+					break;
+				}
+				eventList.add(following);
+				last++;
+			}
+
+			try {
+				this.transactionLogger.processEvents(eventList);
+			} catch (RuntimeException rex) {
+				logger.error("Error occurred while processing the transaction-archives!", rex);
+			} catch (Error err) {
+				logger.error("Error occurred while processing the transaction-archives!", err);
+			}
+
+			for (int i = 0; i < eventList.size(); i++) {
+				eventList.get(i).clear();
+			}
+			eventList.clear();
+
+			this.complete(last);
+		}
+	}
+
+	private void await(SampleTransactionEvent event, long sequence, int times) {
+		if (times < SPIN_TIMES) {
+			Thread.yield();
+			return;
+		}
+
+		this.waiting = true;
+		if (event.getSequence() != sequence && this.released == false) {
+			LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		this.waiting = false;
+	}
+
+	private void complete(long sequence) {
+		try {
+			this.lock.lock();
+			this.consumed = sequence;
+			this.condition.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+}
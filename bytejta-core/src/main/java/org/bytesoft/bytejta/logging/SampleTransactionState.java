@@ -0,0 +1,158 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.xa.Xid;
+
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.archive.TransactionArchiveDelta;
+import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.archive.XAResourceArchiveDelta;
+import org.bytesoft.transaction.supports.resource.XAResourceDescriptor;
+
+/**
+ * The last state of a transaction written to the tx-log, used to decide whether an update can be logged as a delta.
+ */
+public class SampleTransactionState {
+	private boolean coordinator;
+	private String propagatedBy;
+	private int transactionStrategyType;
+	private int recoveredTimes;
+	private long recoveredAt;
+	private final List<String> branchList = new ArrayList<String>();
+	private final Map<Xid, XAResourceArchiveDelta> branchMap = new HashMap<Xid, XAResourceArchiveDelta>();
+
+	public SampleTransactionState(TransactionArchive archive) {
+		this.reset(archive);
+	}
+
+	public void reset(TransactionArchive archive) {
+		this.coordinator = archive.isCoordinator();
+		this.propagatedBy = String.valueOf(archive.getPropagatedBy());
+		this.transactionStrategyType = archive.getTransactionStrategyType();
+		this.recoveredTimes = archive.getRecoveredTimes();
+		this.recoveredAt = archive.getRecoveredAt();
+
+		this.branchList.clear();
+		this.branchMap.clear();
+		this.collectBranches(archive, this.branchList);
+
+		List<XAResourceArchive> resourceList = this.getResourceList(archive);
+		for (int i = 0; i < resourceList.size(); i++) {
+			XAResourceArchive resourceArchive = resourceList.get(i);
+			this.branchMap.put(resourceArchive.getXid(), new XAResourceArchiveDelta(resourceArchive));
+		}
+	}
+
+	/**
+	 * Returns the delta between the logged state and the given archive, or null if the archive can not be described
+	 * by a delta (e.g. a branch has been enlisted since it was logged last time).
+	 */
+	public TransactionArchiveDelta createDelta(TransactionArchive archive) {
+		if (this.coordinator != archive.isCoordinator()) {
+			return null;
+		} else if (this.propagatedBy.equals(String.valueOf(archive.getPropagatedBy())) == false) {
+			return null;
+		} else if (this.transactionStrategyType != archive.getTransactionStrategyType()) {
+			return null;
+		} else if (this.recoveredTimes != archive.getRecoveredTimes() || this.recoveredAt != archive.getRecoveredAt()) {
+			return null;
+		}
+
+		List<String> currentList = new ArrayList<String>(this.branchList.size());
+		this.collectBranches(archive, currentList);
+		if (this.branchList.equals(currentList) == false) {
+			return null;
+		}
+
+		TransactionArchiveDelta delta = new TransactionArchiveDelta();
+		delta.setXid(archive.getXid());
+		delta.setStatus(archive.getStatus());
+		delta.setVote(archive.getVote());
+
+		List<XAResourceArchive> resourceList = this.getResourceList(archive);
+		for (int i = 0; i < resourceList.size(); i++) {
+			XAResourceArchive resourceArchive = resourceList.get(i);
+			XAResourceArchiveDelta branch = this.branchMap.get(resourceArchive.getXid());
+			if (branch.matches(resourceArchive) == false) {
+				XAResourceArchiveDelta resourceDelta = new XAResourceArchiveDelta(resourceArchive);
+				this.branchMap.put(resourceArchive.getXid(), resourceDelta);
+				delta.getResources().add(resourceDelta);
+			}
+		}
+
+		return delta;
+	}
+
+	/**
+	 * Returns the delta of the given branch, or null if the branch is unknown or its descriptor has changed.
+	 */
+	public XAResourceArchiveDelta createDelta(XAResourceArchive archive) {
+		XAResourceArchiveDelta branch = this.branchMap.get(archive.getXid());
+		if (branch == null) {
+			return null;
+		} else if (this.branchList.contains(this.getBranchKey(archive)) == false) {
+			return null;
+		}
+
+		XAResourceArchiveDelta resourceDelta = new XAResourceArchiveDelta(archive);
+		this.branchMap.put(archive.getXid(), resourceDelta);
+		return resourceDelta;
+	}
+
+	public void reset(XAResourceArchive archive) {
+		if (this.branchMap.containsKey(archive.getXid())) {
+			this.branchMap.put(archive.getXid(), new XAResourceArchiveDelta(archive));
+		}
+	}
+
+	private List<XAResourceArchive> getResourceList(TransactionArchive archive) {
+		List<XAResourceArchive> resourceList = new ArrayList<XAResourceArchive>(archive.getNativeResources());
+		if (archive.getOptimizedResource() != null) {
+			resourceList.add(archive.getOptimizedResource());
+		}
+		resourceList.addAll(archive.getRemoteResources());
+		return resourceList;
+	}
+
+	private void collectBranches(TransactionArchive archive, List<String> branches) {
+		List<XAResourceArchive> nativeResources = archive.getNativeResources();
+		for (int i = 0; i < nativeResources.size(); i++) {
+			branches.add(this.getBranchKey(nativeResources.get(i)));
+		}
+
+		XAResourceArchive optimizedResource = archive.getOptimizedResource();
+		branches.add(optimizedResource == null ? null : this.getBranchKey(optimizedResource));
+
+		List<XAResourceArchive> remoteResources = archive.getRemoteResources();
+		for (int i = 0; i < remoteResources.size(); i++) {
+			branches.add(this.getBranchKey(remoteResources.get(i)));
+		}
+	}
+
+	private String getBranchKey(XAResourceArchive archive) {
+		XAResourceDescriptor descriptor = archive.getDescriptor();
+		String type = descriptor == null ? null : descriptor.getClass().getName();
+		String identifier = descriptor == null ? null : descriptor.getIdentifier();
+		return String.format("%s/%s/%s", archive.getXid(), type, identifier);
+	}
+
+}
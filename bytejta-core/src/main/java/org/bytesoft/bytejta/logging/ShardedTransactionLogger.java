@@ -0,0 +1,310 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.transaction.xa.Xid;
+
+import org.apache.commons.lang3.StringUtils;
+import org.bytesoft.transaction.TransactionBeanFactory;
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.aware.TransactionBeanFactoryAware;
+import org.bytesoft.transaction.aware.TransactionEndpointAware;
+import org.bytesoft.transaction.logging.LoggingBatchable;
+import org.bytesoft.transaction.logging.LoggingDictionary;
+import org.bytesoft.transaction.logging.LoggingFlushable;
+import org.bytesoft.transaction.logging.TransactionLogger;
+import org.bytesoft.transaction.recovery.TransactionRecoveryCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ShardedTransactionLogger
+		implements TransactionLogger, LoggingFlushable, LoggingBatchable, LoggingDictionary, TransactionBeanFactoryAware,
+		TransactionEndpointAware {
+	static final Logger logger = LoggerFactory.getLogger(ShardedTransactionLogger.class);
+
+	@javax.inject.Inject
+	private TransactionBeanFactory beanFactory;
+	private String identifier;
+
+	private int shards = 4;
+	private List<File> directories = new ArrayList<File>();
+
+	private boolean optimized = true;
+	private boolean segmented;
+	private boolean groupCommit;
+	private boolean deltaRecords;
+	private boolean asyncAppend;
+	private boolean framed;
+	private int ringBufferSize;
+	private int recoveryParallelism = Runtime.getRuntime().availableProcessors();
+
+	private volatile SampleTransactionLogger[] loggers;
+
+	@PostConstruct
+	public void construct() {
+		this.initializeIfNecessary();
+	}
+
+	private synchronized void initializeIfNecessary() {
+		if (this.loggers != null || StringUtils.isBlank(this.identifier)) {
+			return;
+		}
+
+		SampleTransactionLogger[] shardLoggers = new SampleTransactionLogger[Math.max(1, this.shards)];
+		File defaultDirectory = null;
+		for (int i = 0; i < shardLoggers.length; i++) {
+			SampleTransactionLogger shardLogger = new SampleTransactionLogger();
+			shardLogger.setBeanFactory(this.beanFactory);
+			shardLogger.setOptimized(this.optimized);
+			shardLogger.setSegmented(this.segmented);
+			shardLogger.setGroupCommit(this.groupCommit);
+			shardLogger.setDeltaRecords(this.deltaRecords);
+			shardLogger.setAsyncAppend(this.asyncAppend);
+			shardLogger.setFramed(this.framed);
+			shardLogger.setRingBufferSize(this.ringBufferSize);
+			shardLogger.setRecoveryParallelism(this.recoveryParallelism);
+			if (i > 0) /* the dictionary is shared by all the shards */ {
+				shardLogger.setDictionary(shardLoggers[0].getDictionary());
+			}
+
+			// shard 0 keeps the directory of the non-sharded logger, so that its records are taken over on recovery.
+			if (this.directories.isEmpty() == false) {
+				File parent = this.directories.get(i % this.directories.size());
+				shardLogger.setDirectory(new File(parent, String.format("shard-%d", i)));
+			} else if (i > 0) {
+				shardLogger.setDirectory(new File(defaultDirectory, String.format("shard-%d", i)));
+			}
+
+			shardLogger.setEndpoint(this.identifier);
+			shardLoggers[i] = shardLogger;
+
+			if (i == 0) {
+				defaultDirectory = shardLogger.getDirectory();
+			}
+		}
+
+		this.loggers = shardLoggers;
+	}
+
+	private SampleTransactionLogger getShard(Xid xid) {
+		SampleTransactionLogger[] shardLoggers = this.loggers;
+		if (shardLoggers == null) {
+			throw new IllegalStateException("The transaction logger has not been initialized yet!");
+		}
+
+		int hash = Arrays.hashCode(xid.getGlobalTransactionId());
+		return shardLoggers[(hash & Integer.MAX_VALUE) % shardLoggers.length];
+	}
+
+	public void createTransaction(TransactionArchive archive) {
+		this.getShard(archive.getXid()).createTransaction(archive);
+	}
+
+	public void updateTransaction(TransactionArchive archive) {
+		this.getShard(archive.getXid()).updateTransaction(archive);
+	}
+
+	public void deleteTransaction(TransactionArchive archive) {
+		this.getShard(archive.getXid()).deleteTransaction(archive);
+	}
+
+	public void createResource(XAResourceArchive archive) {
+		this.getShard(archive.getXid()).createResource(archive);
+	}
+
+	public void updateResource(XAResourceArchive archive) {
+		this.getShard(archive.getXid()).updateResource(archive);
+	}
+
+	public void deleteResource(XAResourceArchive archive) {
+		this.getShard(archive.getXid()).deleteResource(archive);
+	}
+
+	public void createParticipant(XAResourceArchive archive) {
+		this.getShard(archive.getXid()).createParticipant(archive);
+	}
+
+	public void updateParticipant(XAResourceArchive archive) {
+		this.getShard(archive.getXid()).updateParticipant(archive);
+	}
+
+	public void updateParticipants(List<XAResourceArchive> archiveList) {
+		if (archiveList.isEmpty() == false) {
+			this.getShard(archiveList.get(0).getXid()).updateParticipants(archiveList);
+		} // end-if (archiveList.isEmpty() == false)
+	}
+
+	public void deleteParticipant(XAResourceArchive archive) {
+		this.getShard(archive.getXid()).deleteParticipant(archive);
+	}
+
+	public void recover(final TransactionRecoveryCallback callback) {
+		SampleTransactionLogger[] shardLoggers = this.loggers;
+		for (int i = 0; shardLoggers != null && i < shardLoggers.length; i++) {
+			final SampleTransactionLogger shardLogger = shardLoggers[i];
+			shardLogger.recover(new TransactionRecoveryCallback() {
+				public void recover(TransactionArchive archive) {
+					SampleTransactionLogger target = getShard(archive.getXid());
+					if (target != shardLogger) /* the number of shards has been changed */ {
+						target.createTransaction(archive);
+						shardLogger.deleteTransaction(archive);
+					}
+					callback.recover(archive);
+				}
+			});
+		}
+	}
+
+	public int register(String value) {
+		SampleTransactionLogger[] shardLoggers = this.loggers;
+		return shardLoggers == null ? 0 : shardLoggers[0].register(value);
+	}
+
+	public String lookup(int id) {
+		SampleTransactionLogger[] shardLoggers = this.loggers;
+		if (shardLoggers == null) {
+			throw new IllegalStateException("The transaction logger has not been initialized yet!");
+		}
+		return shardLoggers[0].lookup(id);
+	}
+
+	public void flushImmediately() {
+		SampleTransactionLogger[] shardLoggers = this.loggers;
+		for (int i = 0; shardLoggers != null && i < shardLoggers.length; i++) {
+			shardLoggers[i].flushImmediately();
+		}
+	}
+
+	public void shutdown() {
+		SampleTransactionLogger[] shardLoggers = this.loggers;
+		for (int i = 0; shardLoggers != null && i < shardLoggers.length; i++) {
+			try {
+				shardLoggers[i].shutdown();
+			} catch (RuntimeException rex) {
+				logger.error("Error occurred while shutting down the logging shard {}.", i, rex);
+			}
+		}
+	}
+
+	public String getEndpoint() {
+		return identifier;
+	}
+
+	public void setEndpoint(String identifier) {
+		this.identifier = identifier;
+		this.initializeIfNecessary();
+	}
+
+	public int getShards() {
+		return shards;
+	}
+
+	public void setShards(int shards) {
+		this.shards = shards;
+	}
+
+	public List<File> getDirectories() {
+		return directories;
+	}
+
+	public void setDirectories(List<File> directories) {
+		this.directories = directories;
+	}
+
+	public boolean isOptimized() {
+		return optimized;
+	}
+
+	public void setOptimized(boolean optimized) {
+		this.optimized = optimized;
+	}
+
+	public boolean isSegmented() {
+		return segmented;
+	}
+
+	public void setSegmented(boolean segmented) {
+		this.segmented = segmented;
+	}
+
+	public boolean isGroupCommit() {
+		return groupCommit;
+	}
+
+	public void setGroupCommit(boolean groupCommit) {
+		this.groupCommit = groupCommit;
+	}
+
+	public boolean isDeltaRecords() {
+		return deltaRecords;
+	}
+
+	public void setDeltaRecords(boolean deltaRecords) {
+		this.deltaRecords = deltaRecords;
+	}
+
+	public boolean isAsyncAppend() {
+		return asyncAppend;
+	}
+
+	public void setAsyncAppend(boolean asyncAppend) {
+		this.asyncAppend = asyncAppend;
+	}
+
+	public boolean isFramed() {
+		return framed;
+	}
+
+	public void setFramed(boolean framed) {
+		this.framed = framed;
+	}
+
+	public int getRecoveryParallelism() {
+		return recoveryParallelism;
+	}
+
+	public void setRecoveryParallelism(int recoveryParallelism) {
+		this.recoveryParallelism = recoveryParallelism;
+	}
+
+	public int getRingBufferSize() {
+		return ringBufferSize;
+	}
+
+	public void setRingBufferSize(int ringBufferSize) {
+		this.ringBufferSize = ringBufferSize;
+	}
+
+	public TransactionBeanFactory getBeanFactory() {
+		return beanFactory;
+	}
+
+	public void setBeanFactory(TransactionBeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+		SampleTransactionLogger[] shardLoggers = this.loggers;
+		for (int i = 0; shardLoggers != null && i < shardLoggers.length; i++) {
+			shardLoggers[i].setBeanFactory(beanFactory);
+		}
+	}
+
+}
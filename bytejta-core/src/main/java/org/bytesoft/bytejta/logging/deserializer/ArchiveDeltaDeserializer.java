@@ -0,0 +1,113 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.deserializer;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import javax.transaction.xa.Xid;
+
+import org.bytesoft.transaction.archive.TransactionArchiveDelta;
+import org.bytesoft.transaction.archive.XAResourceArchiveDelta;
+import org.bytesoft.transaction.logging.ArchiveDeserializer;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.bytesoft.transaction.xa.XidFactory;
+
+/**
+ * Serializes the status/vote transitions of a transaction and its branches, which are folded into the base archive
+ * during recovery and compression.
+ */
+public class ArchiveDeltaDeserializer implements ArchiveDeserializer {
+	static final int RESOURCE_DELTA_LENGTH = XidFactory.BRANCH_QUALIFIER_LENGTH + 2;
+
+	static final int FLAG_READONLY = 0x1;
+	static final int FLAG_COMMITTED = 0x2;
+	static final int FLAG_ROLLEDBACK = 0x4;
+	static final int FLAG_COMPLETED = 0x8;
+	static final int FLAG_HEURISTIC = 0x10;
+
+	public byte[] serialize(TransactionXid xid, Object obj) {
+		if (TransactionArchiveDelta.class.isInstance(obj)) {
+			TransactionArchiveDelta delta = (TransactionArchiveDelta) obj;
+			List<XAResourceArchiveDelta> resources = delta.getResources();
+
+			ByteBuffer buffer = ByteBuffer.allocate(3 + resources.size() * RESOURCE_DELTA_LENGTH);
+			buffer.put((byte) delta.getStatus());
+			buffer.put((byte) delta.getVote());
+			buffer.put((byte) resources.size());
+			for (int i = 0; i < resources.size(); i++) {
+				this.serialize(buffer, resources.get(i));
+			}
+			return buffer.array();
+		} else if (XAResourceArchiveDelta.class.isInstance(obj)) {
+			ByteBuffer buffer = ByteBuffer.allocate(RESOURCE_DELTA_LENGTH);
+			this.serialize(buffer, (XAResourceArchiveDelta) obj);
+			return buffer.array();
+		} else {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	private void serialize(ByteBuffer buffer, XAResourceArchiveDelta delta) {
+		int flags = 0;
+		flags |= delta.isReadonly() ? FLAG_READONLY : 0;
+		flags |= delta.isCommitted() ? FLAG_COMMITTED : 0;
+		flags |= delta.isRolledback() ? FLAG_ROLLEDBACK : 0;
+		flags |= delta.isCompleted() ? FLAG_COMPLETED : 0;
+		flags |= delta.isHeuristic() ? FLAG_HEURISTIC : 0;
+
+		buffer.put(delta.getXid().getBranchQualifier(), 0, XidFactory.BRANCH_QUALIFIER_LENGTH);
+		buffer.put((byte) delta.getVote());
+		buffer.put((byte) flags);
+	}
+
+	public Object deserialize(TransactionXid xid, byte[] array) {
+		ByteBuffer buffer = ByteBuffer.wrap(array);
+		if (array.length == RESOURCE_DELTA_LENGTH) {
+			return this.deserialize(xid, buffer);
+		}
+
+		TransactionArchiveDelta delta = new TransactionArchiveDelta();
+		delta.setXid(xid);
+		delta.setStatus(buffer.get());
+		delta.setVote(buffer.get());
+		int resourceNumber = buffer.get() & 0xFF;
+		for (int i = 0; i < resourceNumber; i++) {
+			delta.getResources().add(this.deserialize(xid, buffer));
+		}
+		return delta;
+	}
+
+	private XAResourceArchiveDelta deserialize(TransactionXid xid, ByteBuffer buffer) {
+		byte[] branchQualifier = new byte[XidFactory.BRANCH_QUALIFIER_LENGTH];
+		buffer.get(branchQualifier);
+		Xid branchXid = new TransactionXid(xid.getFormatId(), xid.getGlobalTransactionId(), branchQualifier);
+
+		int vote = buffer.get();
+		int flags = buffer.get();
+
+		XAResourceArchiveDelta delta = new XAResourceArchiveDelta();
+		delta.setXid(branchXid);
+		delta.setVote(vote);
+		delta.setReadonly((flags & FLAG_READONLY) != 0);
+		delta.setCommitted((flags & FLAG_COMMITTED) != 0);
+		delta.setRolledback((flags & FLAG_ROLLEDBACK) != 0);
+		delta.setCompleted((flags & FLAG_COMPLETED) != 0);
+		delta.setHeuristic((flags & FLAG_HEURISTIC) != 0);
+		return delta;
+	}
+
+}
@@ -0,0 +1,302 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.deserializer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.bytesoft.bytejta.supports.resource.CommonResourceDescriptor;
+import org.bytesoft.bytejta.supports.resource.LocalXAResourceDescriptor;
+import org.bytesoft.bytejta.supports.resource.RemoteResourceDescriptor;
+import org.bytesoft.bytejta.supports.resource.UnidentifiedResourceDescriptor;
+import org.bytesoft.transaction.TransactionBeanFactory;
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.aware.TransactionBeanFactoryAware;
+import org.bytesoft.transaction.logging.ArchiveDeserializer;
+import org.bytesoft.transaction.logging.LoggingDictionary;
+import org.bytesoft.transaction.logging.TransactionLogger;
+import org.bytesoft.transaction.supports.resource.XAResourceDescriptor;
+import org.bytesoft.transaction.supports.serialize.XAResourceDeserializer;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.bytesoft.transaction.xa.XidFactory;
+
+/**
+ * Format v7 of the transaction/resource archives: counts, lengths and times are varints, and the resource identifiers
+ * and the propagator are replaced by the ids of the logging dictionary(0 means the string follows inline).
+ */
+public class CompactArchiveDeserializer implements ArchiveDeserializer, TransactionBeanFactoryAware {
+	static final Charset CHARSET = Charset.forName("UTF-8");
+
+	static final int FLAG_READONLY = 0x1;
+	static final int FLAG_COMMITTED = 0x2;
+	static final int FLAG_ROLLEDBACK = 0x4;
+	static final int FLAG_COMPLETED = 0x8;
+	static final int FLAG_HEURISTIC = 0x10;
+
+	static final int FLAG_COORDINATOR = 0x1;
+	static final int FLAG_OPTIMIZED = 0x2;
+	static final int FLAG_PROPAGATED = 0x4;
+
+	@javax.inject.Inject
+	private TransactionBeanFactory beanFactory;
+	private LoggingDictionary dictionary;
+
+	public byte[] serialize(TransactionXid xid, Object obj) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream(64);
+		if (TransactionArchive.class.isInstance(obj)) {
+			this.serializeTransaction(output, xid, (TransactionArchive) obj);
+		} else if (XAResourceArchive.class.isInstance(obj)) {
+			this.serializeResource(output, (XAResourceArchive) obj);
+		} else {
+			throw new IllegalArgumentException();
+		}
+		return output.toByteArray();
+	}
+
+	/* status(1) + vote(1) + flags(1) + strategy(1) + native(v) + remote(v) + [propagatedBy] + times(v) + millis(v) + [length(v) + resource]* */
+	private void serializeTransaction(ByteArrayOutputStream output, TransactionXid xid, TransactionArchive archive) {
+		XAResourceArchive optimizedArchive = archive.getOptimizedResource();
+		List<XAResourceArchive> nativeArchiveList = archive.getNativeResources();
+		List<XAResourceArchive> remoteArchiveList = archive.getRemoteResources();
+		Object propagatedBy = archive.getPropagatedBy();
+
+		int flags = 0;
+		flags |= archive.isCoordinator() ? FLAG_COORDINATOR : 0;
+		flags |= optimizedArchive != null ? FLAG_OPTIMIZED : 0;
+		flags |= propagatedBy != null ? FLAG_PROPAGATED : 0;
+
+		output.write(archive.getStatus());
+		output.write(archive.getVote());
+		output.write(flags);
+		output.write(archive.getTransactionStrategyType());
+		writeVarint(output, nativeArchiveList.size());
+		writeVarint(output, remoteArchiveList.size());
+		if (propagatedBy != null) {
+			this.writeString(output, String.valueOf(propagatedBy));
+		}
+		writeVarint(output, archive.getRecoveredTimes());
+		writeVarint(output, archive.getRecoveredAt());
+
+		for (int i = 0; i < nativeArchiveList.size(); i++) {
+			this.writeResource(output, nativeArchiveList.get(i));
+		}
+		if (optimizedArchive != null) {
+			this.writeResource(output, optimizedArchive);
+		}
+		for (int i = 0; i < remoteArchiveList.size(); i++) {
+			this.writeResource(output, remoteArchiveList.get(i));
+		}
+	}
+
+	private void writeResource(ByteArrayOutputStream output, XAResourceArchive archive) {
+		ByteArrayOutputStream element = new ByteArrayOutputStream(32);
+		this.serializeResource(element, archive);
+		writeVarint(output, element.size());
+		output.write(element.toByteArray(), 0, element.size());
+	}
+
+	/* branch(16) + type(1) + [identifier] + vote(1) + flags(1) */
+	private void serializeResource(ByteArrayOutputStream output, XAResourceArchive archive) {
+		XAResourceDescriptor descriptor = archive.getDescriptor();
+		int resourceType = 0x0;
+		if (CommonResourceDescriptor.class.isInstance(descriptor)) {
+			resourceType = 0x1;
+		} else if (RemoteResourceDescriptor.class.isInstance(descriptor)) {
+			resourceType = 0x2;
+		} else if (LocalXAResourceDescriptor.class.isInstance(descriptor)) {
+			resourceType = 0x3;
+		}
+
+		int flags = 0;
+		flags |= archive.isReadonly() ? FLAG_READONLY : 0;
+		flags |= archive.isCommitted() ? FLAG_COMMITTED : 0;
+		flags |= archive.isRolledback() ? FLAG_ROLLEDBACK : 0;
+		flags |= archive.isCompleted() ? FLAG_COMPLETED : 0;
+		flags |= archive.isHeuristic() ? FLAG_HEURISTIC : 0;
+
+		output.write(archive.getXid().getBranchQualifier(), 0, XidFactory.BRANCH_QUALIFIER_LENGTH);
+		output.write(resourceType);
+		if (resourceType != 0x0) {
+			this.writeString(output, descriptor.getIdentifier());
+		}
+		output.write(archive.getVote());
+		output.write(flags);
+	}
+
+	public Object deserialize(TransactionXid xid, byte[] array) {
+		throw new UnsupportedOperationException("The type of the archive is required!");
+	}
+
+	public TransactionArchive deserializeTransaction(TransactionXid xid, byte[] array) {
+		ByteBuffer buffer = ByteBuffer.wrap(array);
+
+		TransactionArchive archive = new TransactionArchive();
+		archive.setXid(xid);
+		archive.setStatus(buffer.get());
+		archive.setVote(buffer.get());
+		int flags = buffer.get();
+		archive.setCoordinator((flags & FLAG_COORDINATOR) != 0);
+		archive.setTransactionStrategyType(buffer.get());
+
+		int nativeArchiveNumber = (int) readVarint(buffer);
+		int remoteArchiveNumber = (int) readVarint(buffer);
+		if ((flags & FLAG_PROPAGATED) != 0) {
+			archive.setPropagatedBy(this.readString(buffer));
+		}
+		archive.setRecoveredTimes((int) readVarint(buffer));
+		archive.setRecoveredAt(readVarint(buffer));
+
+		for (int i = 0; i < nativeArchiveNumber; i++) {
+			archive.getNativeResources().add(this.readResource(xid, buffer));
+		}
+		if ((flags & FLAG_OPTIMIZED) != 0) {
+			archive.setOptimizedResource(this.readResource(xid, buffer));
+		}
+		for (int i = 0; i < remoteArchiveNumber; i++) {
+			archive.getRemoteResources().add(this.readResource(xid, buffer));
+		}
+
+		return archive;
+	}
+
+	private XAResourceArchive readResource(TransactionXid xid, ByteBuffer buffer) {
+		int length = (int) readVarint(buffer);
+		ByteBuffer element = buffer.slice();
+		element.limit(length);
+		buffer.position(buffer.position() + length);
+		return this.deserializeResource(xid, element);
+	}
+
+	public XAResourceArchive deserializeResource(TransactionXid xid, byte[] array) {
+		return this.deserializeResource(xid, ByteBuffer.wrap(array));
+	}
+
+	private XAResourceArchive deserializeResource(TransactionXid xid, ByteBuffer buffer) {
+		XAResourceDeserializer deserializer = this.beanFactory.getResourceDeserializer();
+		XidFactory xidFactory = this.beanFactory.getXidFactory();
+
+		XAResourceArchive archive = new XAResourceArchive();
+
+		byte[] branchQualifier = new byte[XidFactory.BRANCH_QUALIFIER_LENGTH];
+		buffer.get(branchQualifier);
+		TransactionXid branchXid = xidFactory.createBranchXid(xid, branchQualifier);
+		archive.setXid(branchXid);
+
+		int resourceType = buffer.get();
+		XAResourceDescriptor descriptor = null;
+		if (resourceType == 0x1 || resourceType == 0x2 || resourceType == 0x3) {
+			archive.setIdentified(true);
+			descriptor = deserializer.deserialize(this.readString(buffer));
+		} else {
+			descriptor = new UnidentifiedResourceDescriptor();
+		}
+
+		if (CommonResourceDescriptor.class.isInstance(descriptor)) {
+			((CommonResourceDescriptor) descriptor).setRecoverXid(branchXid);
+		}
+
+		archive.setDescriptor(descriptor);
+
+		archive.setVote(buffer.get());
+		int flags = buffer.get();
+		archive.setReadonly((flags & FLAG_READONLY) != 0);
+		archive.setCommitted((flags & FLAG_COMMITTED) != 0);
+		archive.setRolledback((flags & FLAG_ROLLEDBACK) != 0);
+		archive.setCompleted((flags & FLAG_COMPLETED) != 0);
+		archive.setHeuristic((flags & FLAG_HEURISTIC) != 0);
+
+		return archive;
+	}
+
+	private void writeString(ByteArrayOutputStream output, String value) {
+		LoggingDictionary loggingDictionary = this.getLoggingDictionary();
+		int id = loggingDictionary == null ? 0 : loggingDictionary.register(value);
+		writeVarint(output, id);
+		if (id == 0) {
+			byte[] byteArray = value.getBytes(CHARSET);
+			writeVarint(output, byteArray.length);
+			output.write(byteArray, 0, byteArray.length);
+		}
+	}
+
+	private String readString(ByteBuffer buffer) {
+		int id = (int) readVarint(buffer);
+		if (id != 0) {
+			LoggingDictionary loggingDictionary = this.getLoggingDictionary();
+			if (loggingDictionary == null) {
+				throw new IllegalStateException("The logging dictionary is not available!");
+			}
+			return loggingDictionary.lookup(id);
+		}
+
+		byte[] byteArray = new byte[(int) readVarint(buffer)];
+		buffer.get(byteArray);
+		return new String(byteArray, CHARSET);
+	}
+
+	private LoggingDictionary getLoggingDictionary() {
+		if (this.dictionary != null) {
+			return this.dictionary;
+		}
+
+		TransactionLogger transactionLogger = this.beanFactory == null ? null : this.beanFactory.getTransactionLogger();
+		return LoggingDictionary.class.isInstance(transactionLogger) ? (LoggingDictionary) transactionLogger : null;
+	}
+
+	static void writeVarint(ByteArrayOutputStream output, long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException();
+		}
+
+		while ((value & ~0x7FL) != 0) {
+			output.write((int) ((value & 0x7F) | 0x80));
+			value = value >>> 7;
+		}
+		output.write((int) value);
+	}
+
+	static long readVarint(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int current = buffer.get();
+			value |= (long) (current & 0x7F) << shift;
+			if ((current & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalStateException("Malformed varint!");
+	}
+
+	public LoggingDictionary getDictionary() {
+		return dictionary;
+	}
+
+	public void setDictionary(LoggingDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	public TransactionBeanFactory getBeanFactory() {
+		return this.beanFactory;
+	}
+
+	public void setBeanFactory(TransactionBeanFactory tbf) {
+		this.beanFactory = tbf;
+	}
+
+}
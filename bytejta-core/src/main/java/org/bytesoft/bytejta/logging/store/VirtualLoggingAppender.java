@@ -0,0 +1,124 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends the records which need not be durable before returning to the caller(e.g. the terminal state of a
+ * transaction) in batches, off the caller's thread.
+ */
+public class VirtualLoggingAppender implements Runnable {
+	static final Logger logger = LoggerFactory.getLogger(VirtualLoggingAppender.class);
+
+	private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<byte[]>();
+	private final VirtualLoggingSystemImpl loggingSystem;
+
+	private int batchSize = 256;
+
+	private volatile boolean released;
+	private Thread thread;
+
+	public VirtualLoggingAppender(VirtualLoggingSystemImpl loggingSystem) {
+		this.loggingSystem = loggingSystem;
+	}
+
+	public synchronized void start() {
+		if (this.thread == null) {
+			this.thread = new Thread(this, "bytejta-logging-appender");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+	}
+
+	public synchronized void stop() {
+		this.released = true;
+		if (this.thread != null) {
+			boolean interrupted = false;
+			while (this.thread.isAlive()) {
+				try {
+					this.thread.join();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			this.thread = null;
+		}
+
+		List<byte[]> byteArrayList = new ArrayList<byte[]>();
+		this.queue.drainTo(byteArrayList);
+		if (byteArrayList.isEmpty() == false) {
+			this.append(byteArrayList);
+		}
+	}
+
+	/**
+	 * @return false if the appender has been stopped and the caller should write the record by itself.
+	 */
+	public boolean submit(byte[] byteArray) {
+		this.queue.offer(byteArray);
+		return this.released == false || this.queue.remove(byteArray) == false;
+	}
+
+	public void run() {
+		List<byte[]> byteArrayList = new ArrayList<byte[]>(this.batchSize);
+		while (this.released == false || this.queue.isEmpty() == false) {
+			try {
+				byte[] byteArray = this.queue.poll(100, TimeUnit.MILLISECONDS);
+				if (byteArray == null) {
+					continue;
+				}
+
+				byteArrayList.add(byteArray);
+				this.queue.drainTo(byteArrayList, this.batchSize - byteArrayList.size());
+			} catch (InterruptedException ex) {
+				logger.debug(ex.getMessage(), ex);
+			}
+
+			if (byteArrayList.isEmpty() == false) {
+				this.append(byteArrayList);
+				byteArrayList.clear();
+			}
+		}
+	}
+
+	private void append(List<byte[]> byteArrayList) {
+		try {
+			this.loggingSystem.appendAll(byteArrayList);
+		} catch (RuntimeException rex) {
+			logger.error("Error occurred while appending the transaction log!", rex);
+		}
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the logging file by positional channel writes instead of the mapped regions, the regions are still used for
+ * reading since both share the page cache.
+ */
+public class VirtualLoggingChannel {
+	static final Logger logger = LoggerFactory.getLogger(VirtualLoggingChannel.class);
+
+	private final FileChannel channel;
+	private final boolean dsync;
+
+	public VirtualLoggingChannel(File file, boolean dsync) throws IOException {
+		OpenOption[] options = dsync //
+				? new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.DSYNC } //
+				: new OpenOption[] { StandardOpenOption.WRITE };
+		this.channel = FileChannel.open(file.toPath(), options);
+		this.dsync = dsync;
+	}
+
+	/**
+	 * Not synchronized, the regions reserved by the appenders are written by concurrent positional writes.
+	 */
+	public void write(long position, byte[] byteArray) {
+		ByteBuffer buffer = ByteBuffer.wrap(byteArray);
+		try {
+			while (buffer.hasRemaining()) {
+				this.channel.write(buffer, position + buffer.position());
+			}
+		} catch (IOException ex) {
+			throw new IllegalStateException("Error occurred while writing the logging file!", ex);
+		}
+	}
+
+	public void force() {
+		if (this.dsync) {
+			return; // every write is durable already
+		}
+
+		try {
+			this.channel.force(false);
+		} catch (IOException ex) {
+			throw new IllegalStateException("Error occurred while forcing the logging file!", ex);
+		}
+	}
+
+	public void closeQuietly() {
+		try {
+			this.channel.close();
+		} catch (Exception ex) {
+			logger.debug(ex.getMessage(), ex);
+		}
+	}
+
+	public boolean isDsync() {
+		return dsync;
+	}
+
+}
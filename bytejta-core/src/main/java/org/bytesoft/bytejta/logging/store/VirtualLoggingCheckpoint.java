@@ -0,0 +1,264 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import javax.transaction.xa.Xid;
+
+import org.bytesoft.transaction.logging.store.VirtualLoggingKey;
+import org.bytesoft.transaction.logging.store.VirtualLoggingRecord;
+import org.bytesoft.transaction.logging.store.VirtualLoggingViewListener;
+import org.bytesoft.transaction.xa.XidFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Snapshot of the live records of the master logging file up to a position: generation(8) + position(8) + count(4) +
+ * [gtrid(16) + positions(4 + 8*n) + records(4 + [length(4) + record]*)]* + crc32(8).
+ */
+public class VirtualLoggingCheckpoint {
+	static final Logger logger = LoggerFactory.getLogger(VirtualLoggingCheckpoint.class);
+
+	private long generation;
+	private long position;
+	private final Map<Xid, long[]> positionMap = new HashMap<Xid, long[]>();
+	private final Map<Xid, List<byte[]>> recordMap = new HashMap<Xid, List<byte[]>>();
+
+	public static VirtualLoggingCheckpoint load(File file) {
+		if (file.exists() == false) {
+			return null;
+		}
+
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+			if (buffer.remaining() < 8 + 8 + 4 + 8) {
+				logger.warn("Incomplete logging checkpoint {} found, ignored!", file.getAbsolutePath());
+				return null;
+			}
+
+			CRC32 crc32 = new CRC32();
+			crc32.update(buffer.array(), 0, buffer.limit() - 8);
+			if (crc32.getValue() != buffer.getLong(buffer.limit() - 8)) {
+				logger.warn("Corrupted logging checkpoint {} found, ignored!", file.getAbsolutePath());
+				return null;
+			}
+
+			VirtualLoggingCheckpoint checkpoint = new VirtualLoggingCheckpoint();
+			checkpoint.generation = buffer.getLong();
+			checkpoint.position = buffer.getLong();
+			int count = buffer.getInt();
+			for (int i = 0; i < count; i++) {
+				byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
+				buffer.get(keyByteArray);
+				VirtualLoggingKey xid = new VirtualLoggingKey();
+				xid.setGlobalTransactionId(keyByteArray);
+
+				long[] positions = new long[buffer.getInt()];
+				for (int j = 0; j < positions.length; j++) {
+					positions[j] = buffer.getLong();
+				}
+
+				int size = buffer.getInt();
+				List<byte[]> recordList = new ArrayList<byte[]>(size);
+				for (int j = 0; j < size; j++) {
+					byte[] byteArray = new byte[buffer.getInt()];
+					buffer.get(byteArray);
+					recordList.add(byteArray);
+				}
+
+				checkpoint.positionMap.put(xid, positions);
+				checkpoint.recordMap.put(xid, recordList);
+			}
+			return checkpoint;
+		} catch (IOException ex) {
+			logger.warn("Error occurred while loading logging checkpoint {}, ignored!", file.getAbsolutePath(), ex);
+			return null;
+		} catch (RuntimeException rex) {
+			logger.warn("Invalid logging checkpoint {} found, ignored!", file.getAbsolutePath(), rex);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the checkpoint into a temporary file and then renames it, so that the previous checkpoint is kept until
+	 * this one is complete.
+	 */
+	public void store(File file) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(baos);
+		output.writeLong(this.generation);
+		output.writeLong(this.position);
+		output.writeInt(this.positionMap.size());
+		for (Map.Entry<Xid, long[]> entry : this.positionMap.entrySet()) {
+			Xid xid = entry.getKey();
+			output.write(xid.getGlobalTransactionId(), 0, XidFactory.GLOBAL_TRANSACTION_LENGTH);
+
+			long[] positions = entry.getValue();
+			output.writeInt(positions.length);
+			for (int i = 0; i < positions.length; i++) {
+				output.writeLong(positions[i]);
+			}
+
+			List<byte[]> recordList = this.recordMap.get(xid);
+			int size = recordList == null ? 0 : recordList.size();
+			output.writeInt(size);
+			for (int i = 0; i < size; i++) {
+				byte[] byteArray = recordList.get(i);
+				output.writeInt(byteArray.length);
+				output.write(byteArray);
+			}
+		}
+		output.flush();
+
+		byte[] byteArray = baos.toByteArray();
+		CRC32 crc32 = new CRC32();
+		crc32.update(byteArray, 0, byteArray.length);
+
+		File temporary = new File(file.getParentFile(), String.format("%s.tmp", file.getName()));
+		FileOutputStream fos = new FileOutputStream(temporary);
+		try {
+			fos.write(byteArray);
+			fos.write(ByteBuffer.allocate(8).putLong(crc32.getValue()).array());
+			fos.getChannel().force(true);
+		} finally {
+			fos.close();
+		}
+
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Registers the live records of the snapshot before the position of the checkpoint, folded by
+	 * {@link VirtualLoggingSystemImpl#compressIfNecessary(List)}.
+	 */
+	public void collect(VirtualLoggingSystemImpl system, VirtualLoggingFile master, VirtualLoggingTable snapshot) {
+		List<VirtualLoggingRecord> recordList = new ArrayList<VirtualLoggingRecord>();
+		long[] buffer = new long[16];
+		for (int slot = 0; slot < snapshot.getCapacity(); slot++) {
+			if (snapshot.isOccupied(slot) == false) {
+				continue;
+			}
+
+			int count = snapshot.getCount(slot);
+			buffer = count > buffer.length ? new long[count] : buffer;
+			snapshot.getPositions(slot, buffer);
+			long[] positions = buffer;
+			int length = 0;
+			for (int i = 0; i < count; i++) {
+				long offset = positions[i]; // sequence 0
+				if (offset < this.position) {
+					positions[length++] = offset;
+					recordList.add(VirtualLoggingRecords.createRecord(master.read(offset)));
+				}
+			}
+
+			if (length > 0) {
+				Xid xid = VirtualLoggingIndex.getIdentifier(snapshot.getHigh(slot), snapshot.getLow(slot));
+				this.register(xid, Arrays.copyOf(positions, length));
+			}
+
+			if (recordList.size() >= VirtualLoggingSystemImpl.COMPRESS_BATCH_SIZE) {
+				this.registerRecords(system, recordList);
+				recordList.clear();
+			}
+		}
+		this.registerRecords(system, recordList);
+	}
+
+	private void registerRecords(VirtualLoggingSystemImpl system, List<VirtualLoggingRecord> recordList) {
+		if (recordList.isEmpty()) {
+			return;
+		}
+
+		List<VirtualLoggingRecord> compressedList = system.compressIfNecessary(recordList);
+		List<VirtualLoggingRecord> resultList = compressedList == null ? recordList : compressedList;
+		for (int i = 0; i < resultList.size(); i++) {
+			byte[] byteArray = resultList.get(i).getContent();
+			this.register(VirtualLoggingIndex.getIdentifier(byteArray), byteArray);
+		}
+	}
+
+	/**
+	 * Passes the records of the xids still live in the index to the listener, through the specified view.
+	 */
+	public void traversalLiveViews(VirtualLoggingIndex index, VirtualLoggingViewImpl view, VirtualLoggingViewListener listener) {
+		for (Iterator<Map.Entry<Xid, List<byte[]>>> itr = this.recordMap.entrySet().iterator(); itr.hasNext();) {
+			Map.Entry<Xid, List<byte[]>> entry = itr.next();
+			if (index.contains(entry.getKey()) == false) {
+				continue;
+			} // end-if (index.contains(entry.getKey()) == false)
+
+			List<byte[]> recordList = entry.getValue();
+			for (int i = 0; i < recordList.size(); i++) {
+				view.reset(ByteBuffer.wrap(recordList.get(i)), 0);
+				listener.recvOperation(view);
+			}
+		}
+	}
+
+	public void register(Xid xid, long[] positions) {
+		this.positionMap.put(xid, positions);
+	}
+
+	public void register(Xid xid, byte[] byteArray) {
+		List<byte[]> recordList = this.recordMap.get(xid);
+		if (recordList == null) {
+			recordList = new ArrayList<byte[]>(1);
+			this.recordMap.put(xid, recordList);
+		}
+		recordList.add(byteArray);
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	public void setGeneration(long generation) {
+		this.generation = generation;
+	}
+
+	public long getPosition() {
+		return position;
+	}
+
+	public void setPosition(long position) {
+		this.position = position;
+	}
+
+	public Map<Xid, long[]> getPositionMap() {
+		return positionMap;
+	}
+
+	public Map<Xid, List<byte[]>> getRecordMap() {
+		return recordMap;
+	}
+
+}
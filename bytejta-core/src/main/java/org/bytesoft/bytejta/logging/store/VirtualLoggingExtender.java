@@ -0,0 +1,87 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class VirtualLoggingExtender implements Runnable {
+	static final Logger logger = LoggerFactory.getLogger(VirtualLoggingExtender.class);
+
+	private final VirtualLoggingSystemImpl loggingSystem;
+
+	private volatile boolean released;
+	private volatile Thread thread;
+
+	public VirtualLoggingExtender(VirtualLoggingSystemImpl loggingSystem) {
+		this.loggingSystem = loggingSystem;
+	}
+
+	public synchronized void start() {
+		if (this.thread == null) {
+			this.thread = new Thread(this, "bytejta-logging-extender");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+	}
+
+	public synchronized void stop() {
+		this.released = true;
+		Thread current = this.thread;
+		if (current != null) {
+			LockSupport.unpark(current);
+			boolean interrupted = false;
+			while (current.isAlive()) {
+				try {
+					current.join();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			this.thread = null;
+		}
+	}
+
+	public void fireExtendImmediately() {
+		Thread current = this.thread;
+		if (current != null) {
+			LockSupport.unpark(current);
+		}
+	}
+
+	public boolean isActive() {
+		return this.released == false;
+	}
+
+	public void run() {
+		while (this.released == false) {
+			try {
+				this.loggingSystem.extendIfNecessary();
+			} catch (RuntimeException rex) {
+				logger.error("Error occurred while extending the logging file!", rex);
+			}
+
+			LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+		}
+	}
+
+}
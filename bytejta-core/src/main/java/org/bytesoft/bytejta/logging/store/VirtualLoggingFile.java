@@ -18,11 +18,19 @@ package org.bytesoft.bytejta.logging.store;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
+import org.bytesoft.common.utils.ByteUtils;
+import org.bytesoft.transaction.logging.store.VirtualLoggingSystem;
 import org.bytesoft.transaction.logging.store.VirtualLoggingTrigger;
+import org.bytesoft.transaction.logging.store.VirtualLoggingViewListener;
 import org.bytesoft.transaction.xa.XidFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,69 +41,109 @@ public class VirtualLoggingFile {
 	static final long DEFAULT_SIZE = 1024 * 1024;
 	static final long INCREASE_SIZE = 1024 * 512;
 
+	static final int SPIN_TIMES = Runtime.getRuntime().availableProcessors() > 1 ? 64 : 0;
+
+	public static final String BACKEND_MAPPED = "mapped";
+	public static final String BACKEND_CHANNEL = "channel";
+	public static final String BACKEND_DSYNC = "dsync";
+
+	/* the operator of a framed record is flagged, the record is followed by the crc32 of its header and value. */
+	static final int FRAMED_FLAG = 0x80;
+	static final int OPERATOR_MASK = 0x7F;
+	static final int CHECKSUM_LENGTH = 4;
+
 	static final int DEFAULT_MAJOR_VERSION = 0;
 	static final int DEFAULT_MINOR_VERSION = 2;
 
-	private MappedByteBuffer readable;
-	private MappedByteBuffer writable;
+	/* the regions are mapped one after another, an existing region is never remapped. */
+	private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+	private final long regionSize;
 
+	private File file;
 	private RandomAccessFile raf;
+	/* null if written through the mapped regions. */
+	private VirtualLoggingChannel channel;
 
 	private byte[] identifier;
 
 	private boolean initialized;
 
-	private int startIdx;
-	private int endIndex;
+	/* the legacy header holds the end index as an int, the extended one as a long. */
+	private boolean extended;
+
+	private long createdTime;
+	private long startIdx;
+	private long readIdx;
+	private volatile long endIndex;
+	private final AtomicLong reserved = new AtomicLong();
+	private final AtomicLong flushed = new AtomicLong();
+	private long preallocateSize;
 
 	private boolean marked;
 	private boolean master;
 
 	private int majorVersion = DEFAULT_MAJOR_VERSION;
 	private int minorVersion = DEFAULT_MINOR_VERSION;
+	private int minimumMinorVersion = DEFAULT_MINOR_VERSION;
+	private int maximumMinorVersion = DEFAULT_MINOR_VERSION;
 
 	private VirtualLoggingTrigger trigger;
 
+	/* the records written are framed, the unframed records written before are still readable. */
+	private boolean framed;
+
 	public VirtualLoggingFile(File file) throws IOException {
 		this(file, DEFAULT_MAJOR_VERSION, DEFAULT_MINOR_VERSION);
 	}
 
 	public VirtualLoggingFile(File file, int major, int minor) throws IOException {
+		this(file, major, minor, DEFAULT_SIZE);
+	}
+
+	public VirtualLoggingFile(File file, int major, int minor, long regionSize) throws IOException {
+		this(file, major, minor, regionSize, BACKEND_MAPPED);
+	}
+
+	public VirtualLoggingFile(File file, int major, int minor, long regionSize, String backend) throws IOException {
+		if (regionSize < 1024 * 4 || regionSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("Illegal region size: %s!", regionSize));
+		}
+
 		this.majorVersion = major;
 		this.minorVersion = minor;
+		this.minimumMinorVersion = minor;
+		this.maximumMinorVersion = minor;
+		this.regionSize = regionSize;
 
+		this.file = file;
 		this.initialized = file.exists();
 		this.raf = new RandomAccessFile(file, "rw");
 		if (this.initialized == false) {
-			this.configMappedByteBuffer(DEFAULT_SIZE);
+			this.ensureCapacity(regionSize);
 		} else {
-			this.configMappedByteBuffer(this.raf.length());
+			this.ensureCapacity(Math.max(regionSize, this.raf.length()));
+		}
+
+		if (BACKEND_CHANNEL.equals(backend) || BACKEND_DSYNC.equals(backend)) {
+			this.channel = new VirtualLoggingChannel(file, BACKEND_DSYNC.equals(backend));
+		} else if (backend != null && BACKEND_MAPPED.equals(backend) == false) {
+			this.closeQuietly();
+			throw new IllegalArgumentException(String.format("Unsupported logging backend: %s!", backend));
 		}
 	}
 
 	public void clearMarkedFlag() {
-		int pos = this.writable.position();
-
-		this.writable.position(identifier.length + 2 + 8 + 4);
-		this.writable.put((byte) 0x0);
+		this.putByte(identifier.length + 2 + 8 + 4, (byte) 0x0);
 
 		this.marked = false;
-
-		this.writable.position(pos);
 	}
 
 	public void fixSwitchError() {
-		int pos = this.writable.position();
-
-		this.writable.position(identifier.length + 2 + 8 + 4 + 1);
-		this.writable.put((byte) 0x1);
-		this.writable.position(identifier.length + 2 + 8 + 4);
-		this.writable.put((byte) 0x0);
+		this.putByte(identifier.length + 2 + 8 + 4 + 1, (byte) 0x1);
+		this.putByte(identifier.length + 2 + 8 + 4, (byte) 0x0);
 
 		this.marked = false;
 		this.master = true;
-
-		this.writable.position(pos);
 	}
 
 	public void initialize(boolean master) {
@@ -111,177 +159,551 @@ public class VirtualLoggingFile {
 	}
 
 	private void checkLoggingIdentifier() {
+		MappedByteBuffer header = this.regions[0];
 		byte[] array = new byte[identifier.length];
-		this.writable.position(0);
-		this.writable.get(array);
+		for (int i = 0; i < array.length; i++) {
+			array[i] = header.get(i);
+		}
+
 		if (Arrays.equals(identifier, array)) {
 			// ignore
 		} else if (this.initialized == false) {
-			writable.position(0);
-			writable.put(identifier);
+			this.put(0, identifier);
 		} else {
 			throw new IllegalStateException("Illegal file format!");
 		}
 	}
 
 	private void checkLoggingVersion() {
-		this.writable.position(identifier.length);
-		int major = this.writable.get();
-		int minor = this.writable.get();
+		MappedByteBuffer header = this.regions[0];
+		int major = header.get(identifier.length);
+		int minor = header.get(identifier.length + 1);
 		if (major == this.majorVersion && minor == this.minorVersion) {
 			// ignore
+		} else if (this.initialized && major == this.majorVersion && minor >= this.minimumMinorVersion
+				&& minor < this.minorVersion) {
+			logger.info("Upgrading the version of logging file from {}.{} to {}.{}.", major, minor, this.majorVersion,
+					this.minorVersion);
+			this.put(identifier.length, new byte[] { (byte) this.majorVersion, (byte) this.minorVersion });
+		} else if (this.initialized && major == this.majorVersion && minor > this.minorVersion
+				&& minor <= this.maximumMinorVersion) {
+			// the newer format is still readable, downgrading the version would let an older release misread it.
 		} else if (this.initialized == false) {
-			writable.position(identifier.length);
-			writable.put((byte) this.majorVersion);
-			writable.put((byte) this.minorVersion);
+			this.put(identifier.length, new byte[] { (byte) this.majorVersion, (byte) this.minorVersion });
 		} else {
-			throw new IllegalStateException("Incompatible version!");
+			throw new IllegalStateException(String.format("Incompatible version: %s.%s, expected %s.%s-%s.%s!", major, minor,
+					this.majorVersion, this.minimumMinorVersion, this.majorVersion, this.maximumMinorVersion));
 		}
 	}
 
 	private void checkCreatedTime() {
 		if (this.initialized == false) {
-			writable.position(identifier.length + 2);
-			writable.putLong(System.currentTimeMillis());
+			this.writeCreatedTime(System.currentTimeMillis());
+		} else {
+			this.createdTime = this.regions[0].getLong(identifier.length + 2);
 		}
 	}
 
+	private void writeCreatedTime(long created) {
+		this.put(identifier.length + 2, ByteUtils.longToByteArray(created));
+		this.createdTime = created;
+	}
+
 	private void checkStartIndex() {
-		this.writable.position(identifier.length + 2 + 8);
-		int start = this.writable.getInt();
-		if (start == identifier.length + 2 + 8 + 4 + 2 + 8 + 4) {
+		MappedByteBuffer header = this.regions[0];
+		int start = header.getInt(identifier.length + 2 + 8);
+		if (start == identifier.length + 2 + 8 + 4 + 2 + 8 + 4 + 8) {
+			this.startIdx = start;
+			this.extended = true;
+		} else if (start == identifier.length + 2 + 8 + 4 + 2 + 8 + 4) {
 			this.startIdx = start;
+			this.extended = false;
 		} else if (this.initialized == false) {
-			this.startIdx = identifier.length + 2 + 8 + 4 + 2 + 8 + 4;
-			writable.position(identifier.length + 2 + 8);
-			writable.putInt(identifier.length + 2 + 8 + 4 + 2 + 8 + 4);
+			this.startIdx = identifier.length + 2 + 8 + 4 + 2 + 8 + 4 + 8;
+			this.extended = true;
+			this.put(identifier.length + 2 + 8, ByteUtils.intToByteArray(identifier.length + 2 + 8 + 4 + 2 + 8 + 4 + 8));
 		} else {
 			throw new IllegalStateException();
 		}
 	}
 
 	private void checkMasterFlag(boolean master) {
+		MappedByteBuffer header = this.regions[0];
 		if (this.initialized == false) {
 			this.master = master;
 			this.marked = false;
-			writable.position(identifier.length + 2 + 8 + 4);
-			writable.put((byte) 0x0);
-			writable.put(master ? (byte) 0x1 : (byte) 0x0);
+			this.put(identifier.length + 2 + 8 + 4, new byte[] { (byte) 0x0, master ? (byte) 0x1 : (byte) 0x0 });
 		} else {
-			this.writable.position(identifier.length + 2 + 8 + 4);
-			this.marked = this.writable.get() == 0x1;
-			this.master = this.writable.get() == 0x1;
+			this.marked = header.get(identifier.length + 2 + 8 + 4) == 0x1;
+			this.master = header.get(identifier.length + 2 + 8 + 4 + 1) == 0x1;
 		}
 	}
 
 	private void checkModifiedTime() {
 		if (this.initialized == false) {
-			writable.position(identifier.length + 2 + 8 + 4 + 2);
-			writable.putLong(System.currentTimeMillis());
+			this.put(identifier.length + 2 + 8 + 4 + 2, ByteUtils.longToByteArray(System.currentTimeMillis()));
 		}
 	}
 
 	private void checkEndIndex() {
 		if (this.initialized == false) {
-			this.endIndex = identifier.length + 2 + 8 + 4 + 2 + 8 + 4;
-			writable.position(identifier.length + 2 + 8 + 4 + 2 + 8);
-			writable.putInt(identifier.length + 2 + 8 + 4 + 2 + 8 + 4);
+			this.writeEndIndex(this.startIdx);
+		} else if (this.extended) {
+			this.endIndex = this.regions[0].getLong(identifier.length + 2 + 8 + 4 + 2 + 8 + 4);
+		} else {
+			this.endIndex = this.regions[0].getInt(identifier.length + 2 + 8 + 4 + 2 + 8);
+		}
+
+		if (this.endIndex < this.startIdx || this.endIndex > this.getCapacity()) {
+			throw new IllegalStateException(String.format("Illegal end index: %s!", this.endIndex));
+		}
+
+		this.readIdx = this.startIdx;
+		this.reserved.set(this.endIndex);
+		this.flushed.set(this.startIdx);
+	}
+
+	private void writeEndIndex(long end) {
+		if (this.extended == false && end > Integer.MAX_VALUE) {
+			throw new IllegalStateException("The legacy logging file can not exceed 2 GB!");
+		} else if (this.channel != null) {
+			// modified time and end index in one write, the int end index of the extended header is unused.
+			byte[] byteArray = new byte[this.extended ? 8 + 4 + 8 : 8 + 4];
+			System.arraycopy(ByteUtils.longToByteArray(System.currentTimeMillis()), 0, byteArray, 0, 8);
+			if (this.extended) {
+				System.arraycopy(ByteUtils.longToByteArray(end), 0, byteArray, 8 + 4, 8);
+			} else {
+				System.arraycopy(ByteUtils.intToByteArray((int) end), 0, byteArray, 8, 4);
+			}
+			this.channel.write(identifier.length + 2 + 8 + 4 + 2, byteArray);
 		} else {
-			this.writable.position(identifier.length + 2 + 8 + 4 + 2 + 8);
-			this.endIndex = this.writable.getInt();
+			MappedByteBuffer header = this.regions[0];
+			header.putLong(identifier.length + 2 + 8 + 4 + 2, System.currentTimeMillis());
+			if (this.extended) {
+				header.putLong(identifier.length + 2 + 8 + 4 + 2 + 8 + 4, end);
+			} else {
+				header.putInt(identifier.length + 2 + 8 + 4 + 2 + 8, (int) end);
+			}
+		}
+		this.endIndex = end;
+	}
+
+	private void putByte(int index, byte value) {
+		if (this.channel == null) {
+			this.regions[0].put(index, value);
+		} else {
+			this.channel.write(index, new byte[] { value });
 		}
 	}
 
 	public void markAsMaster() {
-		this.writable.position(identifier.length + 2 + 8 + 4);
-		this.writable.put((byte) 0x1);
+		this.putByte(identifier.length + 2 + 8 + 4, (byte) 0x1);
 	}
 
 	public void switchToMaster() {
-		this.writable.position(identifier.length + 2 + 8 + 4 + 1);
-		this.writable.put((byte) 0x1);
-		this.writable.position(identifier.length + 2 + 8 + 4);
-		this.writable.put((byte) 0x0);
+		this.putByte(identifier.length + 2 + 8 + 4 + 1, (byte) 0x1);
+		this.putByte(identifier.length + 2 + 8 + 4, (byte) 0x0);
 
 		this.master = true;
 		this.marked = false;
 
-		this.readable.position(this.startIdx);
+		this.readIdx = this.startIdx;
 	}
 
 	public void switchToSlaver() {
-		this.writable.position(identifier.length + 2 + 8 + 4);
-		this.writable.put((byte) 0x0);
-		this.writable.put((byte) 0x0);
+		this.put(identifier.length + 2 + 8 + 4, new byte[] { (byte) 0x0, (byte) 0x0 });
 
 		this.master = false;
 		this.marked = false;
 
-		writable.position(identifier.length + 2 + 8 + 4 + 2);
-		this.writable.putLong(System.currentTimeMillis());
-		this.endIndex = this.startIdx;
-		this.writable.putInt(this.endIndex);
+		if (this.extended == false) {
+			// the file is empty from now on, upgrade the legacy header.
+			this.extended = true;
+			this.startIdx = identifier.length + 2 + 8 + 4 + 2 + 8 + 4 + 8;
+			this.put(identifier.length + 2 + 8, ByteUtils.intToByteArray(identifier.length + 2 + 8 + 4 + 2 + 8 + 4 + 8));
+		} // end-if (this.extended == false)
+
+		// the created time identifies the content of the file, the checkpoints of the previous content become invalid.
+		this.writeCreatedTime(Math.max(System.currentTimeMillis(), this.createdTime + 1));
+		this.writeEndIndex(this.startIdx);
+		this.readIdx = this.startIdx;
+		this.reserved.set(this.endIndex);
+		this.flushed.set(this.startIdx);
 	}
 
 	public void prepareForReading() {
-		this.readable.position(this.startIdx);
+		this.readIdx = this.startIdx;
 	}
 
 	public byte[] read() {
-		if (this.readable.position() < this.endIndex) {
-			int pos = this.readable.position();
-			this.readable.position(pos + XidFactory.GLOBAL_TRANSACTION_LENGTH + 1);
-			int size = this.readable.getInt();
+		if (this.readIdx < this.endIndex) {
+			byte[] byteArray = this.read(this.readIdx);
+			this.readIdx += this.readLength(this.readIdx);
+			return byteArray;
+		} else {
+			return new byte[0];
+		}
+	}
+
+	public byte[] read(long position) {
+		if (position < this.endIndex) {
+			MappedByteBuffer[] current = this.regions;
+			int size = getInt(current, position + XidFactory.GLOBAL_TRANSACTION_LENGTH + 1);
 			byte[] byteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH + 1 + 4 + size];
-			this.readable.position(pos);
-			this.readable.get(byteArray);
+			this.get(current, position, byteArray);
+			byteArray[XidFactory.GLOBAL_TRANSACTION_LENGTH] &= ~FRAMED_FLAG;
 			return byteArray;
 		} else {
 			return new byte[0];
 		}
 	}
 
-	public void write(byte[] byteArray) {
-		if (this.writable.capacity() < this.endIndex + byteArray.length) {
-			this.resizeMappedByteBuffer(this.endIndex + INCREASE_SIZE);
+	public void traversal(VirtualLoggingViewListener listener) {
+		ByteBuffer[] buffers = this.getReadOnlyBuffers();
+		VirtualLoggingViewImpl view = new VirtualLoggingViewImpl();
+		long end = this.endIndex;
+		for (long offset = this.startIdx; offset < end; offset += view.getLength()) {
+			if (this.checkRecord(view, buffers, offset, end, true) == false) {
+				break;
+			}
+
+			listener.recvOperation(view);
+		}
+	}
+
+	/**
+	 * Drops the torn tail left by a crash, that is, the records covered by the end index but not completely written to
+	 * the disk. It must be called at startup, before the records are indexed.
+	 *
+	 * @return the number of bytes truncated.
+	 * @throws IllegalStateException if the invalid record is followed by intact framed records, which is a corruption
+	 *             in the middle of the file rather than a torn tail.
+	 */
+	public long truncateTornTail() {
+		return this.truncateTornTail(this.startIdx);
+	}
+
+	/**
+	 * @param startIndex the records before it are known to be durable, such as the ones covered by a checkpoint.
+	 */
+	public long truncateTornTail(long startIndex) {
+		ByteBuffer[] buffers = this.getReadOnlyBuffers();
+		VirtualLoggingViewImpl view = new VirtualLoggingViewImpl();
+		long end = this.endIndex;
+		long offset = startIndex;
+		while (offset < end && this.checkRecord(view, buffers, offset, end, true)) {
+			offset += view.getLength();
+		}
+
+		long following = offset < end ? this.findFollowingRecord(view, buffers, offset, end) : -1L;
+		if (following >= 0) {
+			logger.error("Logging file corrupted: file= {}, offset= {}, following= {}.", this.file.getAbsolutePath(), offset,
+					following);
+			throw new IllegalStateException(String.format(
+					"The record at offset %s of %s is corrupted, but intact records follow from offset %s!", offset,
+					this.file.getAbsolutePath(), following));
+		} else if (offset < end) {
+			logger.warn("Logging file truncated: offset= {}, truncated= {}.", offset, end - offset);
+			this.writeEndIndex(offset);
+			this.readIdx = this.startIdx;
+			this.reserved.set(offset);
+		} // end-if (offset < end)
+		return end - offset;
+	}
+
+	/**
+	 * Looks for a chain of framed records after the invalid one which ends exactly at the end index. Only framed records
+	 * count, since the checksum is what tells a record from the stale or partially written bytes of a torn tail.
+	 *
+	 * @return the offset of the first record of the chain, or -1 if there is none.
+	 */
+	private long findFollowingRecord(VirtualLoggingViewImpl view, ByteBuffer[] buffers, long invalid, long end) {
+		Set<Long> visited = new HashSet<Long>(); // a chain walked from any of its records stops at the same place
+		for (long offset = invalid + 1; offset + VirtualLoggingViewImpl.HEADER_LENGTH <= end; offset++) {
+			long current = offset;
+			while (current < end && visited.contains(current) == false
+					&& this.checkRecord(view, buffers, current, end, false) && view.getTrailerLength() > 0) {
+				visited.add(current);
+				current += view.getLength();
+			}
+
+			if (current == end && current > offset) {
+				return offset;
+			} // end-if (current == end && current > offset)
+		}
+		return -1L;
+	}
+
+	private boolean checkRecord(VirtualLoggingViewImpl view, ByteBuffer[] buffers, long offset, long end, boolean warned) {
+		if (offset + VirtualLoggingViewImpl.HEADER_LENGTH > end) {
+			if (warned) {
+				logger.warn("Incomplete record(offset= {}) found, ignored!", offset);
+			}
+			return false;
+		}
+
+		this.resetView(view, buffers, offset);
+		int operator = view.getOperator();
+		if (view.getValueLength() < 0
+				|| (long) view.getValueLength() + view.getTrailerLength() > end - offset - VirtualLoggingViewImpl.HEADER_LENGTH) {
+			if (warned) {
+				logger.warn("Invalid record(offset= {}, length= {}) found, ignored!", offset, view.getLength());
+			}
+			return false;
+		} else if (operator < VirtualLoggingSystem.OPERATOR_CREATE || operator > VirtualLoggingSystem.OPERATOR_DELETE) {
+			if (warned) {
+				logger.warn("Invalid record(offset= {}, operator= {}) found, ignored!", offset, operator);
+			}
+			return false;
+		} else if (view.isIntact() == false) {
+			if (warned) {
+				logger.warn("Corrupted record(offset= {}, length= {}) found, ignored!", offset, view.getLength());
+			}
+			return false;
+		}
+		return true;
+	}
+
+	public ByteBuffer[] getReadOnlyBuffers() {
+		MappedByteBuffer[] current = this.regions;
+		ByteBuffer[] buffers = new ByteBuffer[current.length];
+		for (int i = 0; i < current.length; i++) {
+			buffers[i] = current[i].asReadOnlyBuffer();
+		}
+		return buffers;
+	}
+
+	/**
+	 * Points the view at the record in place, a record spanning two regions is copied.
+	 */
+	public void resetView(VirtualLoggingViewImpl view, ByteBuffer[] buffers, long position) {
+		int index = (int) (position / this.regionSize);
+		int offset = (int) (position % this.regionSize);
+		ByteBuffer buffer = buffers[index];
+		if (offset + VirtualLoggingViewImpl.HEADER_LENGTH <= buffer.capacity()) {
+			view.reset(buffer, offset);
+			int size = view.getValueLength();
+			if (size < 0 || (long) offset + VirtualLoggingViewImpl.HEADER_LENGTH + size + view.getTrailerLength() <= buffer
+					.capacity()) {
+				return;
+			}
+		}
+
+		byte[] headerByteArray = new byte[VirtualLoggingViewImpl.HEADER_LENGTH];
+		this.get(this.regions, position, headerByteArray);
+		view.reset(ByteBuffer.wrap(headerByteArray), 0);
+		int size = view.getValueLength();
+		if (size < 0 || position + VirtualLoggingViewImpl.HEADER_LENGTH + size + view.getTrailerLength() > this.endIndex) {
+			return; // rejected by the caller
 		}
-		this.writable.position(this.endIndex);
-		this.writable.put(byteArray);
 
-		writable.position(identifier.length + 2 + 8 + 4 + 2);
-		this.writable.putLong(System.currentTimeMillis());
-		this.endIndex = this.endIndex + byteArray.length;
-		this.writable.putInt(this.endIndex);
+		byte[] byteArray = new byte[view.getLength()];
+		this.get(this.regions, position, byteArray);
+		view.reset(ByteBuffer.wrap(byteArray), 0);
+	}
 
-		int threshold = (this.writable.capacity() * 2) / 3;
-		if (this.endIndex > threshold) {
+	/**
+	 * @return the length of the record stored at the specified position, including the checksum if it is framed.
+	 */
+	public int readLength(long position) {
+		MappedByteBuffer[] current = this.regions;
+		int size = getInt(current, position + XidFactory.GLOBAL_TRANSACTION_LENGTH + 1);
+		boolean flagged = (this.getByte(current, position + XidFactory.GLOBAL_TRANSACTION_LENGTH) & FRAMED_FLAG) != 0;
+		return XidFactory.GLOBAL_TRANSACTION_LENGTH + 1 + 4 + size + (flagged ? CHECKSUM_LENGTH : 0);
+	}
+
+	public int readOperator(long position) {
+		return this.getByte(this.regions, position + XidFactory.GLOBAL_TRANSACTION_LENGTH) & OPERATOR_MASK;
+	}
+
+	public long readLong(long position) {
+		MappedByteBuffer[] current = this.regions;
+		int offset = (int) (position % this.regionSize);
+		if (offset + 8 <= this.regionSize) {
+			return current[(int) (position / this.regionSize)].getLong(offset);
+		}
+
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (this.getByte(current, position + i) & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * @return the content to be stored for the record, which is framed with its checksum if necessary.
+	 */
+	public byte[] encode(byte[] byteArray) {
+		if (this.framed == false) {
+			return byteArray;
+		}
+
+		byte[] content = new byte[byteArray.length + CHECKSUM_LENGTH];
+		System.arraycopy(byteArray, 0, content, 0, byteArray.length);
+		content[XidFactory.GLOBAL_TRANSACTION_LENGTH] |= FRAMED_FLAG;
+
+		CRC32 crc32 = new CRC32();
+		crc32.update(content, 0, byteArray.length);
+		int checksum = (int) crc32.getValue();
+		System.arraycopy(ByteUtils.intToByteArray(checksum), 0, content, byteArray.length, CHECKSUM_LENGTH);
+		return content;
+	}
+
+	public int getStoredLength(byte[] byteArray) {
+		return this.framed ? byteArray.length + CHECKSUM_LENGTH : byteArray.length;
+	}
+
+	public long write(byte[] byteArray) {
+		byte[] content = this.encode(byteArray);
+		long position = this.endIndex;
+		this.ensureCapacity(position + content.length + this.preallocateSize);
+		this.put(position, content);
+
+		this.writeEndIndex(position + content.length);
+		this.reserved.set(this.endIndex);
+
+		long threshold = (this.getCapacity() * 2) / 3;
+		if (this.endIndex > threshold && this.trigger != null) {
+			this.trigger.fireSwapImmediately();
+		}
+
+		return position;
+	}
+
+	/**
+	 * Reserves a region for a record, the caller must write it by {@link #put(long, byte[])} and then
+	 * {@link #publish(long, int)} it, the capacity is extended by {@link #ensureCapacity(long)} in advance.
+	 */
+	public long reserve(int length) {
+		return this.reserved.getAndAdd(length);
+	}
+
+	public void put(long position, byte[] byteArray) {
+		if (this.channel != null) {
+			this.channel.write(position, byteArray);
+			return;
+		} // end-if (this.channel != null)
+
+		MappedByteBuffer[] current = this.regions;
+		for (int i = 0; i < byteArray.length;) {
+			long cursor = position + i;
+			int offset = (int) (cursor % this.regionSize);
+			int length = (int) Math.min(byteArray.length - i, this.regionSize - offset);
+			ByteBuffer buffer = current[(int) (cursor / this.regionSize)].duplicate();
+			buffer.position(offset);
+			buffer.put(byteArray, i, length);
+			i += length;
+		}
+	}
+
+	public void publish(long position, int length) {
+		for (int i = 0; this.endIndex != position; i++) {
+			if (i >= SPIN_TIMES) {
+				Thread.yield();
+			}
+		}
+
+		long end = position + length;
+		this.writeEndIndex(end);
+
+		long threshold = (this.getCapacity() * 2) / 3;
+		if (end > threshold && this.trigger != null) {
 			this.trigger.fireSwapImmediately();
 		}
+	}
 
+	private void get(MappedByteBuffer[] current, long position, byte[] byteArray) {
+		for (int i = 0; i < byteArray.length;) {
+			long cursor = position + i;
+			int offset = (int) (cursor % this.regionSize);
+			int length = (int) Math.min(byteArray.length - i, this.regionSize - offset);
+			ByteBuffer buffer = current[(int) (cursor / this.regionSize)].duplicate();
+			buffer.position(offset);
+			buffer.get(byteArray, i, length);
+			i += length;
+		}
 	}
 
-	private void resizeMappedByteBuffer(long size) {
+	private byte getByte(MappedByteBuffer[] current, long position) {
+		return current[(int) (position / this.regionSize)].get((int) (position % this.regionSize));
+	}
+
+	private int getInt(MappedByteBuffer[] current, long position) {
+		int offset = (int) (position % this.regionSize);
+		if (offset + 4 <= this.regionSize) {
+			return current[(int) (position / this.regionSize)].getInt(offset);
+		}
+
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8) | (this.getByte(current, position + i) & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * Maps the missing regions up to the specified size, the regions mapped already are left untouched.
+	 */
+	public synchronized void ensureCapacity(long size) {
+		MappedByteBuffer[] current = this.regions;
+		int required = (int) ((size + this.regionSize - 1) / this.regionSize);
+		if (current.length >= required) {
+			return;
+		}
+
+		MappedByteBuffer[] expanded = Arrays.copyOf(current, required);
 		try {
-			this.raf.setLength(this.endIndex + INCREASE_SIZE);
-			this.readable = this.raf.getChannel().map(MapMode.READ_ONLY, 0, size);
-			this.writable = this.raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+			if (this.raf.length() < required * this.regionSize) {
+				this.raf.setLength(required * this.regionSize);
+			}
+			for (int i = current.length; i < required; i++) {
+				expanded[i] = this.raf.getChannel().map(MapMode.READ_WRITE, i * this.regionSize, this.regionSize);
+			}
 		} catch (IOException ex) {
-			logger.error("Error occurred while resizing the logging file!", ex);
+			throw new IllegalStateException("Error occurred while extending the logging file!", ex);
 		}
+		this.regions = expanded;
+	}
+
+	public long getReserved() {
+		return this.reserved.get();
 	}
 
-	private void configMappedByteBuffer(long size) throws IOException {
-		this.readable = this.raf.getChannel().map(MapMode.READ_ONLY, 0, size);
-		this.writable = this.raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+	public long getCapacity() {
+		return this.regions.length * this.regionSize;
 	}
 
+	/**
+	 * Forces the header region and the regions written since the last flush.
+	 */
 	public void flushImmediately() {
-		if (this.writable != null) {
-			this.writable.force();
+		if (this.channel != null) {
+			this.channel.force();
+			return;
+		} // end-if (this.channel != null)
+
+		MappedByteBuffer[] current = this.regions;
+		long end = this.endIndex;
+		long begin = this.flushed.get();
+
+		current[0].force();
+		int last = (int) (Math.max(end - 1, 0) / this.regionSize);
+		for (int i = Math.max(1, (int) (begin / this.regionSize)); i <= last && i < current.length; i++) {
+			current[i].force();
+		}
+
+		for (long value = this.flushed.get(); value < end; value = this.flushed.get()) {
+			if (this.flushed.compareAndSet(value, end)) {
+				break;
+			}
 		}
 	}
 
 	public void closeQuietly() {
+		if (this.channel != null) {
+			this.channel.closeQuietly();
+		}
+
 		if (this.raf != null) {
 			try {
 				this.raf.close();
@@ -307,6 +729,14 @@ public class VirtualLoggingFile {
 		this.trigger = trigger;
 	}
 
+	public boolean isFramed() {
+		return framed;
+	}
+
+	public void setFramed(boolean framed) {
+		this.framed = framed;
+	}
+
 	public boolean isMarked() {
 		return marked;
 	}
@@ -323,11 +753,31 @@ public class VirtualLoggingFile {
 		this.master = master;
 	}
 
-	public int getStartIdx() {
+	public long getPreallocateSize() {
+		return preallocateSize;
+	}
+
+	public void setPreallocateSize(long preallocateSize) {
+		this.preallocateSize = preallocateSize;
+	}
+
+	public boolean isExtended() {
+		return extended;
+	}
+
+	public long getRegionSize() {
+		return regionSize;
+	}
+
+	public long getCreatedTime() {
+		return createdTime;
+	}
+
+	public long getStartIdx() {
 		return startIdx;
 	}
 
-	public int getEndIndex() {
+	public long getEndIndex() {
 		return endIndex;
 	}
 
@@ -339,4 +789,20 @@ public class VirtualLoggingFile {
 		return minorVersion;
 	}
 
+	public int getMinimumMinorVersion() {
+		return minimumMinorVersion;
+	}
+
+	public void setMinimumMinorVersion(int minimumMinorVersion) {
+		this.minimumMinorVersion = minimumMinorVersion;
+	}
+
+	public int getMaximumMinorVersion() {
+		return maximumMinorVersion;
+	}
+
+	public void setMaximumMinorVersion(int maximumMinorVersion) {
+		this.maximumMinorVersion = maximumMinorVersion;
+	}
+
 }
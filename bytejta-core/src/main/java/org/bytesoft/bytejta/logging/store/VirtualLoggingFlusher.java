@@ -0,0 +1,162 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class VirtualLoggingFlusher implements Runnable {
+	static final Logger logger = LoggerFactory.getLogger(VirtualLoggingFlusher.class);
+
+	private final BlockingQueue<VirtualLoggingRequest> queue = new LinkedBlockingQueue<VirtualLoggingRequest>();
+	private final VirtualLoggingSystemImpl loggingSystem;
+
+	private int batchSize = 256;
+	private long maxLinger = 2;
+
+	private volatile boolean released;
+	private Thread thread;
+
+	public VirtualLoggingFlusher(VirtualLoggingSystemImpl loggingSystem) {
+		this.loggingSystem = loggingSystem;
+	}
+
+	public synchronized void start() {
+		if (this.thread == null) {
+			this.thread = new Thread(this, "bytejta-logging-flusher");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+	}
+
+	public synchronized void stop() {
+		this.released = true;
+		if (this.thread != null) {
+			boolean interrupted = false;
+			while (this.thread.isAlive()) {
+				try {
+					this.thread.join();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			this.thread = null;
+		}
+
+		List<VirtualLoggingRequest> requestList = new ArrayList<VirtualLoggingRequest>();
+		this.queue.drainTo(requestList);
+		if (requestList.isEmpty() == false) {
+			this.flush(requestList);
+		}
+	}
+
+	/**
+	 * @return false if the flusher has been stopped and the caller should write the record by itself.
+	 */
+	public boolean submit(VirtualLoggingRequest request) {
+		this.queue.offer(request);
+		if (this.released && this.queue.remove(request)) {
+			return false;
+		}
+		request.awaitCompletion();
+		return true;
+	}
+
+	public void run() {
+		List<VirtualLoggingRequest> requestList = new ArrayList<VirtualLoggingRequest>(this.batchSize);
+		while (this.released == false || this.queue.isEmpty() == false) {
+			try {
+				VirtualLoggingRequest request = this.queue.poll(100, TimeUnit.MILLISECONDS);
+				if (request == null) {
+					continue;
+				}
+
+				requestList.add(request);
+				this.queue.drainTo(requestList, this.batchSize - requestList.size());
+
+				long deadline = System.currentTimeMillis() + this.maxLinger;
+				while (requestList.size() < this.batchSize) {
+					long waitingMillis = deadline - System.currentTimeMillis();
+					if (waitingMillis <= 0) {
+						break;
+					}
+
+					VirtualLoggingRequest next = this.queue.poll(waitingMillis, TimeUnit.MILLISECONDS);
+					if (next == null) {
+						break;
+					}
+					requestList.add(next);
+					this.queue.drainTo(requestList, this.batchSize - requestList.size());
+				}
+			} catch (InterruptedException ex) {
+				logger.debug(ex.getMessage(), ex);
+			}
+
+			if (requestList.isEmpty() == false) {
+				this.flush(requestList);
+				requestList.clear();
+			}
+		}
+	}
+
+	private void flush(List<VirtualLoggingRequest> requestList) {
+		List<byte[]> contentList = new ArrayList<byte[]>(requestList.size());
+		for (int i = 0; i < requestList.size(); i++) {
+			contentList.add(requestList.get(i).getContent());
+		}
+
+		RuntimeException error = null;
+		try {
+			this.loggingSystem.writeAndFlush(contentList);
+		} catch (RuntimeException rex) {
+			logger.error("Error occurred while flushing the transaction log!", rex);
+			error = rex;
+		} catch (Error err) {
+			logger.error("Error occurred while flushing the transaction log!", err);
+			error = new IllegalStateException(err);
+		}
+
+		for (int i = 0; i < requestList.size(); i++) {
+			requestList.get(i).complete(error);
+		}
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public long getMaxLinger() {
+		return maxLinger;
+	}
+
+	public void setMaxLinger(long maxLinger) {
+		this.maxLinger = maxLinger;
+	}
+
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.transaction.xa.Xid;
+
+import org.bytesoft.transaction.logging.store.VirtualLoggingKey;
+import org.bytesoft.transaction.logging.store.VirtualLoggingSystem;
+import org.bytesoft.transaction.xa.XidFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The live record positions of each gtrid, kept in striped {@link VirtualLoggingTable}s guarded by their own monitors.
+ */
+public class VirtualLoggingIndex {
+	static final Logger logger = LoggerFactory.getLogger(VirtualLoggingIndex.class);
+	static final int STRIPE_BITS = 5;
+	static final int STRIPES = 1 << STRIPE_BITS;
+
+	private volatile VirtualLoggingTable[] tables = createTables();
+
+	/**
+	 * The offset of a segment fits in 32 bits, the position of a master/slaver file(sequence 0) is the offset itself.
+	 */
+	public static long getPosition(long sequence, long offset) {
+		return (sequence << 32) | offset;
+	}
+
+	public static long getSequence(long position) {
+		return position >>> 32;
+	}
+
+	public static int getOffset(long position) {
+		return (int) (position & 0xFFFFFFFFL);
+	}
+
+	public static Xid getIdentifier(byte[] byteArray) {
+		byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
+		System.arraycopy(byteArray, 0, keyByteArray, 0, keyByteArray.length);
+		VirtualLoggingKey xid = new VirtualLoggingKey();
+		xid.setGlobalTransactionId(keyByteArray);
+		return xid;
+	}
+
+	public static Xid getIdentifier(long high, long low) {
+		byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
+		for (int i = 0; i < 8; i++) {
+			keyByteArray[i] = (byte) (high >>> (56 - i * 8));
+			keyByteArray[i + 8] = (byte) (low >>> (56 - i * 8));
+		}
+		VirtualLoggingKey xid = new VirtualLoggingKey();
+		xid.setGlobalTransactionId(keyByteArray);
+		return xid;
+	}
+
+	/* the first(index 0) or the second(index 8) half of the gtrid at the beginning of the byte array. */
+	public static long getKey(byte[] byteArray, int index) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (byteArray[index + i] & 0xFF);
+		}
+		return value;
+	}
+
+	public static void register(VirtualLoggingTable table, byte[] byteArray, long position) {
+		long high = getKey(byteArray, 0);
+		long low = getKey(byteArray, 8);
+		if (byteArray[XidFactory.GLOBAL_TRANSACTION_LENGTH] == VirtualLoggingSystem.OPERATOR_DELETE) {
+			table.remove(high, low);
+		} else {
+			table.append(high, low, position);
+		}
+	}
+
+	private static VirtualLoggingTable[] createTables() {
+		VirtualLoggingTable[] array = new VirtualLoggingTable[STRIPES];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = new VirtualLoggingTable();
+		}
+		return array;
+	}
+
+	/* the top bits of the hash, the low bits locate the slot inside a table. */
+	private static int getStripe(long high, long low) {
+		return VirtualLoggingTable.hash(high, low) >>> (Integer.SIZE - STRIPE_BITS);
+	}
+
+	private VirtualLoggingTable getTable(long high, long low) {
+		return this.tables[getStripe(high, low)];
+	}
+
+	/**
+	 * @return the positions released by a delete record, or null.
+	 */
+	public long[] register(byte[] byteArray, long position) {
+		int operator = byteArray[XidFactory.GLOBAL_TRANSACTION_LENGTH];
+		return this.register(getKey(byteArray, 0), getKey(byteArray, 8), operator, position);
+	}
+
+	public long[] register(Xid xid, int operator, long position) {
+		byte[] globalTransactionId = xid.getGlobalTransactionId();
+		return this.register(getKey(globalTransactionId, 0), getKey(globalTransactionId, 8), operator, position);
+	}
+
+	public long[] register(long high, long low, int operator, long position) {
+		VirtualLoggingTable table = this.getTable(high, low);
+		synchronized (table) {
+			if (operator == VirtualLoggingSystem.OPERATOR_DELETE) {
+				return table.remove(high, low);
+			}
+			table.append(high, low, position);
+			return null;
+		}
+	}
+
+	/**
+	 * Scans the record headers of the specified logging file without reading the values.
+	 *
+	 * @return the number of records in the logging file.
+	 */
+	public int load(VirtualLoggingFile logging, long sequence) {
+		return this.load(logging, sequence, logging.getStartIdx());
+	}
+
+	public int load(VirtualLoggingFile logging, long sequence, long startIndex) {
+		int count = 0;
+		long endIndex = logging.getEndIndex();
+		for (long offset = startIndex; offset < endIndex; count++) {
+			int length = logging.readLength(offset);
+			if (length < XidFactory.GLOBAL_TRANSACTION_LENGTH + 1 + 4 || offset + length > endIndex) {
+				logger.warn("Invalid record(offset= {}, length= {}) found, ignored!", offset, length);
+				break;
+			}
+
+			long high = logging.readLong(offset);
+			long low = logging.readLong(offset + 8);
+			int operator = logging.readOperator(offset);
+			this.register(high, low, operator, getPosition(sequence, offset));
+
+			offset += length;
+		}
+		return count;
+	}
+
+	public boolean relocate(long high, long low, long source, long target) {
+		VirtualLoggingTable table = this.getTable(high, low);
+		synchronized (table) {
+			return table.relocate(high, low, source, target);
+		}
+	}
+
+	/**
+	 * @return a copy of the whole index in one table.
+	 */
+	public VirtualLoggingTable snapshot() {
+		VirtualLoggingTable[] current = this.tables;
+		VirtualLoggingTable snapshot = new VirtualLoggingTable(this.size());
+		for (int i = 0; i < current.length; i++) {
+			synchronized (current[i]) {
+				current[i].copyTo(snapshot);
+			}
+		}
+		return snapshot;
+	}
+
+	public long[] positions() {
+		VirtualLoggingTable[] current = this.tables;
+		long[] positions = new long[0];
+		int index = 0;
+		for (int i = 0; i < current.length; i++) {
+			synchronized (current[i]) {
+				int count = current[i].getPositionCount();
+				if (index + count > positions.length) {
+					positions = Arrays.copyOf(positions, Math.max(positions.length * 2, index + count));
+				}
+				index = current[i].copyPositions(positions, index);
+			}
+		}
+
+		positions = Arrays.copyOf(positions, index);
+		Arrays.sort(positions);
+		return positions;
+	}
+
+	public void reset(VirtualLoggingTable table) {
+		VirtualLoggingTable[] array = createTables();
+		for (int slot = 0; slot < table.getCapacity(); slot++) {
+			if (table.isOccupied(slot) == false) {
+				continue;
+			}
+
+			long high = table.getHigh(slot);
+			long low = table.getLow(slot);
+			long[] positions = new long[table.getCount(slot)];
+			table.getPositions(slot, positions);
+			VirtualLoggingTable target = array[getStripe(high, low)];
+			for (int i = 0; i < positions.length; i++) {
+				target.append(high, low, positions[i]);
+			}
+		}
+		this.tables = array;
+	}
+
+	public void reset(Map<Xid, long[]> positionMap) {
+		VirtualLoggingTable table = new VirtualLoggingTable(positionMap.size());
+		for (Iterator<Map.Entry<Xid, long[]>> itr = positionMap.entrySet().iterator(); itr.hasNext();) {
+			Map.Entry<Xid, long[]> entry = itr.next();
+			byte[] globalTransactionId = entry.getKey().getGlobalTransactionId();
+			long[] positions = entry.getValue();
+			for (int i = 0; i < positions.length; i++) {
+				table.append(getKey(globalTransactionId, 0), getKey(globalTransactionId, 8), positions[i]);
+			}
+		}
+		this.reset(table);
+	}
+
+	public boolean contains(Xid xid) {
+		byte[] globalTransactionId = xid.getGlobalTransactionId();
+		long high = getKey(globalTransactionId, 0);
+		long low = getKey(globalTransactionId, 8);
+		VirtualLoggingTable table = this.getTable(high, low);
+		synchronized (table) {
+			return table.contains(high, low);
+		}
+	}
+
+	public int size() {
+		VirtualLoggingTable[] current = this.tables;
+		int size = 0;
+		for (int i = 0; i < current.length; i++) {
+			synchronized (current[i]) {
+				size += current[i].size();
+			}
+		}
+		return size;
+	}
+
+}
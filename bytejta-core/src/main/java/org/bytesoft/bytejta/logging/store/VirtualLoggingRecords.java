@@ -0,0 +1,78 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import javax.transaction.xa.Xid;
+
+import org.bytesoft.common.utils.ByteUtils;
+import org.bytesoft.transaction.logging.store.VirtualLoggingKey;
+import org.bytesoft.transaction.logging.store.VirtualLoggingRecord;
+import org.bytesoft.transaction.logging.store.VirtualLoggingSystem;
+import org.bytesoft.transaction.xa.XidFactory;
+
+/**
+ * The layout of an unframed record: gtrid(16) + operator(1) + size(4) + value(size).
+ */
+public final class VirtualLoggingRecords {
+
+	private VirtualLoggingRecords() {
+	}
+
+	public static byte[] createCreateRecord(Xid xid, byte[] textByteArray) {
+		return encode(VirtualLoggingSystem.OPERATOR_CREATE, xid, textByteArray);
+	}
+
+	public static byte[] createModifyRecord(Xid xid, byte[] textByteArray) {
+		return encode(VirtualLoggingSystem.OPERATOR_MOFIFY, xid, textByteArray);
+	}
+
+	public static byte[] createDeleteRecord(Xid xid) {
+		return encode(VirtualLoggingSystem.OPERATOR_DELETE, xid, new byte[0]);
+	}
+
+	private static byte[] encode(int operator, Xid xid, byte[] textByteArray) {
+		byte[] keyByteArray = xid.getGlobalTransactionId();
+		byte[] sizeByteArray = ByteUtils.intToByteArray(textByteArray.length);
+
+		byte[] byteArray = new byte[keyByteArray.length + 1 + sizeByteArray.length + textByteArray.length];
+
+		System.arraycopy(keyByteArray, 0, byteArray, 0, keyByteArray.length);
+		byteArray[keyByteArray.length] = (byte) (operator & 0xFF);
+		System.arraycopy(sizeByteArray, 0, byteArray, keyByteArray.length + 1, sizeByteArray.length);
+		System.arraycopy(textByteArray, 0, byteArray, keyByteArray.length + 1 + sizeByteArray.length, textByteArray.length);
+
+		return byteArray;
+	}
+
+	public static VirtualLoggingRecord createRecord(byte[] byteArray) {
+		byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
+		System.arraycopy(byteArray, 0, keyByteArray, 0, keyByteArray.length);
+		int operator = byteArray[keyByteArray.length];
+		byte[] valueByteArray = new byte[byteArray.length - XidFactory.GLOBAL_TRANSACTION_LENGTH - 1 - 4];
+		System.arraycopy(byteArray, XidFactory.GLOBAL_TRANSACTION_LENGTH + 1 + 4, valueByteArray, 0, valueByteArray.length);
+
+		VirtualLoggingKey xid = new VirtualLoggingKey();
+		xid.setGlobalTransactionId(keyByteArray);
+
+		VirtualLoggingRecord record = new VirtualLoggingRecord();
+		record.setIdentifier(xid);
+		record.setOperator(operator);
+		record.setContent(byteArray);
+		record.setValue(valueByteArray);
+		return record;
+	}
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.util.concurrent.CountDownLatch;
+
+public class VirtualLoggingRequest {
+
+	private final byte[] content;
+	private final CountDownLatch latch = new CountDownLatch(1);
+	private volatile RuntimeException error;
+
+	public VirtualLoggingRequest(byte[] content) {
+		this.content = content;
+	}
+
+	public void complete(RuntimeException error) {
+		this.error = error;
+		this.latch.countDown();
+	}
+
+	public void awaitCompletion() {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				this.latch.await();
+				break;
+			} catch (InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (this.error != null) {
+			throw this.error;
+		}
+	}
+
+	public byte[] getContent() {
+		return content;
+	}
+
+}
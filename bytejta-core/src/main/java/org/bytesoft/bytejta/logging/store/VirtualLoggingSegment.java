@@ -0,0 +1,63 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.io.File;
+
+public class VirtualLoggingSegment {
+
+	private final long sequence;
+	private final File file;
+	private final VirtualLoggingFile logging;
+	private volatile int recordCount;
+
+	public VirtualLoggingSegment(long sequence, File file, VirtualLoggingFile logging) {
+		this.sequence = sequence;
+		this.file = file;
+		this.logging = logging;
+	}
+
+	public boolean isEmpty() {
+		return this.logging.getEndIndex() <= this.logging.getStartIdx();
+	}
+
+	public long write(byte[] byteArray) {
+		long offset = this.logging.write(byteArray);
+		this.recordCount++;
+		return VirtualLoggingIndex.getPosition(this.sequence, offset);
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public VirtualLoggingFile getLogging() {
+		return logging;
+	}
+
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	public void setRecordCount(int recordCount) {
+		this.recordCount = recordCount;
+	}
+
+}
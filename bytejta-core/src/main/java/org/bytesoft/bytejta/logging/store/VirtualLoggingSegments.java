@@ -0,0 +1,537 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.bytesoft.transaction.logging.store.VirtualLoggingSystem;
+import org.bytesoft.transaction.logging.store.VirtualLoggingViewListener;
+import org.bytesoft.transaction.xa.XidFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class VirtualLoggingSegments implements Runnable {
+	static final Logger logger = LoggerFactory.getLogger(VirtualLoggingSegments.class);
+
+	static final String SEGMENT_PREFIX = "segment-";
+	static final String SEGMENT_SUFFIX = ".log";
+	static final String TEMPORARY_SUFFIX = ".tmp";
+
+	private final Lock compactLock = new ReentrantLock();
+	private final Lock timingLock = new ReentrantLock();
+	private final Condition timingCondition = this.timingLock.newCondition();
+
+	private final List<VirtualLoggingSegment> segmentList = new CopyOnWriteArrayList<VirtualLoggingSegment>();
+	private final AtomicReference<VirtualLoggingSegment> spare = new AtomicReference<VirtualLoggingSegment>();
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final VirtualLoggingSystemImpl loggingSystem;
+	private final VirtualLoggingIndex index;
+	private final File directory;
+
+	private volatile VirtualLoggingSegment active;
+
+	private int segmentSize = 1024 * 1024 * 16;
+	private int compactInterval = 60;
+	private boolean forceRequired;
+	private double garbageRatio;
+	private int compactBytesPerSecond;
+
+	private volatile boolean released;
+	private Thread thread;
+
+	public VirtualLoggingSegments(VirtualLoggingSystemImpl loggingSystem, VirtualLoggingIndex index, File directory) {
+		this.loggingSystem = loggingSystem;
+		this.index = index;
+		this.directory = directory;
+	}
+
+	public void initialize() throws IOException {
+		String prefix = this.getSegmentPrefix();
+
+		List<Long> sequenceList = new ArrayList<Long>();
+		File[] files = this.directory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			File file = files[i];
+			String name = file.getName();
+			if (name.startsWith(prefix) == false) {
+				continue;
+			} else if (name.endsWith(TEMPORARY_SUFFIX)) {
+				if (file.delete() == false) {
+					logger.warn("Failed to delete temporary logging file {}!", file.getAbsolutePath());
+				}
+				continue;
+			} else if (name.endsWith(SEGMENT_SUFFIX) == false) {
+				continue;
+			}
+
+			String text = name.substring(prefix.length(), name.length() - SEGMENT_SUFFIX.length());
+			try {
+				sequenceList.add(Long.parseLong(text));
+			} catch (NumberFormatException ex) {
+				logger.warn("Unrecognized logging file {}, ignored!", file.getAbsolutePath());
+			}
+		}
+
+		Collections.sort(sequenceList);
+		for (int i = 0; i < sequenceList.size(); i++) {
+			long current = sequenceList.get(i);
+			VirtualLoggingSegment segment = this.openSegment(current, this.getSegmentFile(current));
+			segment.getLogging().truncateTornTail();
+			segment.setRecordCount(this.index.load(segment.getLogging(), current));
+			this.segmentList.add(segment);
+			this.sequence.set(current);
+		}
+
+		if (this.segmentList.isEmpty()) {
+			long current = this.sequence.incrementAndGet();
+			this.segmentList.add(this.openSegment(current, this.getSegmentFile(current)));
+		}
+
+		this.active = this.segmentList.get(this.segmentList.size() - 1);
+	}
+
+	public synchronized void start() {
+		if (this.thread == null) {
+			this.thread = new Thread(this, "bytejta-logging-compactor");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+	}
+
+	public synchronized void stop() {
+		this.released = true;
+		this.fireCompactImmediately();
+		if (this.thread != null) {
+			boolean interrupted = false;
+			while (this.thread.isAlive()) {
+				try {
+					this.thread.join();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			this.thread = null;
+		}
+	}
+
+	public void run() {
+		while (this.released == false) {
+			try {
+				this.timingLock.lock();
+				this.timingCondition.await(this.compactInterval, TimeUnit.SECONDS);
+			} catch (Exception ex) {
+				logger.debug(ex.getMessage(), ex);
+			} finally {
+				this.timingLock.unlock();
+			}
+
+			if (this.released) {
+				break;
+			}
+
+			this.prepareSpareSegment();
+
+			try {
+				this.compact();
+			} catch (IOException ex) {
+				logger.error("Error occurred while compacting the logging segments!", ex);
+			} catch (RuntimeException rex) {
+				logger.error("Error occurred while compacting the logging segments!", rex);
+			}
+		}
+	}
+
+	public void fireCompactImmediately() {
+		try {
+			this.timingLock.lock();
+			this.timingCondition.signalAll();
+		} finally {
+			this.timingLock.unlock();
+		}
+	}
+
+	/**
+	 * Invoked while holding the append lock of the logging system.
+	 */
+	public long write(byte[] byteArray) {
+		VirtualLoggingSegment current = this.active;
+		VirtualLoggingFile logging = current.getLogging();
+		if (current.isEmpty() == false && logging.getEndIndex() + logging.getStoredLength(byteArray) > this.segmentSize) {
+			current = this.rollSegment(current);
+		}
+		return current.write(byteArray);
+	}
+
+	private VirtualLoggingSegment rollSegment(VirtualLoggingSegment current) {
+		if (this.forceRequired) {
+			current.getLogging().flushImmediately();
+		}
+
+		VirtualLoggingSegment next = this.takeSpareSegment();
+		if (next == null) {
+			long nextSequence = this.sequence.incrementAndGet();
+			try {
+				next = this.openSegment(nextSequence, this.getSegmentFile(nextSequence));
+			} catch (IOException ex) {
+				throw new IllegalStateException("Error occurred while rolling the logging segment!", ex);
+			}
+		}
+
+		this.segmentList.add(next);
+		this.active = next;
+
+		this.fireCompactImmediately();
+
+		return next;
+	}
+
+	private VirtualLoggingSegment takeSpareSegment() {
+		VirtualLoggingSegment prepared = this.spare.getAndSet(null);
+		if (prepared == null) {
+			return null;
+		}
+
+		long nextSequence = this.sequence.incrementAndGet();
+		File file = this.getSegmentFile(nextSequence);
+		if (prepared.getFile().renameTo(file)) {
+			return new VirtualLoggingSegment(nextSequence, file, prepared.getLogging());
+		}
+
+		prepared.getLogging().closeQuietly();
+		if (prepared.getFile().delete() == false) {
+			logger.warn("Failed to delete spare logging file {}!", prepared.getFile().getAbsolutePath());
+		}
+		return null;
+	}
+
+	private void prepareSpareSegment() {
+		if (this.spare.get() != null) {
+			return;
+		}
+
+		File file = new File(this.directory, String.format("%sspare%s", this.getSegmentPrefix(), TEMPORARY_SUFFIX));
+		if (file.exists() && file.delete() == false) {
+			logger.warn("Failed to delete spare logging file {}!", file.getAbsolutePath());
+			return;
+		}
+
+		try {
+			VirtualLoggingSegment prepared = this.openSegment(-1, file);
+			if (this.spare.compareAndSet(null, prepared) == false) {
+				prepared.getLogging().closeQuietly();
+				file.delete();
+			}
+		} catch (IOException ex) {
+			logger.error("Error occurred while preparing the spare logging segment!", ex);
+		} catch (RuntimeException rex) {
+			logger.error("Error occurred while preparing the spare logging segment!", rex);
+		}
+	}
+
+	public void compact() throws IOException {
+		try {
+			this.compactLock.lock();
+
+			VirtualLoggingSegment current = this.active;
+			Map<Long, VirtualLoggingSegment> sealedMap = new LinkedHashMap<Long, VirtualLoggingSegment>();
+			for (int i = 0; i < this.segmentList.size(); i++) {
+				VirtualLoggingSegment segment = this.segmentList.get(i);
+				if (segment == current) {
+					break;
+				}
+				sealedMap.put(segment.getSequence(), segment);
+			}
+
+			if (sealedMap.isEmpty()) {
+				return;
+			}
+
+			// sorted positions: the live records of a segment form one range, ordered by offset.
+			long[] positions = this.index.positions();
+
+			// oldest first: a delete record is dropped only after all the older records of that xid are gone, the delete
+			// records are retained as long as an older segment still holds dead records.
+			boolean retained = false;
+			VirtualLoggingThrottle throttle = new VirtualLoggingThrottle(this.compactBytesPerSecond);
+			for (Iterator<VirtualLoggingSegment> itr = sealedMap.values().iterator(); itr.hasNext();) {
+				VirtualLoggingSegment segment = itr.next();
+				long sequence = segment.getSequence();
+				int fromIndex = Arrays.binarySearch(positions, VirtualLoggingIndex.getPosition(sequence, 0));
+				fromIndex = fromIndex < 0 ? -fromIndex - 1 : fromIndex;
+				int toIndex = fromIndex;
+				while (toIndex < positions.length && VirtualLoggingIndex.getSequence(positions[toIndex]) == sequence) {
+					toIndex++;
+				}
+				retained = this.compactSegment(segment, positions, fromIndex, toIndex, retained, throttle) || retained;
+			}
+		} finally {
+			this.compactLock.unlock();
+		}
+	}
+
+	/**
+	 * @return true if the segment still holds dead records, since they do not reach the garbage ratio yet.
+	 */
+	private boolean compactSegment(VirtualLoggingSegment segment, long[] positions, int fromIndex, int toIndex,
+			boolean retained, VirtualLoggingThrottle throttle) throws IOException {
+		VirtualLoggingFile logging = segment.getLogging();
+		int recordCount = segment.getRecordCount();
+		long[] offsets = this.getRetainedOffsets(logging, positions, fromIndex, toIndex, retained);
+		if (offsets.length == recordCount) {
+			return false;
+		} else if (offsets.length > 0 && recordCount - offsets.length < recordCount * this.garbageRatio) {
+			return true;
+		} else if (offsets.length == 0) {
+			this.segmentList.remove(segment);
+			logging.closeQuietly();
+			if (segment.getFile().delete() == false) {
+				logger.warn("Failed to delete logging segment {}!", segment.getFile().getAbsolutePath());
+			}
+			return false;
+		}
+
+		List<byte[]> recordList = new ArrayList<byte[]>(offsets.length);
+		int length = 0;
+		for (int i = 0; i < offsets.length; i++) {
+			byte[] byteArray = logging.read(offsets[i]);
+			recordList.add(byteArray);
+			length += byteArray.length;
+		}
+
+		File file = segment.getFile();
+		File temp = new File(this.directory, file.getName() + TEMPORARY_SUFFIX);
+		if (temp.exists() && temp.delete() == false) {
+			throw new IOException(String.format("Failed to delete temporary logging file %s!", temp.getAbsolutePath()));
+		}
+
+		long[] targets = new long[recordList.size()];
+		VirtualLoggingSegment compacted = this.openSegment(segment.getSequence(), temp,
+				Math.max(this.segmentSize, length + VirtualLoggingFile.INCREASE_SIZE));
+		try {
+			for (int i = 0; i < recordList.size(); i++) {
+				throttle.acquire(recordList.get(i).length);
+				targets[i] = compacted.write(recordList.get(i));
+			}
+			compacted.getLogging().flushImmediately();
+		} finally {
+			compacted.getLogging().closeQuietly();
+		}
+
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+		VirtualLoggingSegment replacement = this.openSegment(segment.getSequence(), file);
+		replacement.setRecordCount(recordList.size());
+		this.segmentList.set(this.segmentList.indexOf(segment), replacement);
+		logging.closeQuietly();
+
+		for (int i = 0; i < recordList.size(); i++) {
+			byte[] byteArray = recordList.get(i);
+			if (byteArray[XidFactory.GLOBAL_TRANSACTION_LENGTH] == VirtualLoggingSystem.OPERATOR_DELETE) {
+				continue;
+			}
+
+			long high = VirtualLoggingIndex.getKey(byteArray, 0);
+			long low = VirtualLoggingIndex.getKey(byteArray, 8);
+			long source = VirtualLoggingIndex.getPosition(segment.getSequence(), offsets[i]);
+			this.index.relocate(high, low, source, targets[i]);
+		}
+		return false;
+	}
+
+	/* the offsets of the live records, and of the delete records if they are retained, in the order of the segment. */
+	private long[] getRetainedOffsets(VirtualLoggingFile logging, long[] positions, int fromIndex, int toIndex,
+			boolean retained) {
+		if (retained == false) {
+			long[] offsets = new long[toIndex - fromIndex];
+			for (int i = fromIndex; i < toIndex; i++) {
+				offsets[i - fromIndex] = VirtualLoggingIndex.getOffset(positions[i]);
+			}
+			return offsets;
+		}
+
+		long[] offsets = new long[toIndex - fromIndex];
+		int count = 0;
+		int index = fromIndex;
+		long endIndex = logging.getEndIndex();
+		for (long offset = logging.getStartIdx(); offset < endIndex; offset += logging.readLength(offset)) {
+			if (index < toIndex && VirtualLoggingIndex.getOffset(positions[index]) == offset) {
+				index++;
+			} else if (logging.readOperator(offset) != VirtualLoggingSystem.OPERATOR_DELETE) {
+				continue;
+			}
+
+			if (count == offsets.length) {
+				offsets = Arrays.copyOf(offsets, Math.max(16, count * 2));
+			}
+			offsets[count++] = offset;
+		}
+		return Arrays.copyOf(offsets, count);
+	}
+
+	public void traversalViews(VirtualLoggingViewListener listener) {
+		try {
+			this.compactLock.lock();
+			for (int i = 0; i < this.segmentList.size(); i++) {
+				this.segmentList.get(i).getLogging().traversal(listener);
+			}
+		} finally {
+			this.compactLock.unlock();
+		}
+	}
+
+	public void traversalLiveViews(VirtualLoggingViewListener listener) {
+		try {
+			this.compactLock.lock();
+			long[] positions = this.index.positions();
+			VirtualLoggingViewImpl view = new VirtualLoggingViewImpl();
+			VirtualLoggingSegment segment = null;
+			ByteBuffer[] buffers = null;
+			for (int i = 0; i < positions.length; i++) {
+				long current = VirtualLoggingIndex.getSequence(positions[i]);
+				if (segment == null || segment.getSequence() != current) {
+					segment = this.getSegment(current);
+					buffers = segment == null ? null : segment.getLogging().getReadOnlyBuffers();
+				}
+
+				if (segment == null) {
+					logger.warn("Logging segment {} not found, record ignored!", current);
+					continue;
+				}
+
+				segment.getLogging().resetView(view, buffers, VirtualLoggingIndex.getOffset(positions[i]));
+				listener.recvOperation(view);
+			}
+		} finally {
+			this.compactLock.unlock();
+		}
+	}
+
+	private VirtualLoggingSegment getSegment(long current) {
+		for (int i = 0; i < this.segmentList.size(); i++) {
+			VirtualLoggingSegment segment = this.segmentList.get(i);
+			if (segment.getSequence() == current) {
+				return segment;
+			}
+		}
+		return null;
+	}
+
+	public void flushImmediately() {
+		this.active.getLogging().flushImmediately();
+	}
+
+	public void close() {
+		for (int i = 0; i < this.segmentList.size(); i++) {
+			VirtualLoggingFile logging = this.segmentList.get(i).getLogging();
+			logging.flushImmediately();
+			logging.closeQuietly();
+		}
+
+		VirtualLoggingSegment prepared = this.spare.getAndSet(null);
+		if (prepared != null) {
+			prepared.getLogging().closeQuietly();
+			prepared.getFile().delete();
+		}
+	}
+
+	private VirtualLoggingSegment openSegment(long current, File file) throws IOException {
+		return this.openSegment(current, file, this.segmentSize);
+	}
+
+	private VirtualLoggingSegment openSegment(long current, File file, long size) throws IOException {
+		int major = this.loggingSystem.getMajorVersion();
+		int minor = this.loggingSystem.getMinorVersion();
+
+		VirtualLoggingFile logging = new VirtualLoggingFile(file, major, minor, size, this.loggingSystem.getBackend());
+		logging.setMinimumMinorVersion(this.loggingSystem.getMinimumMinorVersion());
+		logging.setMaximumMinorVersion(this.loggingSystem.getMaximumMinorVersion());
+		logging.setIdentifier(this.loggingSystem.getLoggingIdentifier().getBytes());
+		logging.setFramed(this.loggingSystem.isFramed());
+		logging.initialize(true);
+		return new VirtualLoggingSegment(current, file, logging);
+	}
+
+	private File getSegmentFile(long current) {
+		return new File(this.directory, String.format("%s%012d%s", this.getSegmentPrefix(), current, SEGMENT_SUFFIX));
+	}
+
+	private String getSegmentPrefix() {
+		return this.loggingSystem.getLoggingFilePrefix() + SEGMENT_PREFIX;
+	}
+
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	public void setSegmentSize(int segmentSize) {
+		this.segmentSize = segmentSize;
+	}
+
+	public int getCompactInterval() {
+		return compactInterval;
+	}
+
+	public void setCompactInterval(int compactInterval) {
+		this.compactInterval = compactInterval;
+	}
+
+	public double getGarbageRatio() {
+		return garbageRatio;
+	}
+
+	public void setGarbageRatio(double garbageRatio) {
+		this.garbageRatio = garbageRatio;
+	}
+
+	public int getCompactBytesPerSecond() {
+		return compactBytesPerSecond;
+	}
+
+	public void setCompactBytesPerSecond(int compactBytesPerSecond) {
+		this.compactBytesPerSecond = compactBytesPerSecond;
+	}
+
+	public boolean isForceRequired() {
+		return forceRequired;
+	}
+
+	public void setForceRequired(boolean forceRequired) {
+		this.forceRequired = forceRequired;
+	}
+
+}
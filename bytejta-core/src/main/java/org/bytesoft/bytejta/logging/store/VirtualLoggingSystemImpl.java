@@ -17,24 +17,27 @@ package org.bytesoft.bytejta.logging.store;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.resource.spi.work.Work;
 import javax.transaction.xa.Xid;
 
-import org.bytesoft.common.utils.ByteUtils;
-import org.bytesoft.transaction.logging.store.VirtualLoggingKey;
 import org.bytesoft.transaction.logging.store.VirtualLoggingListener;
 import org.bytesoft.transaction.logging.store.VirtualLoggingRecord;
 import org.bytesoft.transaction.logging.store.VirtualLoggingSystem;
 import org.bytesoft.transaction.logging.store.VirtualLoggingTrigger;
+import org.bytesoft.transaction.logging.store.VirtualLoggingView;
+import org.bytesoft.transaction.logging.store.VirtualLoggingViewListener;
 import org.bytesoft.transaction.xa.XidFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,15 +54,51 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 
 	private File directory;
 
-	private VirtualLoggingFile master;
+	private volatile VirtualLoggingFile master;
 	private VirtualLoggingFile slaver;
 
+	private final VirtualLoggingIndex index = new VirtualLoggingIndex();
+	private VirtualLoggingTable syncPositionTable;
+	private long syncEndIndex;
+
+	private boolean segmented;
+	private int segmentSize = 1024 * 1024 * 16;
+	private VirtualLoggingSegments segments;
+
 	private boolean optimized = true;
 	private boolean initialized;
 
 	private int switchThreshold = 1024 * 1024 * 8;
 	private int switchInterval = 60;
 
+	/* compacts once the dead bytes reach the garbage threshold, or the garbage ratio(but no less than switchThreshold). */
+	private final AtomicLong liveBytes = new AtomicLong();
+	private double garbageRatio = 0.5;
+	private int garbageThreshold = 1024 * 1024 * 64;
+	private int compactBytesPerSecond;
+
+	private int checkpointInterval;
+	private long checkpointTime;
+	private volatile VirtualLoggingCheckpoint checkpoint;
+
+	private boolean groupCommit;
+	private int groupCommitBatchSize = 256;
+	private long groupCommitMaxLinger = 2;
+	private VirtualLoggingFlusher flusher;
+
+	private boolean asyncAppend;
+	private VirtualLoggingAppender appender;
+
+	private boolean framed;
+
+	private boolean lockFree;
+	private int regionSize = 1024 * 1024;
+	private String backend = VirtualLoggingFile.BACKEND_MAPPED;
+	private int preallocateSize = 1024 * 1024;
+	private VirtualLoggingExtender extender;
+	private final AtomicInteger appending = new AtomicInteger();
+	private volatile boolean switching;
+
 	public synchronized void construct() throws IOException {
 		if (this.initialized == false) {
 			this.initialize();
@@ -68,6 +107,8 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 	}
 
 	private void initialize() throws IOException {
+		this.checkOptions();
+
 		if (this.directory == null) {
 			this.directory = this.getDefaultDirectory();
 		}
@@ -81,6 +122,70 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 		File fmaster = new File(this.directory, String.format("%s1.log", this.getLoggingFilePrefix()));
 		File fslaver = new File(this.directory, String.format("%s2.log", this.getLoggingFilePrefix()));
 
+		if (this.segmented) {
+			this.initializeSegments(fmaster, fslaver);
+		} else {
+			this.initializeMasterAndSlaver(fmaster, fslaver);
+			this.loadIndex();
+			this.resetLiveBytes();
+			this.flushAllIfNecessary();
+		}
+
+		if (this.lockFree) {
+			this.extendIfNecessary();
+			VirtualLoggingExtender loggingExtender = new VirtualLoggingExtender(this);
+			loggingExtender.start();
+			this.extender = loggingExtender;
+		}
+
+		if (this.groupCommit) {
+			VirtualLoggingFlusher loggingFlusher = new VirtualLoggingFlusher(this);
+			loggingFlusher.setBatchSize(Math.max(1, this.groupCommitBatchSize));
+			loggingFlusher.setMaxLinger(Math.max(0, this.groupCommitMaxLinger));
+			loggingFlusher.start();
+			this.flusher = loggingFlusher;
+		}
+
+		if (this.asyncAppend) {
+			VirtualLoggingAppender loggingAppender = new VirtualLoggingAppender(this);
+			loggingAppender.start();
+			this.appender = loggingAppender;
+		}
+	}
+
+	/* the segments are compacted and written under the lock, checkpoints and lock-free appends are of the master file. */
+	private void checkOptions() throws IllegalStateException {
+		if (this.segmented && this.checkpointInterval > 0) {
+			throw new IllegalStateException("The checkpoint is not supported by segmented logging!");
+		} else if (this.segmented && this.lockFree) {
+			throw new IllegalStateException("The lock-free append is not supported by segmented logging!");
+		} else if (this.groupCommit && this.lockFree) {
+			throw new IllegalStateException("The lock-free append is not supported by group-commit logging!");
+		}
+	}
+
+	/* replays only the records after the checkpoint, if there is a valid one of the current master. */
+	private void loadIndex() {
+		this.checkpointTime = System.currentTimeMillis();
+
+		VirtualLoggingCheckpoint loaded = this.checkpointInterval > 0 ? VirtualLoggingCheckpoint.load(this.getCheckpointFile())
+				: null;
+		if (loaded == null || loaded.getGeneration() != this.master.getCreatedTime()
+				|| loaded.getPosition() < this.master.getStartIdx() || loaded.getPosition() > this.master.getEndIndex()) {
+			this.master.truncateTornTail();
+			this.index.load(this.master, 0);
+			return;
+		}
+
+		this.master.truncateTornTail(loaded.getPosition()); // the records covered by the checkpoint are durable
+		this.index.reset(loaded.getPositionMap());
+		int count = this.index.load(this.master, 0, loaded.getPosition());
+		this.checkpoint = loaded;
+
+		logger.info("Logging checkpoint loaded: checkpoint= {}, replayed= {}.", loaded.getRecordMap().size(), count);
+	}
+
+	private void initializeMasterAndSlaver(File fmaster, File fslaver) throws IOException {
 		VirtualLoggingFile masterMgr = this.createTransactionLogging(fmaster);
 		VirtualLoggingFile slaverMgr = this.createTransactionLogging(fslaver);
 
@@ -88,8 +193,50 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 		slaverMgr.initialize(false);
 
 		this.initialize(masterMgr, slaverMgr);
+	}
+
+	private void initializeSegments(File fmaster, File fslaver) throws IOException {
+		VirtualLoggingSegments loggingSegments = new VirtualLoggingSegments(this, this.index, this.directory);
+		loggingSegments.setSegmentSize(this.segmentSize);
+		loggingSegments.setGarbageRatio(this.garbageRatio);
+		loggingSegments.setCompactBytesPerSecond(this.compactBytesPerSecond);
+		loggingSegments.setCompactInterval(this.switchInterval);
+		loggingSegments.setForceRequired(this.optimized == false || this.groupCommit);
+		loggingSegments.initialize();
+
+		if (fmaster.exists() || fslaver.exists()) {
+			this.initializeMasterAndSlaver(fmaster, fslaver);
+
+			this.master.truncateTornTail();
+			this.master.prepareForReading();
+			while (true) {
+				byte[] byteArray = null;
+				try {
+					byteArray = this.master.read();
+				} catch (RuntimeException rex) {
+					byteArray = new byte[0];
+				}
+
+				if (byteArray.length == 0) {
+					break;
+				}
+
+				this.index.register(byteArray, loggingSegments.write(byteArray));
+			}
+			loggingSegments.flushImmediately();
 
-		this.flushAllIfNecessary();
+			this.master.closeQuietly();
+			this.slaver.closeQuietly();
+			this.master = null;
+			this.slaver = null;
+
+			if (fmaster.delete() == false || fslaver.delete() == false) {
+				logger.warn("Failed to delete the legacy logging files in {}!", this.directory.getAbsolutePath());
+			}
+		} // end-if (fmaster.exists() || fslaver.exists())
+
+		loggingSegments.start();
+		this.segments = loggingSegments;
 	}
 
 	private void initialize(VirtualLoggingFile prev, VirtualLoggingFile next) {
@@ -137,30 +284,128 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 	}
 
 	public void run() {
-		int lastEndIndex = this.master.getEndIndex();
+		if (this.segments != null) {
+			return;
+		} // end-if (this.segments != null)
+
+		int interval = this.checkpointInterval > 0 ? Math.min(this.switchInterval, this.checkpointInterval)
+				: this.switchInterval;
 		while (this.released == false) {
 			try {
 				this.timingLock.lock();
-				this.timingCondition.await(this.switchInterval, TimeUnit.SECONDS);
+				this.timingCondition.await(interval, TimeUnit.SECONDS);
 			} catch (Exception ex) {
 				logger.debug(ex.getMessage(), ex);
 			} finally {
 				this.timingLock.unlock();
 			}
 
-			int increment = this.master.getEndIndex() - lastEndIndex;
-			if (increment < this.switchThreshold) {
-				continue;
-			} // end-if (increasement < this.switchThreshold)
+			if (this.isCompactionRequired()) {
+				long garbageBytes = this.getGarbageBytes();
+				this.syncMasterAndSlaver(new VirtualLoggingThrottle(this.compactBytesPerSecond));
+				this.swapMasterAndSlaver();
+
+				logger.info("Logging file compacted: released= {}, live= {}.", garbageBytes, this.liveBytes.get());
+			} // end-if (this.isCompactionRequired())
+
+			long current = System.currentTimeMillis();
+			if (this.checkpointInterval > 0 && current - this.checkpointTime >= this.checkpointInterval * 1000L) {
+				this.checkpointTime = current;
+				try {
+					this.checkpoint();
+				} catch (IOException ex) {
+					logger.error("Error occurred while writing the logging checkpoint.", ex);
+				}
+			} // end-if (this.checkpointInterval > 0 && ...)
+		}
+	}
+
+	/**
+	 * Writes the live records(folded by {@link #compressIfNecessary(List)}) before the current end index of the master
+	 * into the checkpoint file. It must not run concurrently with {@link #swapMasterAndSlaver()}.
+	 */
+	public void checkpoint() throws IOException {
+		if (this.segments != null) {
+			return;
+		} // end-if (this.segments != null)
+
+		VirtualLoggingCheckpoint current = new VirtualLoggingCheckpoint();
+		VirtualLoggingTable snapshot = null;
+		try {
+			this.lock.lock();
+			current.setGeneration(this.master.getCreatedTime());
+			current.setPosition(this.master.getEndIndex());
+			snapshot = this.index.snapshot();
+		} finally {
+			this.lock.unlock();
+		}
+
+		this.flushImmediately(); // the records covered by the checkpoint must be durable
+
+		current.collect(this, this.master, snapshot);
+		current.store(this.getCheckpointFile());
+	}
 
-			this.syncMasterAndSlaver();
-			this.swapMasterAndSlaver();
+	public File getCheckpointFile() {
+		return new File(this.directory, String.format("%scheckpoint.dat", this.getLoggingFilePrefix()));
+	}
+
+	public boolean isCompactionRequired() {
+		VirtualLoggingFile current = this.master;
+		if (current == null) {
+			return false;
+		}
+
+		long totalBytes = current.getEndIndex() - current.getStartIdx();
+		long garbageBytes = this.getGarbageBytes();
+		if (garbageBytes >= this.garbageThreshold) {
+			return true;
+		}
+		return garbageBytes >= this.switchThreshold && garbageBytes >= totalBytes * this.garbageRatio;
+	}
+
+	public long getGarbageBytes() {
+		VirtualLoggingFile current = this.master;
+		return current == null ? 0 : Math.max(0, current.getEndIndex() - current.getStartIdx() - this.liveBytes.get());
+	}
+
+	private void resetLiveBytes() {
+		long[] positions = this.index.positions();
+		long live = 0;
+		for (int i = 0; i < positions.length; i++) {
+			live += this.master.readLength(positions[i]);
+		}
+		this.liveBytes.set(live);
+	}
+
+	/* a delete record is dead at once, and so are the records it releases. */
+	private void registerLiveBytes(byte[] byteArray, long[] released) {
+		if (this.segments != null) {
+			return;
+		} else if (byteArray[XidFactory.GLOBAL_TRANSACTION_LENGTH] != OPERATOR_DELETE) {
+			this.liveBytes.addAndGet(this.master.getStoredLength(byteArray));
+			return;
+		}
+
+		long releasedBytes = 0;
+		for (int i = 0; released != null && i < released.length; i++) {
+			releasedBytes += this.master.readLength(released[i]);
+		}
+		this.liveBytes.addAndGet(-releasedBytes);
 
-			lastEndIndex = this.master.getEndIndex();
+		if (this.isCompactionRequired()) {
+			this.fireSwapImmediately();
 		}
 	}
 
 	public void fireSwapImmediately() {
+		if (this.segments != null) {
+			this.segments.fireCompactImmediately();
+			return;
+		} else if (this.isCompactionRequired() == false) {
+			return;
+		}
+
 		try {
 			this.timingLock.lock();
 			this.timingCondition.signalAll();
@@ -169,74 +414,131 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 		}
 	}
 
-	public void traversal(VirtualLoggingListener listener) {
-		this.master.prepareForReading();
-		while (true) {
-			byte[] byteArray = null;
-			try {
-				byteArray = this.master.read();
-			} catch (RuntimeException rex) {
-				byteArray = new byte[0];
-			}
-
-			if (byteArray.length == 0) {
-				break;
+	public void traversal(final VirtualLoggingListener listener) {
+		this.traversalViews(new VirtualLoggingViewListener() {
+			public void recvOperation(VirtualLoggingView view) {
+				listener.recvOperation(view.getRecord());
 			}
+		});
+	}
 
-			byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
-			System.arraycopy(byteArray, 0, keyByteArray, 0, keyByteArray.length);
-			int operator = byteArray[keyByteArray.length];
-			byte[] valueByteArray = new byte[byteArray.length - XidFactory.GLOBAL_TRANSACTION_LENGTH - 1 - 4];
-			System.arraycopy(byteArray, XidFactory.GLOBAL_TRANSACTION_LENGTH + 1 + 4, valueByteArray, 0, valueByteArray.length);
-
-			VirtualLoggingKey xid = new VirtualLoggingKey();
-			xid.setGlobalTransactionId(keyByteArray);
-
-			VirtualLoggingRecord record = new VirtualLoggingRecord();
-			record.setIdentifier(xid);
-			record.setOperator(operator);
-			record.setContent(byteArray);
-			record.setValue(valueByteArray);
-
-			listener.recvOperation(record);
+	public void traversalViews(VirtualLoggingViewListener listener) {
+		if (this.segments != null) {
+			this.segments.traversalViews(listener);
+		} else {
+			this.master.traversal(listener);
 		}
-
 	}
 
-	public void create(Xid xid, byte[] textByteArray) {
-		byte[] keyByteArray = xid.getGlobalTransactionId();
-		byte[] sizeByteArray = ByteUtils.intToByteArray(textByteArray.length);
-
-		byte[] byteArray = new byte[keyByteArray.length + 1 + sizeByteArray.length + textByteArray.length];
+	public void traversalLiveRecords(final VirtualLoggingListener listener) {
+		this.traversalLiveViews(new VirtualLoggingViewListener() {
+			public void recvOperation(VirtualLoggingView view) {
+				listener.recvOperation(view.getRecord());
+			}
+		});
+	}
 
-		System.arraycopy(keyByteArray, 0, byteArray, 0, keyByteArray.length);
-		byteArray[keyByteArray.length] = (byte) (OPERATOR_CREATE & 0xFF);
-		System.arraycopy(sizeByteArray, 0, byteArray, keyByteArray.length + 1, sizeByteArray.length);
-		System.arraycopy(textByteArray, 0, byteArray, keyByteArray.length + 1 + sizeByteArray.length, textByteArray.length);
+	public void traversalLiveViews(VirtualLoggingViewListener listener) {
+		if (this.segments != null) {
+			this.segments.traversalLiveViews(listener);
+			return;
+		} // end-if (this.segments != null)
 
 		try {
 			this.lock.lock();
-			this.master.write(byteArray);
-
-			this.flushMasterIfNecessary();
+			long endIndex = this.master.getEndIndex();
+			long[] positions = this.index.positions();
+			ByteBuffer[] buffers = this.master.getReadOnlyBuffers();
+			VirtualLoggingViewImpl view = new VirtualLoggingViewImpl();
+
+			// the checkpoint records stand for the records before the checkpoint position.
+			VirtualLoggingCheckpoint loaded = this.checkpoint;
+			long startIndex = loaded == null ? 0 : loaded.getPosition();
+			if (loaded != null) {
+				loaded.traversalLiveViews(this.index, view, listener);
+			} // end-if (loaded != null)
+
+			for (int i = 0; i < positions.length; i++) {
+				long offset = positions[i]; // sequence 0
+				if (offset >= endIndex || offset < startIndex) {
+					continue;
+				} // end-if (offset >= endIndex || offset < startIndex)
+
+				this.master.resetView(view, buffers, offset);
+				listener.recvOperation(view);
+			}
 		} finally {
 			this.lock.unlock();
 		}
 	}
 
+	public void create(Xid xid, byte[] textByteArray) {
+		this.append(this.createCreateRecord(xid, textByteArray));
+	}
+
+	protected byte[] createCreateRecord(Xid xid, byte[] textByteArray) {
+		return VirtualLoggingRecords.createCreateRecord(xid, textByteArray);
+	}
+
 	public void delete(Xid xid) {
-		byte[] keyByteArray = xid.getGlobalTransactionId();
-		byte[] sizeByteArray = ByteUtils.intToByteArray(0);
+		this.append(this.createDeleteRecord(xid));
+	}
 
-		byte[] byteArray = new byte[keyByteArray.length + 1 + sizeByteArray.length];
+	public void modify(Xid xid, byte[] textByteArray) {
+		this.append(this.createModifyRecord(xid, textByteArray));
+	}
 
-		System.arraycopy(keyByteArray, 0, byteArray, 0, keyByteArray.length);
-		byteArray[keyByteArray.length] = (byte) (OPERATOR_DELETE & 0xFF);
-		System.arraycopy(sizeByteArray, 0, byteArray, keyByteArray.length + 1, sizeByteArray.length);
+	/**
+	 * Same as {@link #delete(Xid)}, but the record may be written after returning when the async append is enabled.
+	 */
+	public void deleteLater(Xid xid) {
+		this.appendLater(this.createDeleteRecord(xid));
+	}
+
+	/**
+	 * Same as {@link #modify(Xid, byte[])}, but the record may be written after returning when the async append is
+	 * enabled.
+	 */
+	public void modifyLater(Xid xid, byte[] textByteArray) {
+		this.appendLater(this.createModifyRecord(xid, textByteArray));
+	}
+
+	protected byte[] createDeleteRecord(Xid xid) {
+		return VirtualLoggingRecords.createDeleteRecord(xid);
+	}
+
+	protected byte[] createModifyRecord(Xid xid, byte[] textByteArray) {
+		return VirtualLoggingRecords.createModifyRecord(xid, textByteArray);
+	}
+
+	private void appendLater(byte[] byteArray) {
+		VirtualLoggingAppender loggingAppender = this.appender;
+		if (loggingAppender == null || loggingAppender.submit(byteArray) == false) {
+			this.append(byteArray);
+		}
+	}
+
+	/**
+	 * Appends the records through the same path as {@link #append(byte[])}, but takes the lock only once.
+	 */
+	public void appendAll(List<byte[]> byteArrayList) {
+		VirtualLoggingFlusher loggingFlusher = this.flusher;
+		VirtualLoggingExtender loggingExtender = this.extender;
+		if (loggingFlusher != null) {
+			this.writeAndFlush(byteArrayList);
+			return;
+		} else if (loggingExtender != null && loggingExtender.isActive()) {
+			for (int i = 0; i < byteArrayList.size(); i++) {
+				this.appendWithoutLock(loggingExtender, byteArrayList.get(i));
+			}
+			return;
+		}
 
 		try {
 			this.lock.lock();
-			this.master.write(byteArray);
+			for (int i = 0; i < byteArrayList.size(); i++) {
+				this.writeRecord(byteArrayList.get(i));
+			}
 
 			this.flushMasterIfNecessary();
 		} finally {
@@ -244,20 +546,21 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 		}
 	}
 
-	public void modify(Xid xid, byte[] textByteArray) {
-		byte[] keyByteArray = xid.getGlobalTransactionId();
-		byte[] sizeByteArray = ByteUtils.intToByteArray(textByteArray.length);
-
-		byte[] byteArray = new byte[keyByteArray.length + 1 + sizeByteArray.length + textByteArray.length];
+	private void append(byte[] byteArray) {
+		VirtualLoggingFlusher loggingFlusher = this.flusher;
+		if (loggingFlusher != null && loggingFlusher.submit(new VirtualLoggingRequest(byteArray))) {
+			return;
+		}
 
-		System.arraycopy(keyByteArray, 0, byteArray, 0, keyByteArray.length);
-		byteArray[keyByteArray.length] = (byte) (OPERATOR_MOFIFY & 0xFF);
-		System.arraycopy(sizeByteArray, 0, byteArray, keyByteArray.length + 1, sizeByteArray.length);
-		System.arraycopy(textByteArray, 0, byteArray, keyByteArray.length + 1 + sizeByteArray.length, textByteArray.length);
+		VirtualLoggingExtender loggingExtender = this.extender;
+		if (loggingExtender != null && loggingExtender.isActive()) {
+			this.appendWithoutLock(loggingExtender, byteArray);
+			return;
+		}
 
 		try {
 			this.lock.lock();
-			this.master.write(byteArray);
+			this.writeRecord(byteArray);
 
 			this.flushMasterIfNecessary();
 		} finally {
@@ -265,119 +568,170 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 		}
 	}
 
-	public void syncMasterAndSlaver() {
-		this.master.prepareForReading();
-		Map<Xid, Boolean> recordMap = this.syncStepOne();
-		this.master.prepareForReading();
-		this.syncStepTwo(recordMap, true);
-
-		this.flushSlaverIfNecessary();
-	}
-
-	public Map<Xid, Boolean> syncStepOne() {
-		Map<Xid, Boolean> recordMap = new HashMap<Xid, Boolean>();
+	private void appendWithoutLock(VirtualLoggingExtender loggingExtender, byte[] byteArray) {
 		while (true) {
-			byte[] byteArray = null;
-			try {
-				byteArray = this.master.read();
-			} catch (RuntimeException rex) {
-				byteArray = new byte[0];
-			}
-
-			if (byteArray.length == 0) {
+			this.appending.incrementAndGet();
+			if (this.switching == false) {
 				break;
 			}
+			this.appending.decrementAndGet();
 
-			byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
-			System.arraycopy(byteArray, 0, keyByteArray, 0, keyByteArray.length);
-			int operator = byteArray[keyByteArray.length];
-
-			VirtualLoggingKey xid = new VirtualLoggingKey();
-			xid.setGlobalTransactionId(keyByteArray);
-
-			VirtualLoggingRecord record = new VirtualLoggingRecord();
-			record.setIdentifier(xid);
-			record.setOperator(operator);
-			record.setContent(byteArray);
+			this.lock.lock(); // wait until the switching is completed
+			this.lock.unlock();
+		}
 
-			if (operator == OPERATOR_DELETE) {
-				recordMap.put(xid, true);
+		try {
+			VirtualLoggingFile file = this.master;
+			byte[] content = file.encode(byteArray);
+			long position = file.reserve(content.length);
+			while (file.getCapacity() < position + content.length) {
+				loggingExtender.fireExtendImmediately();
+				LockSupport.parkNanos(this, 10000);
 			}
 
+			long[] released = this.index.register(byteArray, position);
+			file.put(position, content);
+			file.publish(position, content.length);
+			this.registerLiveBytes(byteArray, released);
+		} finally {
+			this.appending.decrementAndGet();
 		}
 
-		return recordMap;
-
+		this.flushMasterIfNecessary();
 	}
 
-	public List<VirtualLoggingRecord> compressIfNecessary(List<VirtualLoggingRecord> recordList) {
-		return recordList;
+	public void extendIfNecessary() {
+		VirtualLoggingFile file = this.master;
+		long required = file.getReserved() + this.preallocateSize;
+		if (file.getCapacity() < required) {
+			file.ensureCapacity(required + this.preallocateSize);
+		}
 	}
 
-	public void syncStepTwo(Map<Xid, Boolean> recordMap, boolean compressRequired) {
-		final List<VirtualLoggingRecord> recordList = new ArrayList<VirtualLoggingRecord>(COMPRESS_BATCH_SIZE);
-		while (true) {
-			byte[] byteArray = null;
-			try {
-				byteArray = this.master.read();
-			} catch (RuntimeException rex) {
-				byteArray = new byte[0];
-			}
-
-			if (byteArray.length == 0) {
-				break;
+	public void writeAndFlush(List<byte[]> byteArrayList) {
+		try {
+			this.lock.lock();
+			for (int i = 0; i < byteArrayList.size(); i++) {
+				this.writeRecord(byteArrayList.get(i));
 			}
 
-			byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
-			System.arraycopy(byteArray, 0, keyByteArray, 0, keyByteArray.length);
-			int operator = byteArray[keyByteArray.length];
-			byte[] valueByteArray = new byte[byteArray.length - XidFactory.GLOBAL_TRANSACTION_LENGTH - 1 - 4];
-			System.arraycopy(byteArray, XidFactory.GLOBAL_TRANSACTION_LENGTH + 1 + 4, valueByteArray, 0, valueByteArray.length);
+			this.flushImmediately();
+		} finally {
+			this.lock.unlock();
+		}
+	}
 
-			VirtualLoggingKey xid = new VirtualLoggingKey();
-			xid.setGlobalTransactionId(keyByteArray);
+	private void writeRecord(byte[] byteArray) {
+		if (this.segments != null) {
+			this.index.register(byteArray, this.segments.write(byteArray));
+		} else {
+			this.registerLiveBytes(byteArray, this.index.register(byteArray, this.master.write(byteArray)));
+		}
+	}
 
-			if (recordMap.containsKey(xid)) /* deleted */ {
-				continue;
-			}
+	public void syncMasterAndSlaver() {
+		this.syncMasterAndSlaver(new VirtualLoggingThrottle(0));
+	}
 
-			VirtualLoggingRecord record = new VirtualLoggingRecord();
-			record.setIdentifier(xid);
-			record.setOperator(operator);
-			record.setContent(byteArray);
-			record.setValue(valueByteArray);
+	private void syncMasterAndSlaver(VirtualLoggingThrottle throttle) {
+		if (this.segments != null) {
+			this.segments.fireCompactImmediately();
+			return;
+		} // end-if (this.segments != null)
 
-			recordList.add(record);
+		long endIndex = 0;
+		VirtualLoggingTable snapshot = null;
+		try {
+			this.lock.lock();
+			endIndex = this.master.getEndIndex();
+			snapshot = this.index.snapshot();
+			this.slaver.switchToSlaver();
+		} finally {
+			this.lock.unlock();
+		}
 
-			if (compressRequired == false) {
-				continue;
-			} else if (recordList.size() % COMPRESS_BATCH_SIZE != 0) {
+		// the xids are copied in the order of their oldest records, all the records of a xid together.
+		long[] sorted = new long[snapshot.getPositionCount()];
+		Arrays.sort(sorted, 0, snapshot.copyPositions(sorted, 0));
+
+		VirtualLoggingTable positionTable = new VirtualLoggingTable(snapshot.size());
+		List<VirtualLoggingRecord> recordList = new ArrayList<VirtualLoggingRecord>();
+		long[] buffer = new long[16];
+		for (int i = 0; i < sorted.length && sorted[i] < endIndex; i++) {
+			long high = this.master.readLong(sorted[i]);
+			long low = this.master.readLong(sorted[i] + 8);
+			int slot = snapshot.find(high, low);
+			if (snapshot.getFirst(slot) != sorted[i]) {
 				continue;
 			}
 
-			List<VirtualLoggingRecord> compressedList = this.compressIfNecessary(recordList);
-			if (compressedList != recordList && compressedList != null) {
+			int count = snapshot.getCount(slot);
+			buffer = count > buffer.length ? new long[count] : buffer;
+			snapshot.getPositions(slot, buffer);
+			Arrays.sort(buffer, 0, count);
+			for (int j = 0; j < count; j++) {
+				long offset = buffer[j]; // sequence 0
+				if (offset < endIndex) {
+					recordList.add(VirtualLoggingRecords.createRecord(this.master.read(offset)));
+				}
+			}
+
+			if (recordList.size() >= COMPRESS_BATCH_SIZE) {
+				this.syncRecords(recordList, positionTable, throttle);
 				recordList.clear();
-				recordList.addAll(compressedList);
-			} // end-if (compressedList != recordList && compressedList != null)
+			}
+		}
+		this.syncRecords(recordList, positionTable, throttle);
+
+		this.syncEndIndex = endIndex;
+		this.syncPositionTable = positionTable;
+
+		this.flushSlaverIfNecessary();
+	}
 
+	private void syncRecords(List<VirtualLoggingRecord> recordList, VirtualLoggingTable positionTable,
+			VirtualLoggingThrottle throttle) {
+		if (recordList.isEmpty()) {
+			return;
 		}
 
-		for (int i = 0; recordList != null && i < recordList.size(); i++) {
-			VirtualLoggingRecord record = recordList.get(i);
-			Xid xid = record.getIdentifier();
-			if (recordMap.containsKey(xid) == false) {
-				byte[] byteArray = record.getContent();
-				this.slaver.write(byteArray);
-			}
+		List<VirtualLoggingRecord> compressedList = this.compressIfNecessary(recordList);
+		List<VirtualLoggingRecord> resultList = compressedList == null ? recordList : compressedList;
+		for (int i = 0; i < resultList.size(); i++) {
+			byte[] byteArray = resultList.get(i).getContent();
+			throttle.acquire(byteArray.length);
+			long offset = this.slaver.write(byteArray);
+			positionTable.append(VirtualLoggingIndex.getKey(byteArray, 0), VirtualLoggingIndex.getKey(byteArray, 8), offset);
 		}
+	}
 
+	public List<VirtualLoggingRecord> compressIfNecessary(List<VirtualLoggingRecord> recordList) {
+		return recordList;
 	}
 
 	public void swapMasterAndSlaver() {
+		if (this.segments != null) {
+			return;
+		} // end-if (this.segments != null)
+
 		try {
 			this.lock.lock();
-			this.syncStepTwo(new HashMap<Xid, Boolean>(), false);
+			this.switching = true;
+			while (this.appending.get() > 0) {
+				Thread.yield();
+			}
+
+			if (this.syncPositionTable == null) {
+				this.syncMasterAndSlaver();
+			}
+
+			VirtualLoggingTable positionTable = this.syncPositionTable;
+			for (long offset = this.syncEndIndex; offset < this.master.getEndIndex();) {
+				byte[] byteArray = this.master.read(offset);
+				long target = this.slaver.write(byteArray);
+				VirtualLoggingIndex.register(positionTable, byteArray, target);
+				offset += this.master.readLength(offset);
+			}
 
 			this.slaver.markAsMaster();
 			this.master.switchToSlaver();
@@ -389,7 +743,12 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 			this.slaver = this.master;
 			this.master = theNextMaster;
 
+			this.index.reset(positionTable);
+			this.syncPositionTable = null;
+			this.checkpoint = null;
+			this.resetLiveBytes();
 		} finally {
+			this.switching = false;
 			this.lock.unlock();
 		}
 	}
@@ -400,22 +759,44 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 	}
 
 	private void flushMasterIfNecessary() {
-		if (this.optimized == false) {
-			this.master.flushImmediately();
+		if (this.optimized == false || this.groupCommit) {
+			this.flushImmediately();
 		}
 	}
 
 	private void flushSlaverIfNecessary() {
-		if (this.optimized == false) {
+		if (this.optimized == false || this.groupCommit) {
 			this.slaver.flushImmediately();
 		}
 	}
 
 	public void flushImmediately() {
-		this.master.flushImmediately();
+		if (this.segments != null) {
+			this.segments.flushImmediately();
+		} else {
+			this.master.flushImmediately();
+		}
 	}
 
 	public void shutdown() {
+		if (this.appender != null) {
+			this.appender.stop();
+		}
+
+		if (this.flusher != null) {
+			this.flusher.stop();
+		}
+
+		if (this.extender != null) {
+			this.extender.stop();
+		}
+
+		if (this.segments != null) {
+			this.segments.stop();
+			this.segments.close();
+			return;
+		} // end-if (this.segments != null)
+
 		this.master.flushImmediately();
 		this.slaver.flushImmediately();
 
@@ -433,6 +814,16 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 
 	public abstract int getMinorVersion();
 
+	/* the oldest minor version of the logging files that can still be read, which is upgraded once opened. */
+	public int getMinimumMinorVersion() {
+		return this.getMinorVersion();
+	}
+
+	/* the newest minor version of the logging files that can still be read, which is never downgraded. */
+	public int getMaximumMinorVersion() {
+		return this.getMinorVersion();
+	}
+
 	public abstract String getLoggingIdentifier();
 
 	public abstract String getLoggingFilePrefix();
@@ -441,8 +832,12 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 		int major = this.getMajorVersion();
 		int minor = this.getMinorVersion();
 
-		VirtualLoggingFile logging = new VirtualLoggingFile(file, major, minor);
+		VirtualLoggingFile logging = new VirtualLoggingFile(file, major, minor, this.regionSize, this.backend);
+		logging.setMinimumMinorVersion(this.getMinimumMinorVersion());
+		logging.setMaximumMinorVersion(this.getMaximumMinorVersion());
+		logging.setPreallocateSize(this.preallocateSize);
 		logging.setTrigger(this);
+		logging.setFramed(this.framed);
 		logging.setIdentifier(this.getLoggingIdentifier().getBytes());
 		return logging;
 	}
@@ -455,6 +850,38 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 		this.switchThreshold = switchThreshold;
 	}
 
+	public double getGarbageRatio() {
+		return garbageRatio;
+	}
+
+	public void setGarbageRatio(double garbageRatio) {
+		this.garbageRatio = garbageRatio;
+	}
+
+	public int getGarbageThreshold() {
+		return garbageThreshold;
+	}
+
+	public void setGarbageThreshold(int garbageThreshold) {
+		this.garbageThreshold = garbageThreshold;
+	}
+
+	public int getCompactBytesPerSecond() {
+		return compactBytesPerSecond;
+	}
+
+	public void setCompactBytesPerSecond(int compactBytesPerSecond) {
+		this.compactBytesPerSecond = compactBytesPerSecond;
+	}
+
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
 	public int getSwitchInterval() {
 		return switchInterval;
 	}
@@ -471,6 +898,98 @@ public abstract class VirtualLoggingSystemImpl implements VirtualLoggingSystem,
 		this.optimized = optimized;
 	}
 
+	public boolean isSegmented() {
+		return segmented;
+	}
+
+	public void setSegmented(boolean segmented) {
+		this.segmented = segmented;
+	}
+
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	public void setSegmentSize(int segmentSize) {
+		this.segmentSize = segmentSize;
+	}
+
+	public boolean isAsyncAppend() {
+		return asyncAppend;
+	}
+
+	public void setAsyncAppend(boolean asyncAppend) {
+		this.asyncAppend = asyncAppend;
+	}
+
+	public boolean isFramed() {
+		return framed;
+	}
+
+	/**
+	 * Framing is off by default. Once it is switched on, the version of the logging files is upgraded to the one of the
+	 * framed format, which the releases before it refuse to open, so it can not be rolled back to them.
+	 */
+	public void setFramed(boolean framed) {
+		this.framed = framed;
+	}
+
+	public boolean isLockFree() {
+		return lockFree;
+	}
+
+	public void setLockFree(boolean lockFree) {
+		this.lockFree = lockFree;
+	}
+
+	public int getRegionSize() {
+		return regionSize;
+	}
+
+	public void setRegionSize(int regionSize) {
+		this.regionSize = regionSize;
+	}
+
+	public String getBackend() {
+		return backend;
+	}
+
+	public void setBackend(String backend) {
+		this.backend = backend;
+	}
+
+	public int getPreallocateSize() {
+		return preallocateSize;
+	}
+
+	public void setPreallocateSize(int preallocateSize) {
+		this.preallocateSize = preallocateSize;
+	}
+
+	public boolean isGroupCommit() {
+		return groupCommit;
+	}
+
+	public void setGroupCommit(boolean groupCommit) {
+		this.groupCommit = groupCommit;
+	}
+
+	public int getGroupCommitBatchSize() {
+		return groupCommitBatchSize;
+	}
+
+	public void setGroupCommitBatchSize(int groupCommitBatchSize) {
+		this.groupCommitBatchSize = groupCommitBatchSize;
+	}
+
+	public long getGroupCommitMaxLinger() {
+		return groupCommitMaxLinger;
+	}
+
+	public void setGroupCommitMaxLinger(long groupCommitMaxLinger) {
+		this.groupCommitMaxLinger = groupCommitMaxLinger;
+	}
+
 	public File getDirectory() {
 		return directory;
 	}
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing(linear probing) table from a gtrid, as two longs, to its record positions. The positions of an entry
+ * are a linked list of nodes in primitive arrays, so that no object is created per record. Not thread-safe.
+ */
+public class VirtualLoggingTable {
+	static final int MINIMUM_CAPACITY = 16;
+
+	private long[] keys; // high, low
+	private int[] heads; // node + 1, 0 means an empty slot
+	private int[] tails;
+	private int size;
+
+	private long[] nodePositions;
+	private int[] nodeNexts; // node + 1, 0 means the end of a list
+	private int nodeCount;
+	private int freeNode; // node + 1 of the free list
+	private int liveNodes;
+
+	public VirtualLoggingTable() {
+		this(MINIMUM_CAPACITY);
+	}
+
+	public VirtualLoggingTable(int expected) {
+		int capacity = MINIMUM_CAPACITY;
+		while (capacity < expected * 2) {
+			capacity = capacity << 1;
+		}
+		this.keys = new long[capacity * 2];
+		this.heads = new int[capacity];
+		this.tails = new int[capacity];
+		this.nodePositions = new long[capacity];
+		this.nodeNexts = new int[capacity];
+	}
+
+	static int hash(long high, long low) {
+		long hash = (high ^ (low * 0x9E3779B97F4A7C15L)) * 0xC2B2AE3D27D4EB4FL;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	public int find(long high, long low) {
+		int mask = this.heads.length - 1;
+		for (int slot = hash(high, low) & mask;; slot = (slot + 1) & mask) {
+			if (this.heads[slot] == 0) {
+				return -1;
+			} else if (this.keys[slot * 2] == high && this.keys[slot * 2 + 1] == low) {
+				return slot;
+			}
+		}
+	}
+
+	public boolean contains(long high, long low) {
+		return this.find(high, low) >= 0;
+	}
+
+	public void append(long high, long low, long position) {
+		if ((this.size + 1) * 2 > this.heads.length) {
+			this.rehash(this.heads.length << 1);
+		}
+
+		int node = this.allocateNode(position);
+		int mask = this.heads.length - 1;
+		for (int slot = hash(high, low) & mask;; slot = (slot + 1) & mask) {
+			if (this.heads[slot] == 0) {
+				this.keys[slot * 2] = high;
+				this.keys[slot * 2 + 1] = low;
+				this.heads[slot] = node + 1;
+				this.tails[slot] = node + 1;
+				this.size++;
+				return;
+			} else if (this.keys[slot * 2] == high && this.keys[slot * 2 + 1] == low) {
+				this.nodeNexts[this.tails[slot] - 1] = node + 1;
+				this.tails[slot] = node + 1;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the positions of the removed entry, or null.
+	 */
+	public long[] remove(long high, long low) {
+		int slot = this.find(high, low);
+		if (slot < 0) {
+			return null;
+		}
+
+		long[] positions = new long[this.getCount(slot)];
+		this.getPositions(slot, positions);
+		for (int node = this.heads[slot]; node != 0;) {
+			int next = this.nodeNexts[node - 1];
+			this.releaseNode(node - 1);
+			node = next;
+		}
+
+		// backward shift deletion, no tombstone is left
+		int mask = this.heads.length - 1;
+		int hole = slot;
+		for (int current = (hole + 1) & mask; this.heads[current] != 0; current = (current + 1) & mask) {
+			int home = hash(this.keys[current * 2], this.keys[current * 2 + 1]) & mask;
+			boolean movable = hole <= current ? (home <= hole || home > current) : (home <= hole && home > current);
+			if (movable) {
+				this.keys[hole * 2] = this.keys[current * 2];
+				this.keys[hole * 2 + 1] = this.keys[current * 2 + 1];
+				this.heads[hole] = this.heads[current];
+				this.tails[hole] = this.tails[current];
+				hole = current;
+			}
+		}
+		this.heads[hole] = 0;
+		this.tails[hole] = 0;
+		this.size--;
+
+		return positions;
+	}
+
+	public boolean relocate(long high, long low, long source, long target) {
+		int slot = this.find(high, low);
+		for (int node = slot < 0 ? 0 : this.heads[slot]; node != 0; node = this.nodeNexts[node - 1]) {
+			if (this.nodePositions[node - 1] == source) {
+				this.nodePositions[node - 1] = target;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int getCount(int slot) {
+		int count = 0;
+		for (int node = this.heads[slot]; node != 0; node = this.nodeNexts[node - 1]) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of positions of the entry, they are copied only if the target array is large enough.
+	 */
+	public int getPositions(int slot, long[] target) {
+		int count = 0;
+		for (int node = this.heads[slot]; node != 0; node = this.nodeNexts[node - 1]) {
+			if (count < target.length) {
+				target[count] = this.nodePositions[node - 1];
+			}
+			count++;
+		}
+		return count;
+	}
+
+	public long getFirst(int slot) {
+		long first = Long.MAX_VALUE;
+		for (int node = this.heads[slot]; node != 0; node = this.nodeNexts[node - 1]) {
+			first = Math.min(first, this.nodePositions[node - 1]);
+		}
+		return first;
+	}
+
+	public boolean isOccupied(int slot) {
+		return this.heads[slot] != 0;
+	}
+
+	public long getHigh(int slot) {
+		return this.keys[slot * 2];
+	}
+
+	public long getLow(int slot) {
+		return this.keys[slot * 2 + 1];
+	}
+
+	public int getCapacity() {
+		return this.heads.length;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int getPositionCount() {
+		return this.liveNodes;
+	}
+
+	/**
+	 * Copies all the positions into the target array from the specified index.
+	 *
+	 * @return the index after the last copied position.
+	 */
+	public int copyPositions(long[] target, int index) {
+		for (int slot = 0; slot < this.heads.length; slot++) {
+			for (int node = this.heads[slot]; node != 0; node = this.nodeNexts[node - 1]) {
+				target[index++] = this.nodePositions[node - 1];
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Appends all the entries of this table into the target one.
+	 */
+	public void copyTo(VirtualLoggingTable target) {
+		for (int slot = 0; slot < this.heads.length; slot++) {
+			for (int node = this.heads[slot]; node != 0; node = this.nodeNexts[node - 1]) {
+				target.append(this.keys[slot * 2], this.keys[slot * 2 + 1], this.nodePositions[node - 1]);
+			}
+		}
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = this.keys;
+		int[] oldHeads = this.heads;
+		int[] oldTails = this.tails;
+
+		this.keys = new long[capacity * 2];
+		this.heads = new int[capacity];
+		this.tails = new int[capacity];
+
+		int mask = capacity - 1;
+		for (int i = 0; i < oldHeads.length; i++) {
+			if (oldHeads[i] == 0) {
+				continue;
+			}
+
+			int slot = hash(oldKeys[i * 2], oldKeys[i * 2 + 1]) & mask;
+			while (this.heads[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			this.keys[slot * 2] = oldKeys[i * 2];
+			this.keys[slot * 2 + 1] = oldKeys[i * 2 + 1];
+			this.heads[slot] = oldHeads[i];
+			this.tails[slot] = oldTails[i];
+		}
+	}
+
+	private int allocateNode(long position) {
+		int node;
+		if (this.freeNode != 0) {
+			node = this.freeNode - 1;
+			this.freeNode = this.nodeNexts[node];
+		} else {
+			if (this.nodeCount == this.nodePositions.length) {
+				this.nodePositions = Arrays.copyOf(this.nodePositions, this.nodeCount << 1);
+				this.nodeNexts = Arrays.copyOf(this.nodeNexts, this.nodeCount << 1);
+			}
+			node = this.nodeCount++;
+		}
+
+		this.nodePositions[node] = position;
+		this.nodeNexts[node] = 0;
+		this.liveNodes++;
+		return node;
+	}
+
+	private void releaseNode(int node) {
+		this.nodeNexts[node] = this.freeNode;
+		this.freeNode = node + 1;
+		this.liveNodes--;
+	}
+
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limits the write rate of one compaction, so that it takes no more than its share of the disk bandwidth.
+ */
+public class VirtualLoggingThrottle {
+
+	private final long bytesPerSecond;
+	private final long startNanos = System.nanoTime();
+	private long bytes;
+
+	public VirtualLoggingThrottle(long bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	public void acquire(int length) {
+		if (this.bytesPerSecond <= 0) {
+			return;
+		}
+
+		this.bytes += length;
+		long expectedNanos = this.bytes * TimeUnit.SECONDS.toNanos(1) / this.bytesPerSecond;
+		long elapsedNanos = System.nanoTime() - this.startNanos;
+		if (expectedNanos > elapsedNanos) {
+			LockSupport.parkNanos(this, expectedNanos - elapsedNanos);
+		}
+	}
+
+}
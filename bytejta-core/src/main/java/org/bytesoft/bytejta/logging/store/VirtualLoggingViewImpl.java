@@ -0,0 +1,120 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import javax.transaction.xa.Xid;
+
+import org.bytesoft.transaction.logging.store.VirtualLoggingKey;
+import org.bytesoft.transaction.logging.store.VirtualLoggingRecord;
+import org.bytesoft.transaction.logging.store.VirtualLoggingView;
+import org.bytesoft.transaction.xa.XidFactory;
+
+public class VirtualLoggingViewImpl implements VirtualLoggingView {
+	static final int HEADER_LENGTH = XidFactory.GLOBAL_TRANSACTION_LENGTH + 1 + 4;
+
+	private ByteBuffer buffer;
+	private int position;
+	private int size;
+	private boolean framed;
+
+	private Xid identifier;
+	private ByteBuffer value;
+
+	public void reset(ByteBuffer buffer, int position) {
+		this.buffer = buffer;
+		this.position = position;
+		this.size = buffer.getInt(position + XidFactory.GLOBAL_TRANSACTION_LENGTH + 1);
+		this.framed = (buffer.get(position + XidFactory.GLOBAL_TRANSACTION_LENGTH) & VirtualLoggingFile.FRAMED_FLAG) != 0;
+		this.identifier = null;
+		this.value = null;
+	}
+
+	public int getLength() {
+		return HEADER_LENGTH + this.size + this.getTrailerLength();
+	}
+
+	public int getTrailerLength() {
+		return this.framed ? VirtualLoggingFile.CHECKSUM_LENGTH : 0;
+	}
+
+	/**
+	 * @return false if the checksum of a framed record does not match, an unframed record is always intact.
+	 */
+	public boolean isIntact() {
+		if (this.framed == false) {
+			return true;
+		}
+
+		ByteBuffer duplicate = this.buffer.duplicate();
+		duplicate.limit(this.position + HEADER_LENGTH + this.size);
+		duplicate.position(this.position);
+		CRC32 crc32 = new CRC32();
+		crc32.update(duplicate);
+		return (int) crc32.getValue() == this.buffer.getInt(this.position + HEADER_LENGTH + this.size);
+	}
+
+	public int getPosition() {
+		return position;
+	}
+
+	public int getOperator() {
+		return this.buffer.get(this.position + XidFactory.GLOBAL_TRANSACTION_LENGTH) & VirtualLoggingFile.OPERATOR_MASK;
+	}
+
+	public Xid getIdentifier() {
+		if (this.identifier == null) {
+			byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
+			for (int i = 0; i < keyByteArray.length; i++) {
+				keyByteArray[i] = this.buffer.get(this.position + i);
+			}
+			VirtualLoggingKey xid = new VirtualLoggingKey();
+			xid.setGlobalTransactionId(keyByteArray);
+			this.identifier = xid;
+		}
+		return this.identifier;
+	}
+
+	public int getValueLength() {
+		return this.size;
+	}
+
+	public ByteBuffer getValue() {
+		if (this.value == null) {
+			ByteBuffer duplicate = this.buffer.duplicate();
+			duplicate.limit(this.position + HEADER_LENGTH + this.size);
+			duplicate.position(this.position + HEADER_LENGTH);
+			this.value = duplicate.slice();
+		}
+		return this.value;
+	}
+
+	public byte[] getContent() {
+		byte[] byteArray = new byte[HEADER_LENGTH + this.size];
+		ByteBuffer duplicate = this.buffer.duplicate();
+		duplicate.position(this.position);
+		duplicate.get(byteArray);
+		byteArray[XidFactory.GLOBAL_TRANSACTION_LENGTH] &= ~VirtualLoggingFile.FRAMED_FLAG;
+		return byteArray;
+	}
+
+	public VirtualLoggingRecord getRecord() {
+		return VirtualLoggingRecords.createRecord(this.getContent());
+	}
+
+}
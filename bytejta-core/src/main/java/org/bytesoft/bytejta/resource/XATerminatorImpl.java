@@ -16,7 +16,13 @@
 package org.bytesoft.bytejta.resource;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
@@ -25,6 +31,7 @@ import javax.transaction.xa.Xid;
 import org.bytesoft.common.utils.ByteUtils;
 import org.bytesoft.transaction.TransactionBeanFactory;
 import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.logging.LoggingBatchable;
 import org.bytesoft.transaction.logging.TransactionLogger;
 import org.bytesoft.transaction.resource.XATerminator;
 import org.slf4j.Logger;
@@ -33,39 +40,179 @@ import org.slf4j.LoggerFactory;
 public class XATerminatorImpl implements XATerminator {
 	static final Logger logger = LoggerFactory.getLogger(XATerminatorImpl.class);
 
+	static final int PHASE_PREPARE = 1;
+	static final int PHASE_COMMIT = 2;
+	static final int PHASE_ROLLBACK = 3;
+
+	/* the outcomes of a branch in a phase, which are combined into the outcome of the terminator. */
+	static final int BRANCH_COMMITTED = 0x1;
+	static final int BRANCH_ROLLEDBACK = 0x2;
+	static final int BRANCH_UNFINISHED = 0x4;
+	static final int BRANCH_ERROR = 0x8;
+	static final int BRANCH_UPDATED = 0x10;
+
 	private TransactionBeanFactory beanFactory;
+	private boolean presumedAbort; // votes and aborts are not logged
+	private Executor executor; // null if the branches are driven one after another
 	private final List<XAResourceArchive> resources = new ArrayList<XAResourceArchive>();
 
 	public synchronized int prepare(Xid xid) throws XAException {
-		TransactionLogger transactionLogger = this.beanFactory.getTransactionLogger();
+		List<XAResourceArchive> updatedList = new ArrayList<XAResourceArchive>(this.resources.size());
+
+		try {
+			this.invokeBranches(PHASE_PREPARE, this.resources, updatedList);
+		} finally {
+			if (this.presumedAbort == false) {
+				this.updateParticipants(updatedList);
+			} // end-if (this.presumedAbort == false)
+		}
 
 		int globalVote = XAResource.XA_RDONLY;
 		for (int i = 0; i < this.resources.size(); i++) {
 			XAResourceArchive archive = this.resources.get(i);
+			globalVote = archive.getVote() == XAResource.XA_RDONLY ? globalVote : XAResource.XA_OK;
+		}
+		return globalVote;
+	}
 
-			boolean prepared = archive.getVote() != XAResourceArchive.DEFAULT_VOTE;
-			if (prepared) {
-				globalVote = archive.getVote() == XAResource.XA_RDONLY ? globalVote : XAResource.XA_OK;
-			} else {
-				int branchVote = archive.prepare(archive.getXid());
-				archive.setVote(branchVote);
+	private int prepareBranch(XAResourceArchive archive) throws XAException {
+		int outcome = 0;
+		boolean prepared = archive.getVote() != XAResourceArchive.DEFAULT_VOTE;
+		if (prepared == false) {
+			int branchVote = archive.prepare(archive.getXid());
+			archive.setVote(branchVote);
 
-				if (branchVote == XAResource.XA_RDONLY) {
-					archive.setReadonly(true);
-					archive.setCompleted(true);
-				} else {
-					globalVote = XAResource.XA_OK;
+			if (branchVote == XAResource.XA_RDONLY) {
+				archive.setReadonly(true);
+				archive.setCompleted(true);
+			}
+
+			outcome = BRANCH_UPDATED;
+		}
+
+		logger.info("{}> prepare: xares= {}, branch= {}, vote= {}",
+				ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
+				ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), archive.getVote());
+		return outcome;
+	}
+
+	/**
+	 * Invokes the phase on the branches one after another, or on all of them at once if there is an executor. In the
+	 * latter case, the first error in the order of the branches is thrown once all the branches have returned.
+	 *
+	 * @return the union of the outcomes of the branches.
+	 */
+	private int invokeBranches(final int phase, List<XAResourceArchive> archiveList, List<XAResourceArchive> updatedList)
+			throws XAException {
+		int outcome = 0;
+		if (this.executor == null || archiveList.size() < 2) {
+			for (int i = 0; i < archiveList.size(); i++) {
+				XAResourceArchive archive = archiveList.get(i);
+				int branchOutcome = this.invokeBranch(phase, archive);
+				if ((branchOutcome & BRANCH_UPDATED) != 0) {
+					updatedList.add(archive);
 				}
+				outcome |= branchOutcome;
+			}
+			return outcome;
+		}
 
-				transactionLogger.updateParticipant(archive);
+		List<FutureTask<Integer>> futureList = new ArrayList<FutureTask<Integer>>(archiveList.size());
+		for (int i = 0; i < archiveList.size(); i++) {
+			final XAResourceArchive archive = archiveList.get(i);
+			FutureTask<Integer> future = new FutureTask<Integer>(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					return invokeBranch(phase, archive);
+				}
+			});
+			futureList.add(future);
+
+			if (i == archiveList.size() - 1) {
+				future.run(); // the last one is invoked by the current thread
+				continue;
 			}
 
-			logger.info("{}> prepare: xares= {}, branch= {}, vote= {}",
-					ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
-					ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), archive.getVote());
+			try {
+				this.executor.execute(future);
+			} catch (RejectedExecutionException rex) {
+				future.run();
+			}
 		}
 
-		return globalVote;
+		Exception error = null;
+		for (int i = 0; i < futureList.size(); i++) {
+			try {
+				int branchOutcome = this.getBranchOutcome(futureList.get(i));
+				if ((branchOutcome & BRANCH_UPDATED) != 0) {
+					updatedList.add(archiveList.get(i));
+				}
+				outcome |= branchOutcome;
+			} catch (XAException xaex) {
+				error = error == null ? xaex : error;
+			} catch (RuntimeException rex) {
+				error = error == null ? rex : error;
+			}
+		}
+
+		if (XAException.class.isInstance(error)) {
+			throw (XAException) error;
+		} else if (error != null) {
+			throw (RuntimeException) error;
+		}
+		return outcome;
+	}
+
+	private int invokeBranch(int phase, XAResourceArchive archive) throws XAException {
+		switch (phase) {
+		case PHASE_PREPARE:
+			return this.prepareBranch(archive);
+		case PHASE_COMMIT:
+			return this.commitBranch(archive);
+		default:
+			return this.rollbackBranch(archive);
+		}
+	}
+
+	private int getBranchOutcome(FutureTask<Integer> future) throws XAException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (XAException.class.isInstance(cause)) {
+				throw (XAException) cause;
+			} else if (RuntimeException.class.isInstance(cause)) {
+				throw (RuntimeException) cause;
+			} else if (Error.class.isInstance(cause)) {
+				throw (Error) cause;
+			} else {
+				throw new IllegalStateException(cause);
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/* the branches changed in one phase are written as one record, if supported by the tx-log. */
+	private void updateParticipants(List<XAResourceArchive> archiveList) {
+		TransactionLogger transactionLogger = this.beanFactory.getTransactionLogger();
+		if (archiveList.isEmpty()) {
+			return;
+		} else if (LoggingBatchable.class.isInstance(transactionLogger)) {
+			((LoggingBatchable) transactionLogger).updateParticipants(archiveList);
+		} else {
+			for (int i = 0; i < archiveList.size(); i++) {
+				transactionLogger.updateParticipant(archiveList.get(i));
+			}
+		}
 	}
 
 	/** error: XA_HEURHAZ, XA_HEURMIX, XA_HEURCOM, XA_HEURRB, XA_RDONLY, XAER_RMERR */
@@ -157,102 +304,21 @@ public class XATerminatorImpl implements XATerminator {
 	}
 
 	private void fireTwoPhaseCommit(Xid xid) throws XAException {
-		TransactionLogger transactionLogger = this.beanFactory.getTransactionLogger();
+		List<XAResourceArchive> updatedList = new ArrayList<XAResourceArchive>(this.resources.size());
 
-		boolean committedExists = false;
-		boolean rolledbackExists = false;
-		boolean unFinishExists = false;
-		boolean errorExists = false;
+		List<XAResourceArchive> archiveList = new ArrayList<XAResourceArchive>(this.resources);
+		Collections.reverse(archiveList);
+		int outcome = this.invokeBranches(PHASE_COMMIT, archiveList, updatedList);
 
-		for (int i = this.resources.size() - 1; i >= 0; i--) {
-			XAResourceArchive archive = this.resources.get(i);
-
-			if (archive.isCommitted() && archive.isRolledback()) {
-				committedExists = true;
-				rolledbackExists = true;
-				continue;
-			} else if (archive.isCommitted()) {
-				committedExists = true;
-				continue;
-			} else if (archive.isReadonly()) {
-				continue;
-			} else if (archive.isRolledback()) {
-				rolledbackExists = true;
-				continue;
-			}
-
-			Xid branchXid = archive.getXid();
-			boolean updateRequired = true;
-			try {
-				this.invokeTwoPhaseCommit(archive);
-				committedExists = true;
-				archive.setCommitted(true);
-				archive.setCompleted(true);
-				logger.info("{}> commit: xares= {}, branch= {}, onePhaseCommit= {}",
-						ByteUtils.byteArrayToString(branchXid.getGlobalTransactionId()), archive,
-						ByteUtils.byteArrayToString(branchXid.getBranchQualifier()), false);
-			} catch (XAException xaex) {
-				logger.error("{}> Error occurred while committing xa-resource: xares= {}, branch= {}, code= {}",
-						ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
-						ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), xaex.errorCode, xaex);
-
-				switch (xaex.errorCode) {
-				case XAException.XA_HEURHAZ:
-					archive.setHeuristic(true);
-					unFinishExists = true;
-					break;
-				case XAException.XA_HEURMIX:
-					committedExists = true;
-					rolledbackExists = true;
-
-					archive.setCommitted(true);
-					archive.setRolledback(true);
-					archive.setHeuristic(true);
-					archive.setCompleted(true);
-					break;
-				case XAException.XA_HEURCOM:
-					committedExists = true;
-					archive.setCommitted(true);
-					archive.setHeuristic(true);
-					archive.setCompleted(true);
-					break;
-				case XAException.XA_HEURRB:
-					rolledbackExists = true;
-					archive.setRolledback(true);
-					archive.setHeuristic(true);
-					archive.setCompleted(true);
-					break;
-				case XAException.XAER_RMFAIL:
-					unFinishExists = true;
-					updateRequired = false;
-					break;
-				case XAException.XA_RDONLY:
-					archive.setReadonly(true);
-					break;
-				case XAException.XAER_RMERR:
-				default:
-					errorExists = true;
-					updateRequired = false;
-				}
-			} catch (RuntimeException rex) {
-				logger.error("{}> Error occurred while committing xa-resource: xares= {}, branch= {}",
-						ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
-						ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), rex);
-				unFinishExists = true;
-				updateRequired = false;
-			} finally {
-				if (updateRequired) {
-					transactionLogger.updateParticipant(archive);
-				}
-			}
-
-		} // end-for
+		this.updateParticipants(updatedList);
 
+		boolean committedExists = (outcome & BRANCH_COMMITTED) != 0;
+		boolean rolledbackExists = (outcome & BRANCH_ROLLEDBACK) != 0;
 		if (committedExists && rolledbackExists) {
 			throw new XAException(XAException.XA_HEURMIX);
-		} else if (unFinishExists) {
+		} else if ((outcome & BRANCH_UNFINISHED) != 0) {
 			throw new XAException(XAException.XA_HEURHAZ);
-		} else if (errorExists) {
+		} else if ((outcome & BRANCH_ERROR) != 0) {
 			throw new XAException(XAException.XAER_RMERR);
 		} else if (rolledbackExists) {
 			throw new XAException(XAException.XA_HEURRB);
@@ -262,6 +328,68 @@ public class XATerminatorImpl implements XATerminator {
 
 	}
 
+	private int commitBranch(XAResourceArchive archive) {
+		if (archive.isCommitted() && archive.isRolledback()) {
+			return BRANCH_COMMITTED | BRANCH_ROLLEDBACK;
+		} else if (archive.isCommitted()) {
+			return BRANCH_COMMITTED;
+		} else if (archive.isReadonly()) {
+			return 0;
+		} else if (archive.isRolledback()) {
+			return BRANCH_ROLLEDBACK;
+		}
+
+		Xid branchXid = archive.getXid();
+		try {
+			this.invokeTwoPhaseCommit(archive);
+			archive.setCommitted(true);
+			archive.setCompleted(true);
+			logger.info("{}> commit: xares= {}, branch= {}, onePhaseCommit= {}",
+					ByteUtils.byteArrayToString(branchXid.getGlobalTransactionId()), archive,
+					ByteUtils.byteArrayToString(branchXid.getBranchQualifier()), false);
+			return BRANCH_COMMITTED | BRANCH_UPDATED;
+		} catch (XAException xaex) {
+			logger.error("{}> Error occurred while committing xa-resource: xares= {}, branch= {}, code= {}",
+					ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
+					ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), xaex.errorCode, xaex);
+
+			switch (xaex.errorCode) {
+			case XAException.XA_HEURHAZ:
+				archive.setHeuristic(true);
+				return BRANCH_UNFINISHED | BRANCH_UPDATED;
+			case XAException.XA_HEURMIX:
+				archive.setCommitted(true);
+				archive.setRolledback(true);
+				archive.setHeuristic(true);
+				archive.setCompleted(true);
+				return BRANCH_COMMITTED | BRANCH_ROLLEDBACK | BRANCH_UPDATED;
+			case XAException.XA_HEURCOM:
+				archive.setCommitted(true);
+				archive.setHeuristic(true);
+				archive.setCompleted(true);
+				return BRANCH_COMMITTED | BRANCH_UPDATED;
+			case XAException.XA_HEURRB:
+				archive.setRolledback(true);
+				archive.setHeuristic(true);
+				archive.setCompleted(true);
+				return BRANCH_ROLLEDBACK | BRANCH_UPDATED;
+			case XAException.XAER_RMFAIL:
+				return BRANCH_UNFINISHED;
+			case XAException.XA_RDONLY:
+				archive.setReadonly(true);
+				return BRANCH_UPDATED;
+			case XAException.XAER_RMERR:
+			default:
+				return BRANCH_ERROR;
+			}
+		} catch (RuntimeException rex) {
+			logger.error("{}> Error occurred while committing xa-resource: xares= {}, branch= {}",
+					ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
+					ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), rex);
+			return BRANCH_UNFINISHED;
+		}
+	}
+
 	private void invokeOnePhaseCommit(XAResourceArchive archive) throws XAException {
 		try {
 			archive.commit(archive.getXid(), true);
@@ -361,99 +489,21 @@ public class XATerminatorImpl implements XATerminator {
 
 	/** error: XA_HEURHAZ, XA_HEURMIX, XA_HEURCOM, XA_HEURRB, XA_RDONLY, XAER_RMERR */
 	public synchronized void rollback(Xid xid) throws XAException {
-		TransactionLogger transactionLogger = this.beanFactory.getTransactionLogger();
+		List<XAResourceArchive> updatedList = new ArrayList<XAResourceArchive>(this.resources.size());
 
-		boolean committedExists = false;
-		boolean rolledbackExists = false;
-		boolean unFinishExists = false;
-		boolean errorExists = false;
-		for (int i = 0; i < this.resources.size(); i++) {
-			XAResourceArchive archive = this.resources.get(i);
+		int outcome = this.invokeBranches(PHASE_ROLLBACK, this.resources, updatedList);
 
-			if (archive.isCommitted() && archive.isRolledback()) {
-				committedExists = true;
-				rolledbackExists = true;
-				continue;
-			} else if (archive.isRolledback()) {
-				rolledbackExists = true;
-				continue;
-			} else if (archive.isReadonly()) {
-				continue;
-			} else if (archive.isCommitted()) {
-				committedExists = true;
-				continue;
-			}
-
-			boolean updateRequired = true;
-			try {
-				this.invokeRollback(archive);
-				rolledbackExists = true;
-				archive.setRolledback(true);
-				archive.setCompleted(true);
-				logger.info("{}> rollback: xares= {}, branch= {}",
-						ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
-						ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()));
-			} catch (XAException xaex) {
-				logger.error("{}> Error occurred while rolling back xa-resource: xares= {}, branch= {}, code= {}",
-						ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
-						ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), xaex.errorCode, xaex);
-
-				switch (xaex.errorCode) {
-				case XAException.XA_HEURHAZ:
-					unFinishExists = true;
-					archive.setHeuristic(true);
-					break;
-				case XAException.XA_HEURMIX:
-					committedExists = true;
-					rolledbackExists = true;
-					archive.setCommitted(true);
-					archive.setRolledback(true);
-					archive.setHeuristic(true);
-					archive.setCompleted(true);
-					break;
-				case XAException.XA_HEURCOM:
-					committedExists = true;
-					archive.setCommitted(true);
-					archive.setHeuristic(true);
-					archive.setCompleted(true);
-					break;
-				case XAException.XA_HEURRB:
-					rolledbackExists = true;
-					archive.setRolledback(true);
-					archive.setHeuristic(true);
-					archive.setCompleted(true);
-					break;
-				case XAException.XA_RDONLY:
-					archive.setReadonly(true);
-					archive.setCompleted(true);
-					break;
-				case XAException.XAER_RMFAIL:
-					unFinishExists = true;
-					updateRequired = false;
-					break;
-				case XAException.XAER_RMERR:
-				default:
-					errorExists = true;
-					updateRequired = false;
-				}
-			} catch (RuntimeException rex) {
-				unFinishExists = true;
-				updateRequired = false;
-				logger.error("{}> Error occurred while rolling back xa-resource: xares= {}, branch= {}",
-						ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
-						ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), rex);
-			} finally {
-				if (updateRequired) {
-					transactionLogger.updateParticipant(archive);
-				}
-			}
-		}
+		if (this.presumedAbort == false) {
+			this.updateParticipants(updatedList);
+		} // end-if (this.presumedAbort == false)
 
+		boolean committedExists = (outcome & BRANCH_COMMITTED) != 0;
+		boolean rolledbackExists = (outcome & BRANCH_ROLLEDBACK) != 0;
 		if (committedExists && rolledbackExists) {
 			throw new XAException(XAException.XA_HEURMIX);
-		} else if (unFinishExists) {
+		} else if ((outcome & BRANCH_UNFINISHED) != 0) {
 			throw new XAException(XAException.XA_HEURHAZ);
-		} else if (errorExists) {
+		} else if ((outcome & BRANCH_ERROR) != 0) {
 			throw new XAException(XAException.XAER_RMERR);
 		} else if (committedExists) {
 			throw new XAException(XAException.XA_HEURCOM);
@@ -463,6 +513,68 @@ public class XATerminatorImpl implements XATerminator {
 
 	}
 
+	private int rollbackBranch(XAResourceArchive archive) {
+		if (archive.isCommitted() && archive.isRolledback()) {
+			return BRANCH_COMMITTED | BRANCH_ROLLEDBACK;
+		} else if (archive.isRolledback()) {
+			return BRANCH_ROLLEDBACK;
+		} else if (archive.isReadonly()) {
+			return 0;
+		} else if (archive.isCommitted()) {
+			return BRANCH_COMMITTED;
+		}
+
+		try {
+			this.invokeRollback(archive);
+			archive.setRolledback(true);
+			archive.setCompleted(true);
+			logger.info("{}> rollback: xares= {}, branch= {}",
+					ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
+					ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()));
+			return BRANCH_ROLLEDBACK | BRANCH_UPDATED;
+		} catch (XAException xaex) {
+			logger.error("{}> Error occurred while rolling back xa-resource: xares= {}, branch= {}, code= {}",
+					ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
+					ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), xaex.errorCode, xaex);
+
+			switch (xaex.errorCode) {
+			case XAException.XA_HEURHAZ:
+				archive.setHeuristic(true);
+				return BRANCH_UNFINISHED | BRANCH_UPDATED;
+			case XAException.XA_HEURMIX:
+				archive.setCommitted(true);
+				archive.setRolledback(true);
+				archive.setHeuristic(true);
+				archive.setCompleted(true);
+				return BRANCH_COMMITTED | BRANCH_ROLLEDBACK | BRANCH_UPDATED;
+			case XAException.XA_HEURCOM:
+				archive.setCommitted(true);
+				archive.setHeuristic(true);
+				archive.setCompleted(true);
+				return BRANCH_COMMITTED | BRANCH_UPDATED;
+			case XAException.XA_HEURRB:
+				archive.setRolledback(true);
+				archive.setHeuristic(true);
+				archive.setCompleted(true);
+				return BRANCH_ROLLEDBACK | BRANCH_UPDATED;
+			case XAException.XA_RDONLY:
+				archive.setReadonly(true);
+				archive.setCompleted(true);
+				return BRANCH_UPDATED;
+			case XAException.XAER_RMFAIL:
+				return BRANCH_UNFINISHED;
+			case XAException.XAER_RMERR:
+			default:
+				return BRANCH_ERROR;
+			}
+		} catch (RuntimeException rex) {
+			logger.error("{}> Error occurred while rolling back xa-resource: xares= {}, branch= {}",
+					ByteUtils.byteArrayToString(archive.getXid().getGlobalTransactionId()), archive,
+					ByteUtils.byteArrayToString(archive.getXid().getBranchQualifier()), rex);
+			return BRANCH_UNFINISHED;
+		}
+	}
+
 	private void invokeRollback(XAResourceArchive archive) throws XAException {
 		try {
 			archive.rollback(archive.getXid());
@@ -597,6 +709,22 @@ public class XATerminatorImpl implements XATerminator {
 		return this.resources;
 	}
 
+	public boolean isPresumedAbort() {
+		return presumedAbort;
+	}
+
+	public void setPresumedAbort(boolean presumedAbort) {
+		this.presumedAbort = presumedAbort;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
 	public TransactionBeanFactory getBeanFactory() {
 		return beanFactory;
 	}
@@ -15,6 +15,12 @@
  */
 package org.bytesoft.bytejta.strategy;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
 import javax.transaction.HeuristicCommitException;
 import javax.transaction.HeuristicMixedException;
 import javax.transaction.HeuristicRollbackException;
@@ -31,6 +37,7 @@ import org.bytesoft.transaction.resource.XATerminator;
 public class CommonTransactionStrategy implements TransactionStrategy {
 	private final XATerminator nativeTerminator;
 	private final XATerminator remoteTerminator;
+	private Executor executor; // the remote terminator runs beside the native one if specified
 
 	public CommonTransactionStrategy(XATerminator nativeTerminator, XATerminator remoteTerminator) {
 		if (nativeTerminator == null || nativeTerminator.getResourceArchives().isEmpty()) {
@@ -43,17 +50,24 @@ public class CommonTransactionStrategy implements TransactionStrategy {
 		this.remoteTerminator = remoteTerminator;
 	}
 
-	public int prepare(Xid xid) throws RollbackRequiredException, CommitRequiredException {
+	public int prepare(final Xid xid) throws RollbackRequiredException, CommitRequiredException {
+		FutureTask<Integer> remoteFuture = this.fork(new Callable<Integer>() {
+			public Integer call() throws Exception {
+				return remoteTerminator.prepare(xid);
+			}
+		});
+
 		int nativeVote = XAResource.XA_RDONLY;
 		try {
 			nativeVote = this.nativeTerminator.prepare(xid);
 		} catch (Exception ex) {
+			this.awaitQuietly(remoteFuture);
 			throw new RollbackRequiredException();
 		}
 
 		int remoteVote = XAResource.XA_RDONLY;
 		try {
-			remoteVote = this.remoteTerminator.prepare(xid);
+			remoteVote = this.join(remoteFuture);
 		} catch (Exception ex) {
 			throw new RollbackRequiredException();
 		}
@@ -66,8 +80,15 @@ public class CommonTransactionStrategy implements TransactionStrategy {
 
 	}
 
-	public void commit(Xid xid, boolean onePhaseCommit)
+	public void commit(final Xid xid, boolean onePhaseCommit)
 			throws HeuristicMixedException, HeuristicRollbackException, IllegalStateException, SystemException {
+		FutureTask<Integer> remoteFuture = this.fork(new Callable<Integer>() {
+			public Integer call() throws Exception {
+				remoteTerminator.commit(xid, false);
+				return XAResource.XA_OK;
+			}
+		});
+
 		boolean committedExists = false;
 		boolean rolledbackExists = false;
 		boolean unFinishExists = false;
@@ -105,7 +126,7 @@ public class CommonTransactionStrategy implements TransactionStrategy {
 		}
 
 		try {
-			this.remoteTerminator.commit(xid, false);
+			this.join(remoteFuture);
 			committedExists = true;
 		} catch (XAException ex) {
 			// error: XA_HEURHAZ, XA_HEURMIX, XA_HEURCOM, XA_HEURRB, XA_RDONLY, XAER_RMERR
@@ -149,8 +170,14 @@ public class CommonTransactionStrategy implements TransactionStrategy {
 
 	}
 
-	public void rollback(Xid xid)
+	public void rollback(final Xid xid)
 			throws HeuristicMixedException, HeuristicCommitException, IllegalStateException, SystemException {
+		FutureTask<Integer> remoteFuture = this.fork(new Callable<Integer>() {
+			public Integer call() throws Exception {
+				remoteTerminator.rollback(xid);
+				return XAResource.XA_OK;
+			}
+		});
 
 		boolean committedExists = false;
 		boolean rolledbackExists = false;
@@ -189,7 +216,7 @@ public class CommonTransactionStrategy implements TransactionStrategy {
 		}
 
 		try {
-			this.remoteTerminator.rollback(xid);
+			this.join(remoteFuture);
 			rolledbackExists = true;
 		} catch (XAException ex) {
 			// error: XA_HEURHAZ, XA_HEURMIX, XA_HEURCOM, XA_HEURRB, XA_RDONLY, XAER_RMERR
@@ -232,4 +259,67 @@ public class CommonTransactionStrategy implements TransactionStrategy {
 
 	}
 
+	private FutureTask<Integer> fork(Callable<Integer> callable) {
+		FutureTask<Integer> future = new FutureTask<Integer>(callable);
+		if (this.executor != null) {
+			try {
+				this.executor.execute(future);
+			} catch (RejectedExecutionException rex) {
+				future.run();
+			}
+		} // end-if (this.executor != null)
+		return future;
+	}
+
+	/* the remote terminator is not invoked at all if the native one fails to prepare in sequence. */
+	private void awaitQuietly(FutureTask<Integer> future) {
+		if (this.executor == null) {
+			return;
+		}
+
+		try {
+			this.join(future);
+		} catch (Exception ex) {
+			// ignore, the transaction is going to be rolled back
+		}
+	}
+
+	private int join(FutureTask<Integer> future) throws XAException {
+		future.run(); // no-op if it has been run by the executor
+
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (XAException.class.isInstance(cause)) {
+				throw (XAException) cause;
+			} else if (RuntimeException.class.isInstance(cause)) {
+				throw (RuntimeException) cause;
+			} else if (Error.class.isInstance(cause)) {
+				throw (Error) cause;
+			} else {
+				throw new IllegalStateException(cause);
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
 }
@@ -19,6 +19,7 @@ import javax.resource.spi.work.Work;
 
 import org.bytesoft.transaction.TransactionBeanFactory;
 import org.bytesoft.transaction.TransactionRecovery;
+import org.bytesoft.transaction.TransactionRepository;
 import org.bytesoft.transaction.aware.TransactionBeanFactoryAware;
 import org.bytesoft.transaction.supports.TransactionTimer;
 import org.slf4j.Logger;
@@ -31,6 +32,7 @@ public class TransactionWork implements Work, TransactionBeanFactoryAware {
 	private TransactionBeanFactory beanFactory;
 
 	static final long SECOND_MILLIS = 1000L;
+	static final long TIMING_INTERVAL = 100L;
 	private long stopTimeMillis = -1;
 	private long delayOfStoping = SECOND_MILLIS * 15;
 	private long recoveryInterval = SECOND_MILLIS * 60;
@@ -48,32 +50,43 @@ public class TransactionWork implements Work, TransactionBeanFactoryAware {
 			logger.error("TransactionRecovery init failed!", rex);
 		}
 
-		long nextExecutionTime = 0;
+		TransactionRepository transactionRepository = beanFactory.getTransactionRepository();
 		long nextRecoveryTime = System.currentTimeMillis() + this.recoveryInterval;
 		while (this.currentActive()) {
 
 			long current = System.currentTimeMillis();
-			if (current >= nextExecutionTime) {
-				nextExecutionTime = current + SECOND_MILLIS;
-				try {
-					transactionTimer.timingExecution();
-				} catch (RuntimeException rex) {
-					logger.error(rex.getMessage(), rex);
-				}
+			try {
+				transactionTimer.timingExecution(); // only the expired timeouts are visited
+			} catch (RuntimeException rex) {
+				logger.error(rex.getMessage(), rex);
 			}
 
+			// a repository which schedules the error-transactions is recovered as soon as the earliest one is due.
+			long recoverMillis = transactionRepository.getNextRecoverMillis();
+			if (recoverMillis >= 0 && current >= recoverMillis) {
+				this.fireGlobalRecovery();
+			} // end-if (recoverMillis >= 0 && current >= recoverMillis)
+
 			if (current >= nextRecoveryTime) {
 				nextRecoveryTime = current + this.recoveryInterval;
 
-				this.fireGlobalRecovery();
+				if (recoverMillis < 0) {
+					this.fireGlobalRecovery();
+				} // end-if (recoverMillis < 0)
 				this.fireBranchRecovery();
 			}
 
-			this.waitForMillis(100L);
+			this.waitForMillis(this.getWaitingMillis(transactionRepository.getNextRecoverMillis()));
 
 		} // end-while (this.currentActive())
 	}
 
+	/* wakes up when the next error-transaction is due, if that is earlier than the next timing execution. */
+	private long getWaitingMillis(long recoverMillis) {
+		long delayMillis = recoverMillis - System.currentTimeMillis();
+		return delayMillis > 0 && delayMillis < TIMING_INTERVAL ? delayMillis : TIMING_INTERVAL;
+	}
+
 	private void fireGlobalRecovery() {
 		TransactionRecovery transactionRecovery = beanFactory.getTransactionRecovery();
 		try {
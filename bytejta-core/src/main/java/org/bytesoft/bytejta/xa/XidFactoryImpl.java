@@ -16,6 +16,10 @@
 package org.bytesoft.bytejta.xa;
 
 import java.net.NetworkInterface;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Enumeration;
 import java.util.Random;
@@ -76,6 +80,37 @@ public class XidFactoryImpl implements XidFactory {
 		return byteArray != null ? byteArray : new byte[SIZE_OF_MAC];
 	}
 
+	/**
+	 * The bytes of a global transaction id which carry the hardware address of its creator. A presumed-abort
+	 * coordinator puts its instance key there instead, so that its recovery only presumes its own branches aborted.
+	 */
+	public static byte[] getInstanceBytes(byte[] globalTransactionId) {
+		return Arrays.copyOfRange(globalTransactionId, 5, 5 + SIZE_OF_MAC);
+	}
+
+	/**
+	 * Returns a copy of the global transaction id which carries the instance key of the coordinator.
+	 */
+	public static byte[] setInstanceBytes(byte[] globalTransactionId, String identifier) {
+		byte[] byteArray = Arrays.copyOf(globalTransactionId, globalTransactionId.length);
+		System.arraycopy(getInstanceKey(identifier), 0, byteArray, 5, SIZE_OF_MAC);
+		return byteArray;
+	}
+
+	/**
+	 * The instance key is derived from the identifier(host:application:port) of the coordinator, so it differs between
+	 * the services running on one host, and survives a restart as long as the identifier does.
+	 */
+	public static byte[] getInstanceKey(String identifier) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			byte[] byteArray = digest.digest(identifier.getBytes(StandardCharsets.UTF_8));
+			return Arrays.copyOf(byteArray, SIZE_OF_MAC);
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
 	public TransactionXid createGlobalXid() {
 		byte[] unique = this.generateUniqueKey();
 		if (unique == null || unique.length != GLOBAL_TRANSACTION_LENGTH) {
@@ -37,6 +37,31 @@ public interface TransactionRepository {
 
 	public List<Transaction> getErrorTransactionList();
 
+	/** schedules the next recovery of the error-transaction, a recovery scheduled before is replaced. */
+	public default void scheduleErrorTransaction(TransactionXid xid, Transaction transaction, long recoverMillis) {
+		this.putErrorTransaction(xid, transaction);
+	}
+
+	/** schedules the next recovery only if the error-transaction is still registered, as one atomic step. */
+	public default boolean rescheduleErrorTransactionIfPresent(TransactionXid xid, Transaction transaction,
+			long recoverMillis) {
+		/* without scheduling, a registered error-transaction is recovered again on every run anyway. */
+		return this.getErrorTransaction(xid) == transaction;
+	}
+
+	/** polls the error-transactions whose recovery is due, they are not polled again unless scheduled again. */
+	public default List<Transaction> pollErrorTransactionList(long currentMillis) {
+		return this.getErrorTransactionList();
+	}
+
+	/**
+	 * The time when the earliest error-transaction is due, Long.MAX_VALUE if there is none, or -1 if the repository does
+	 * not schedule the recoveries, which then run every recovery interval as before.
+	 */
+	public default long getNextRecoverMillis() {
+		return -1L;
+	}
+
 	public List<Transaction> getActiveTransactionList();
 
 }
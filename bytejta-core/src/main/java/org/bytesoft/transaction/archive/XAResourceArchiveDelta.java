@@ -0,0 +1,120 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.transaction.archive;
+
+import javax.transaction.xa.Xid;
+
+public class XAResourceArchiveDelta {
+	private Xid xid;
+	private int vote;
+	private boolean readonly;
+	private boolean committed;
+	private boolean rolledback;
+	private boolean completed;
+	private boolean heuristic;
+
+	public XAResourceArchiveDelta() {
+	}
+
+	public XAResourceArchiveDelta(XAResourceArchive archive) {
+		this.xid = archive.getXid();
+		this.vote = archive.getVote();
+		this.readonly = archive.isReadonly();
+		this.committed = archive.isCommitted();
+		this.rolledback = archive.isRolledback();
+		this.completed = archive.isCompleted();
+		this.heuristic = archive.isHeuristic();
+	}
+
+	public void applyTo(XAResourceArchive archive) {
+		archive.setVote(this.vote);
+		archive.setReadonly(this.readonly);
+		archive.setCommitted(this.committed);
+		archive.setRolledback(this.rolledback);
+		archive.setCompleted(this.completed);
+		archive.setHeuristic(this.heuristic);
+	}
+
+	public boolean matches(XAResourceArchive archive) {
+		return this.vote == archive.getVote() //
+				&& this.readonly == archive.isReadonly() //
+				&& this.committed == archive.isCommitted() //
+				&& this.rolledback == archive.isRolledback() //
+				&& this.completed == archive.isCompleted() //
+				&& this.heuristic == archive.isHeuristic();
+	}
+
+	public String toString() {
+		return String.format("xa-res-delta[xid: %s, vote: %s]", this.xid, this.vote);
+	}
+
+	public Xid getXid() {
+		return xid;
+	}
+
+	public void setXid(Xid xid) {
+		this.xid = xid;
+	}
+
+	public int getVote() {
+		return vote;
+	}
+
+	public void setVote(int vote) {
+		this.vote = vote;
+	}
+
+	public boolean isReadonly() {
+		return readonly;
+	}
+
+	public void setReadonly(boolean readonly) {
+		this.readonly = readonly;
+	}
+
+	public boolean isCommitted() {
+		return committed;
+	}
+
+	public void setCommitted(boolean committed) {
+		this.committed = committed;
+	}
+
+	public boolean isRolledback() {
+		return rolledback;
+	}
+
+	public void setRolledback(boolean rolledback) {
+		this.rolledback = rolledback;
+	}
+
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	public void setCompleted(boolean completed) {
+		this.completed = completed;
+	}
+
+	public boolean isHeuristic() {
+		return heuristic;
+	}
+
+	public void setHeuristic(boolean heuristic) {
+		this.heuristic = heuristic;
+	}
+
+}
@@ -30,4 +30,10 @@ public interface VirtualLoggingSystem {
 
 	public void traversal(VirtualLoggingListener listener);
 
+	public void traversalLiveRecords(VirtualLoggingListener listener);
+
+	public void traversalViews(VirtualLoggingViewListener listener);
+
+	public void traversalLiveViews(VirtualLoggingViewListener listener);
+
 }
@@ -21,6 +21,10 @@ public interface TransactionTimer {
 
 	public void timingExecution();
 
+	/** timers which scan the active transactions by themselves need not be told about new ones. */
+	public default void startTiming(Transaction tx) {
+	}
+
 	public void stopTiming(Transaction tx);
 
 }
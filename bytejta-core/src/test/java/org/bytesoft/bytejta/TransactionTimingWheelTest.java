@@ -0,0 +1,118 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bytesoft.bytejta.xa.XidFactoryImpl;
+import org.bytesoft.transaction.Transaction;
+import org.bytesoft.transaction.TransactionContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransactionTimingWheelTest {
+	static final long TICK_MILLIS = 10;
+
+	private final XidFactoryImpl xidFactory = new XidFactoryImpl();
+	private final TransactionTimingWheel timingWheel = new TransactionTimingWheel(TICK_MILLIS, 0);
+
+	@Test
+	public void testExpiredAtItsTick() {
+		Transaction transaction = this.createTransaction();
+		this.timingWheel.schedule(transaction, 95, 0);
+
+		Assert.assertTrue(this.timingWheel.advance(this.getNanos(90)).isEmpty());
+		Assert.assertTrue(this.timingWheel.advance(this.getNanos(99)).isEmpty());
+		Assert.assertEquals(Arrays.asList(transaction), this.timingWheel.advance(this.getNanos(100)));
+		Assert.assertEquals(0, this.timingWheel.size());
+		Assert.assertTrue(this.timingWheel.advance(this.getNanos(1000)).isEmpty());
+	}
+
+	@Test
+	public void testCascadedAcrossLevels() {
+		int size = TransactionTimingWheel.WHEEL_SIZE;
+		long[] ticks = new long[] { 10, size * 3 + 5, size * size * 2 + 7, (long) size * size * size + 1 };
+		Transaction[] transactions = new Transaction[ticks.length];
+		for (int i = 0; i < ticks.length; i++) {
+			transactions[i] = this.createTransaction();
+			this.timingWheel.schedule(transactions[i], ticks[i] * TICK_MILLIS, 0);
+		}
+
+		long[] expiredTicks = new long[ticks.length];
+		for (long tick = 1; tick <= ticks[ticks.length - 1]; tick++) {
+			List<Transaction> expiredList = this.timingWheel.advance(this.getNanos(tick * TICK_MILLIS));
+			for (int i = 0; i < expiredList.size(); i++) {
+				expiredTicks[Arrays.asList(transactions).indexOf(expiredList.get(i))] = tick;
+			}
+		}
+		Assert.assertArrayEquals(ticks, expiredTicks);
+		Assert.assertEquals(0, this.timingWheel.size());
+	}
+
+	@Test
+	public void testRebuiltAfterHugeJump() {
+		Transaction first = this.createTransaction();
+		Transaction second = this.createTransaction();
+		Transaction third = this.createTransaction();
+		this.timingWheel.schedule(first, 50 * TICK_MILLIS, 0);
+		this.timingWheel.schedule(second, 10000 * TICK_MILLIS, 0);
+		this.timingWheel.schedule(third, 100000 * TICK_MILLIS, 0);
+
+		List<Transaction> expiredList = this.timingWheel.advance(this.getNanos(20000 * TICK_MILLIS));
+		Assert.assertEquals(new HashSet<Transaction>(Arrays.asList(first, second)),
+				new HashSet<Transaction>(expiredList));
+		Assert.assertEquals(1, this.timingWheel.size());
+
+		long steps = TransactionTimingWheel.MAX_STEPS; // advanced step by step, without rebuilding again
+		for (long tick = 20000 + steps; tick < 100000; tick += steps) {
+			Assert.assertTrue(this.timingWheel.advance(this.getNanos(tick * TICK_MILLIS)).isEmpty());
+		}
+		Assert.assertTrue(this.timingWheel.advance(this.getNanos(99999 * TICK_MILLIS)).isEmpty());
+		Assert.assertEquals(Arrays.asList(third), this.timingWheel.advance(this.getNanos(100000 * TICK_MILLIS)));
+	}
+
+	@Test
+	public void testCancelledAndRescheduled() {
+		Transaction cancelled = this.createTransaction();
+		Transaction rescheduled = this.createTransaction();
+		this.timingWheel.schedule(cancelled, 10 * TICK_MILLIS, 0);
+		this.timingWheel.schedule(rescheduled, 10 * TICK_MILLIS, 0);
+		this.timingWheel.schedule(rescheduled, 30 * TICK_MILLIS, this.getNanos(5 * TICK_MILLIS));
+
+		Assert.assertTrue(this.timingWheel.cancel(cancelled));
+		Assert.assertFalse(this.timingWheel.cancel(cancelled));
+		Assert.assertEquals(1, this.timingWheel.size());
+
+		Assert.assertEquals(Collections.emptyList(), this.timingWheel.advance(this.getNanos(34 * TICK_MILLIS)));
+		Assert.assertEquals(Arrays.asList(rescheduled), this.timingWheel.advance(this.getNanos(35 * TICK_MILLIS)));
+		Assert.assertEquals(0, this.timingWheel.size());
+	}
+
+	private long getNanos(long millis) {
+		return TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	private Transaction createTransaction() {
+		TransactionContext transactionContext = new TransactionContext();
+		transactionContext.setXid(this.xidFactory.createGlobalXid());
+		return new TransactionImpl(transactionContext);
+	}
+
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.transaction.Status;
+
+import org.bytesoft.bytejta.TransactionBeanFactoryImpl;
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JdbcTransactionLoggerTest {
+	static final String TABLE_DDL = "create table bytejta_log (endpoint varchar(128) not null, "
+			+ "gxid varchar(64) not null, seq bigint not null, value blob not null, primary key (endpoint, gxid, seq))";
+
+	private static int databases;
+
+	private TransactionBeanFactoryImpl beanFactory;
+	private JdbcDataSource dataSource;
+	private Connection connection; // keeps the in-memory database open
+	private final List<JdbcTransactionLogger> loggerList = new ArrayList<JdbcTransactionLogger>();
+
+	@Before
+	public void setUp() throws SQLException {
+		this.beanFactory = LoggingTestSupport.getBeanFactory();
+		this.dataSource = new JdbcDataSource();
+		this.dataSource.setURL(String.format("jdbc:h2:mem:bytejta%s", ++databases));
+		this.connection = this.dataSource.getConnection();
+		Statement stmt = this.connection.createStatement();
+		stmt.execute(TABLE_DDL);
+		stmt.close();
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		for (int i = 0; i < this.loggerList.size(); i++) {
+			this.loggerList.get(i).shutdown();
+		}
+		this.connection.close();
+	}
+
+	@Test
+	public void testRecoverLiveTransactions() {
+		JdbcTransactionLogger transactionLogger = this.createLogger(LoggingTestSupport.ENDPOINT);
+		Map<String, String> expected = new TreeMap<String, String>();
+		for (int i = 0; i < 20; i++) {
+			TransactionArchive archive = LoggingTestSupport.createArchive(this.beanFactory, 3);
+			if (i % 2 == 0) {
+				LoggingTestSupport.complete(transactionLogger, archive);
+				continue;
+			}
+
+			transactionLogger.createTransaction(archive);
+			archive.getRemoteResources().get(0).setVote(1);
+			transactionLogger.updateParticipant(archive.getRemoteResources().get(0));
+			archive.setStatus(Status.STATUS_PREPARED);
+			transactionLogger.updateTransaction(archive);
+			expected.put(archive.getXid().toString(), LoggingTestSupport.describe(archive));
+		}
+		transactionLogger.shutdown();
+
+		JdbcTransactionLogger restarted = this.createLogger(LoggingTestSupport.ENDPOINT);
+		Assert.assertEquals(expected, LoggingTestSupport.recover(restarted));
+	}
+
+	@Test
+	public void testTerminalRecordsWrittenBehind() throws SQLException {
+		JdbcTransactionLogger transactionLogger = this.createLogger(LoggingTestSupport.ENDPOINT);
+		for (int i = 0; i < 10; i++) {
+			LoggingTestSupport.complete(transactionLogger, LoggingTestSupport.createArchive(this.beanFactory, 2));
+		}
+
+		transactionLogger.flushImmediately();
+		Assert.assertEquals(0, this.countRows());
+		Assert.assertTrue(LoggingTestSupport.recover(transactionLogger).isEmpty());
+	}
+
+	@Test
+	public void testSequenceContinuedAfterRestart() throws SQLException {
+		JdbcTransactionLogger transactionLogger = this.createLogger(LoggingTestSupport.ENDPOINT);
+		TransactionArchive archive = LoggingTestSupport.createArchive(this.beanFactory, 1);
+		transactionLogger.createTransaction(archive);
+		transactionLogger.shutdown();
+
+		JdbcTransactionLogger restarted = this.createLogger(LoggingTestSupport.ENDPOINT);
+		archive.setStatus(Status.STATUS_PREPARED);
+		restarted.updateTransaction(archive);
+		restarted.flushImmediately();
+
+		Assert.assertEquals(2, this.countRows());
+		Map<String, String> recovered = LoggingTestSupport.recover(restarted);
+		Assert.assertEquals(LoggingTestSupport.describe(archive), recovered.get(archive.getXid().toString()));
+	}
+
+	@Test
+	public void testEndpointsIsolated() {
+		JdbcTransactionLogger transactionLogger = this.createLogger(LoggingTestSupport.ENDPOINT);
+		JdbcTransactionLogger anotherLogger = this.createLogger("10.0.0.9:orders:8080");
+		TransactionArchive archive = LoggingTestSupport.createArchive(this.beanFactory, 1);
+		TransactionArchive another = LoggingTestSupport.createArchive(this.beanFactory, 1);
+		transactionLogger.createTransaction(archive);
+		anotherLogger.createTransaction(another);
+		anotherLogger.deleteTransaction(archive); // not a transaction of this endpoint
+
+		Map<String, String> recovered = LoggingTestSupport.recover(transactionLogger);
+		Assert.assertEquals(1, recovered.size());
+		Assert.assertTrue(recovered.containsKey(archive.getXid().toString()));
+		Assert.assertEquals(1, LoggingTestSupport.recover(anotherLogger).size());
+	}
+
+	@Test
+	public void testQueuedRecordsWrittenOnShutdown() throws SQLException {
+		JdbcTransactionLogger transactionLogger = this.createLogger(LoggingTestSupport.ENDPOINT);
+		TransactionArchive archive = LoggingTestSupport.createArchive(this.beanFactory, 1);
+		transactionLogger.createTransaction(archive);
+		transactionLogger.deleteTransaction(archive); // written behind
+		transactionLogger.shutdown();
+
+		Assert.assertEquals(0, this.countRows());
+	}
+
+	@Test
+	public void testConcurrentWriters() throws Exception {
+		final JdbcTransactionLogger transactionLogger = this.createLogger(LoggingTestSupport.ENDPOINT);
+		Thread[] threads = new Thread[4];
+		final List<TransactionArchive> archiveList = new ArrayList<TransactionArchive>();
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < 50; j++) {
+						TransactionArchive archive = LoggingTestSupport.createArchive(beanFactory, 2);
+						transactionLogger.createTransaction(archive);
+						if (j % 5 == 0) {
+							synchronized (archiveList) {
+								archiveList.add(archive);
+							}
+						} else {
+							transactionLogger.deleteTransaction(archive);
+						}
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+
+		Map<String, String> recovered = LoggingTestSupport.recover(transactionLogger);
+		Assert.assertEquals(archiveList.size(), recovered.size());
+		for (int i = 0; i < archiveList.size(); i++) {
+			Assert.assertTrue(recovered.containsKey(archiveList.get(i).getXid().toString()));
+		}
+	}
+
+	private JdbcTransactionLogger createLogger(String endpoint) {
+		JdbcTransactionLogger transactionLogger = new JdbcTransactionLogger();
+		transactionLogger.setBeanFactory(this.beanFactory);
+		transactionLogger.setDataSource(this.dataSource);
+		transactionLogger.setEndpoint(endpoint);
+		this.loggerList.add(transactionLogger);
+		return transactionLogger;
+	}
+
+	private int countRows() throws SQLException {
+		Statement stmt = this.connection.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("select count(*) from bytejta_log");
+			rs.next();
+			return rs.getInt(1);
+		} finally {
+			stmt.close();
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.transaction.Status;
+
+import org.bytesoft.bytejta.TransactionBeanFactoryImpl;
+import org.bytesoft.bytejta.logging.deserializer.TransactionArchiveDeserializer;
+import org.bytesoft.bytejta.logging.deserializer.XAResourceArchiveDeserializer;
+import org.bytesoft.bytejta.supports.resource.RemoteResourceDescriptor;
+import org.bytesoft.bytejta.xa.XidFactoryImpl;
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.logging.LoggingBatchable;
+import org.bytesoft.transaction.logging.TransactionLogger;
+import org.bytesoft.transaction.recovery.TransactionRecoveryCallback;
+import org.bytesoft.transaction.supports.resource.XAResourceDescriptor;
+import org.bytesoft.transaction.supports.serialize.XAResourceDeserializer;
+import org.bytesoft.transaction.xa.TransactionXid;
+
+/**
+ * Builds the archives written by the transaction logger tests, and describes the recovered ones for comparison.
+ */
+public class LoggingTestSupport {
+	static final String ENDPOINT = "10.0.0.1:orders:8080";
+
+	public static TransactionBeanFactoryImpl getBeanFactory() {
+		TransactionBeanFactoryImpl beanFactory = TransactionBeanFactoryImpl.getInstance();
+		beanFactory.setXidFactory(new XidFactoryImpl());
+		beanFactory.setResourceDeserializer(new XAResourceDeserializer() {
+			public XAResourceDescriptor deserialize(String identifier) {
+				RemoteResourceDescriptor descriptor = new RemoteResourceDescriptor();
+				descriptor.setIdentifier(identifier);
+				return descriptor;
+			}
+		});
+
+		XAResourceArchiveDeserializer resourceArchiveDeserializer = new XAResourceArchiveDeserializer();
+		resourceArchiveDeserializer.setBeanFactory(beanFactory);
+		TransactionArchiveDeserializer transactionArchiveDeserializer = new TransactionArchiveDeserializer();
+		transactionArchiveDeserializer.setResourceArchiveDeserializer(resourceArchiveDeserializer);
+		ArchiveDeserializerImpl archiveDeserializer = new ArchiveDeserializerImpl();
+		archiveDeserializer.setTransactionArchiveDeserializer(transactionArchiveDeserializer);
+		archiveDeserializer.setXaResourceArchiveDeserializer(resourceArchiveDeserializer);
+		beanFactory.setArchiveDeserializer(archiveDeserializer);
+		return beanFactory;
+	}
+
+	public static TransactionArchive createArchive(TransactionBeanFactoryImpl beanFactory, int branches) {
+		TransactionArchive archive = new TransactionArchive();
+		archive.setXid(beanFactory.getXidFactory().createGlobalXid());
+		archive.setPropagatedBy(ENDPOINT);
+		archive.setStatus(Status.STATUS_PREPARING);
+		archive.setVote(0);
+		archive.setCoordinator(true);
+		for (int i = 0; i < branches; i++) {
+			XAResourceArchive resourceArchive = new XAResourceArchive();
+			resourceArchive.setXid(beanFactory.getXidFactory().createBranchXid((TransactionXid) archive.getXid()));
+			RemoteResourceDescriptor descriptor = new RemoteResourceDescriptor();
+			descriptor.setIdentifier(String.format("10.0.0.%s:inventory:9090", 2 + i));
+			resourceArchive.setDescriptor(descriptor);
+			resourceArchive.setIdentified(true);
+			archive.getRemoteResources().add(resourceArchive);
+		}
+		return archive;
+	}
+
+	/* create, prepare all branches in one record, commit, then forget. */
+	public static void complete(TransactionLogger transactionLogger, TransactionArchive archive) {
+		transactionLogger.createTransaction(archive);
+		for (int i = 0; i < archive.getRemoteResources().size(); i++) {
+			archive.getRemoteResources().get(i).setVote(0);
+		}
+		((LoggingBatchable) transactionLogger).updateParticipants(archive.getRemoteResources());
+		archive.setStatus(Status.STATUS_COMMITTED);
+		transactionLogger.updateTransaction(archive);
+		transactionLogger.deleteTransaction(archive);
+	}
+
+	public static String describe(TransactionArchive archive) {
+		StringBuilder ber = new StringBuilder();
+		ber.append(archive.getStatus()).append('/').append(archive.getVote());
+		ber.append('/').append(archive.isCoordinator()).append('/').append(archive.getPropagatedBy());
+		for (int i = 0; i < archive.getNativeResources().size(); i++) {
+			XAResourceArchive resourceArchive = archive.getNativeResources().get(i);
+			ber.append(" n:").append(resourceArchive.getDescriptor().getIdentifier());
+			describe(ber, resourceArchive);
+		}
+		for (int i = 0; i < archive.getRemoteResources().size(); i++) {
+			XAResourceArchive resourceArchive = archive.getRemoteResources().get(i);
+			ber.append(" r:").append(resourceArchive.getDescriptor().getIdentifier());
+			describe(ber, resourceArchive);
+		}
+		return ber.toString();
+	}
+
+	private static void describe(StringBuilder ber, XAResourceArchive archive) {
+		ber.append(':').append(archive.getVote()).append(archive.isReadonly() ? 'r' : '-');
+		ber.append(archive.isCommitted() ? 'c' : '-').append(archive.isRolledback() ? 'b' : '-');
+		ber.append(archive.isCompleted() ? 'd' : '-').append(archive.isHeuristic() ? 'h' : '-');
+	}
+
+	public static Map<String, String> recover(TransactionLogger transactionLogger) {
+		final Map<String, String> archiveMap = new TreeMap<String, String>();
+		transactionLogger.recover(new TransactionRecoveryCallback() {
+			public void recover(TransactionArchive archive) {
+				archiveMap.put(archive.getXid().toString(), describe(archive));
+			}
+		});
+		return archiveMap;
+	}
+
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CyclicBarrier;
+
+import javax.transaction.Status;
+import javax.transaction.xa.XAResource;
+
+import org.bytesoft.bytejta.TransactionBeanFactoryImpl;
+import org.bytesoft.bytejta.supports.resource.RemoteResourceDescriptor;
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.archive.XAResourceArchive;
+import org.bytesoft.transaction.logging.store.VirtualLoggingListener;
+import org.bytesoft.transaction.logging.store.VirtualLoggingRecord;
+import org.bytesoft.transaction.logging.store.VirtualLoggingSystem;
+import org.bytesoft.transaction.xa.TransactionXid;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SampleTransactionLoggerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TransactionBeanFactoryImpl beanFactory;
+	private final List<SampleTransactionLogger> loggerList = new ArrayList<SampleTransactionLogger>();
+
+	@Before
+	public void setUp() {
+		this.beanFactory = LoggingTestSupport.getBeanFactory();
+	}
+
+	@After
+	public void tearDown() {
+		for (int i = 0; i < this.loggerList.size(); i++) {
+			this.loggerList.get(i).shutdown();
+		}
+	}
+
+	@Test
+	public void testDeltaRecordsRecovered() {
+		for (boolean deltaRecords : new boolean[] { false, true }) {
+			String directory = deltaRecords ? "delta" : "full";
+			SampleTransactionLogger transactionLogger = this.createLogger(directory, deltaRecords);
+			TransactionArchive archive = LoggingTestSupport.createArchive(this.beanFactory, 4);
+			this.prepare(transactionLogger, archive);
+			transactionLogger.shutdown();
+
+			SampleTransactionLogger restarted = this.createLogger(directory, deltaRecords);
+			Map<String, String> recovered = LoggingTestSupport.recover(restarted);
+			Assert.assertEquals(1, recovered.size());
+			Assert.assertEquals(LoggingTestSupport.describe(archive), recovered.get(archive.getXid().toString()));
+		}
+	}
+
+	@Test
+	public void testDeltaRecordsSmallerThanFullRecords() {
+		SampleTransactionLogger fullLogger = this.createLogger("full", false);
+		SampleTransactionLogger deltaLogger = this.createLogger("delta", true);
+		TransactionArchive archive = LoggingTestSupport.createArchive(this.beanFactory, 4);
+		this.prepare(fullLogger, archive);
+		archive = LoggingTestSupport.createArchive(this.beanFactory, 4);
+		this.prepare(deltaLogger, archive);
+
+		Assert.assertTrue(this.getModifiedBytes(deltaLogger) < this.getModifiedBytes(fullLogger));
+	}
+
+	@Test
+	public void testFullRecordAfterBranchEnlisted() {
+		SampleTransactionLogger transactionLogger = this.createLogger("delta", true);
+		TransactionArchive archive = LoggingTestSupport.createArchive(this.beanFactory, 2);
+		transactionLogger.createTransaction(archive);
+
+		XAResourceArchive resourceArchive = new XAResourceArchive();
+		resourceArchive.setXid(this.beanFactory.getXidFactory().createBranchXid((TransactionXid) archive.getXid()));
+		RemoteResourceDescriptor descriptor = new RemoteResourceDescriptor();
+		descriptor.setIdentifier("10.0.0.9:inventory:9090");
+		resourceArchive.setDescriptor(descriptor);
+		resourceArchive.setIdentified(true);
+		archive.getRemoteResources().add(resourceArchive);
+		this.prepare(transactionLogger, archive);
+		transactionLogger.shutdown();
+
+		SampleTransactionLogger restarted = this.createLogger("delta", true);
+		Map<String, String> recovered = LoggingTestSupport.recover(restarted);
+		Assert.assertEquals(LoggingTestSupport.describe(archive), recovered.get(archive.getXid().toString()));
+	}
+
+	@Test
+	public void testDeltaRecordsFoldedByCompaction() {
+		SampleTransactionLogger transactionLogger = this.createLogger("delta", true);
+		Map<String, String> expected = new TreeMap<String, String>();
+		for (int i = 0; i < 10; i++) {
+			TransactionArchive archive = LoggingTestSupport.createArchive(this.beanFactory, 3);
+			if (i % 2 == 0) {
+				LoggingTestSupport.complete(transactionLogger, archive);
+			} else {
+				this.prepare(transactionLogger, archive);
+				expected.put(archive.getXid().toString(), LoggingTestSupport.describe(archive));
+			}
+		}
+
+		transactionLogger.syncMasterAndSlaver();
+		transactionLogger.swapMasterAndSlaver();
+
+		final List<VirtualLoggingRecord> recordList = new ArrayList<VirtualLoggingRecord>();
+		transactionLogger.traversal(new VirtualLoggingListener() {
+			public void recvOperation(VirtualLoggingRecord record) {
+				recordList.add(record);
+			}
+		});
+		Assert.assertEquals(expected.size(), recordList.size());
+		for (int i = 0; i < recordList.size(); i++) {
+			Assert.assertEquals(VirtualLoggingSystem.OPERATOR_CREATE, recordList.get(i).getOperator());
+		}
+		Assert.assertEquals(expected, LoggingTestSupport.recover(transactionLogger));
+		transactionLogger.shutdown();
+
+		SampleTransactionLogger restarted = this.createLogger("delta", true);
+		Assert.assertEquals(expected, LoggingTestSupport.recover(restarted));
+	}
+
+	@Test
+	public void testConcurrentParticipantUpdates() throws Exception {
+		this.checkConcurrentParticipantUpdates("full", false, 0);
+		this.checkConcurrentParticipantUpdates("delta", true, 0);
+		this.checkConcurrentParticipantUpdates("buffer", true, 1024);
+	}
+
+	/**
+	 * Mirrors the fork/join of CommonTransactionStrategy: the native and the remote branches of one transaction are
+	 * prepared and committed by two threads at the same time, each thread touching its own half of the branches only.
+	 */
+	private void checkConcurrentParticipantUpdates(String directory, boolean deltaRecords, int ringBufferSize)
+			throws Exception {
+		final SampleTransactionLogger transactionLogger = this.createLogger(directory, deltaRecords, ringBufferSize);
+		final List<TransactionArchive> archiveList = new ArrayList<TransactionArchive>();
+		for (int i = 0; i < 200; i++) {
+			TransactionArchive archive = LoggingTestSupport.createArchive(this.beanFactory, 8);
+			archive.setStatus(Status.STATUS_COMMITTING);
+			transactionLogger.createTransaction(archive);
+			archiveList.add(archive);
+		}
+
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		final List<Throwable> errorList = new ArrayList<Throwable>();
+		Thread[] threads = new Thread[2];
+		for (int i = 0; i < threads.length; i++) {
+			final int half = i;
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						for (int j = 0; j < archiveList.size(); j++) {
+							List<XAResourceArchive> resourceList = archiveList.get(j).getRemoteResources();
+							List<XAResourceArchive> branchList = resourceList.subList(half * 4, half * 4 + 4);
+							barrier.await();
+							for (int k = 0; k < branchList.size(); k++) {
+								branchList.get(k).setVote(XAResource.XA_OK);
+								transactionLogger.updateParticipant(branchList.get(k));
+							}
+							for (int k = 0; k < branchList.size(); k++) {
+								branchList.get(k).setCommitted(true);
+								branchList.get(k).setCompleted(j % 2 == 0 || k % 2 == 0);
+							}
+							transactionLogger.updateParticipants(branchList);
+						}
+					} catch (Throwable error) {
+						synchronized (errorList) {
+							errorList.add(error);
+						}
+						barrier.reset();
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		Assert.assertEquals(new ArrayList<Throwable>(), errorList);
+
+		Map<String, String> expected = new TreeMap<String, String>();
+		for (int i = 0; i < archiveList.size(); i++) {
+			TransactionArchive archive = archiveList.get(i);
+			expected.put(archive.getXid().toString(), LoggingTestSupport.describe(archive));
+		}
+		transactionLogger.shutdown();
+
+		SampleTransactionLogger restarted = this.createLogger(directory, deltaRecords, ringBufferSize);
+		Assert.assertEquals(expected, LoggingTestSupport.recover(restarted));
+	}
+
+	/* prepares the branches one by one, then commits the first half of them. */
+	private void prepare(SampleTransactionLogger transactionLogger, TransactionArchive archive) {
+		transactionLogger.createTransaction(archive);
+		List<XAResourceArchive> resourceList = archive.getRemoteResources();
+		for (int i = 0; i < resourceList.size(); i++) {
+			XAResourceArchive resourceArchive = resourceList.get(i);
+			resourceArchive.setVote(i % 3 == 2 ? XAResource.XA_RDONLY : XAResource.XA_OK);
+			resourceArchive.setReadonly(i % 3 == 2);
+			transactionLogger.updateParticipant(resourceArchive);
+		}
+
+		archive.setStatus(Status.STATUS_PREPARED);
+		archive.setVote(XAResource.XA_OK);
+		transactionLogger.updateTransaction(archive);
+		archive.setStatus(Status.STATUS_COMMITTING);
+		transactionLogger.updateTransaction(archive);
+
+		List<XAResourceArchive> committedList = resourceList.subList(0, resourceList.size() / 2);
+		for (int i = 0; i < committedList.size(); i++) {
+			committedList.get(i).setCommitted(true);
+			committedList.get(i).setCompleted(true);
+		}
+		transactionLogger.updateParticipants(committedList);
+	}
+
+	private long getModifiedBytes(SampleTransactionLogger transactionLogger) {
+		final long[] bytes = new long[1];
+		transactionLogger.traversal(new VirtualLoggingListener() {
+			public void recvOperation(VirtualLoggingRecord record) {
+				if (record.getOperator() == VirtualLoggingSystem.OPERATOR_MOFIFY) {
+					bytes[0] += record.getValue().length;
+				} // end-if
+			}
+		});
+		return bytes[0];
+	}
+
+	private SampleTransactionLogger createLogger(String directory, boolean deltaRecords) {
+		return this.createLogger(directory, deltaRecords, 0);
+	}
+
+	private SampleTransactionLogger createLogger(String directory, boolean deltaRecords, int ringBufferSize) {
+		SampleTransactionLogger transactionLogger = new SampleTransactionLogger();
+		transactionLogger.setRingBufferSize(ringBufferSize);
+		transactionLogger.setBeanFactory(this.beanFactory);
+		transactionLogger.setDirectory(new File(this.folder.getRoot(), directory));
+		transactionLogger.setDeltaRecords(deltaRecords);
+		transactionLogger.setEndpoint(LoggingTestSupport.ENDPOINT);
+		this.loggerList.add(transactionLogger);
+		return transactionLogger;
+	}
+
+}
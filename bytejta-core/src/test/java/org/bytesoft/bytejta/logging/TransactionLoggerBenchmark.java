@@ -0,0 +1,139 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bytesoft.bytejta.TransactionBeanFactoryImpl;
+import org.bytesoft.transaction.archive.TransactionArchive;
+import org.bytesoft.transaction.logging.TransactionLogger;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Compares the throughput of the file log with the jdbc log(an embedded H2 database on the same disk), each transaction
+ * writes the records of a two-phase commit: create, prepared branches, committed, forget. It is not run by default:
+ *
+ * <pre>
+ * mvn test -pl bytejta-core -Dtest=TransactionLoggerBenchmark \
+ *     -Dbytejta.benchmark.threads=8 -Dbytejta.benchmark.transactions=5000
+ * </pre>
+ *
+ * The caller of the jdbc log waits for the commit of its batch, but H2 does not force each commit to disk, a networked
+ * database adds a round trip per batch instead.
+ */
+public class TransactionLoggerBenchmark {
+	static final int THREADS = Integer.getInteger("bytejta.benchmark.threads", 8);
+	static final int TRANSACTIONS = Integer.getInteger("bytejta.benchmark.transactions", 5000); // per thread
+	static final int BRANCHES = 3;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testThroughput() throws Exception {
+		TransactionBeanFactoryImpl beanFactory = LoggingTestSupport.getBeanFactory();
+
+		this.report("file", this.benchmark(beanFactory, this.createFileLogger(beanFactory, false)));
+		this.report("file(group-commit)", this.benchmark(beanFactory, this.createFileLogger(beanFactory, true)));
+		this.report("jdbc(h2)", this.benchmark(beanFactory, this.createJdbcLogger(beanFactory)));
+	}
+
+	private SampleTransactionLogger createFileLogger(TransactionBeanFactoryImpl beanFactory, boolean groupCommit) {
+		SampleTransactionLogger transactionLogger = new SampleTransactionLogger();
+		transactionLogger.setBeanFactory(beanFactory);
+		transactionLogger.setDirectory(new File(this.folder.getRoot(), groupCommit ? "group-commit" : "file"));
+		transactionLogger.setGroupCommit(groupCommit);
+		transactionLogger.setEndpoint(LoggingTestSupport.ENDPOINT);
+		return transactionLogger;
+	}
+
+	private JdbcTransactionLogger createJdbcLogger(TransactionBeanFactoryImpl beanFactory) throws Exception {
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL(String.format("jdbc:h2:%s", new File(this.folder.getRoot(), "bytejta").getAbsolutePath()));
+		Connection conn = dataSource.getConnection();
+		Statement stmt = conn.createStatement();
+		stmt.execute(JdbcTransactionLoggerTest.TABLE_DDL);
+		stmt.close();
+		conn.close();
+
+		JdbcTransactionLogger transactionLogger = new JdbcTransactionLogger();
+		transactionLogger.setBeanFactory(beanFactory);
+		transactionLogger.setDataSource(dataSource);
+		transactionLogger.setEndpoint(LoggingTestSupport.ENDPOINT);
+		return transactionLogger;
+	}
+
+	/**
+	 * @return the elapsed nanos of all the threads.
+	 */
+	private long benchmark(final TransactionBeanFactoryImpl beanFactory, final TransactionLogger transactionLogger)
+			throws Exception {
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final CountDownLatch stopLatch = new CountDownLatch(THREADS);
+		final AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+		for (int i = 0; i < THREADS; i++) {
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						startLatch.await();
+						for (int j = 0; j < TRANSACTIONS; j++) {
+							TransactionArchive archive = LoggingTestSupport.createArchive(beanFactory, BRANCHES);
+							LoggingTestSupport.complete(transactionLogger, archive);
+						}
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					} catch (RuntimeException rex) {
+						error.set(rex);
+					} finally {
+						stopLatch.countDown();
+					}
+				}
+			});
+			thread.start();
+		}
+
+		long startNanos = System.nanoTime();
+		startLatch.countDown();
+		stopLatch.await();
+		long elapsedNanos = System.nanoTime() - startNanos;
+
+		if (transactionLogger instanceof SampleTransactionLogger) {
+			((SampleTransactionLogger) transactionLogger).shutdown();
+		} else {
+			((JdbcTransactionLogger) transactionLogger).shutdown();
+		}
+
+		if (error.get() != null) {
+			throw error.get();
+		}
+		return elapsedNanos;
+	}
+
+	private void report(String name, long elapsedNanos) {
+		long transactions = (long) THREADS * TRANSACTIONS;
+		long throughput = transactions * 1000000000L / Math.max(1, elapsedNanos);
+		System.out.println(String.format("%-20s threads= %s, transactions= %s, elapsed= %sms, throughput= %s tx/s",
+				name, THREADS, transactions, elapsedNanos / 1000000L, throughput));
+	}
+
+}
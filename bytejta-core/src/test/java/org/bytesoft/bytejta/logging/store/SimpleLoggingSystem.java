@@ -0,0 +1,60 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.io.File;
+
+import javax.transaction.xa.Xid;
+
+import org.bytesoft.common.utils.ByteUtils;
+import org.bytesoft.transaction.logging.store.VirtualLoggingKey;
+import org.bytesoft.transaction.xa.XidFactory;
+
+public class SimpleLoggingSystem extends VirtualLoggingSystemImpl {
+
+	public SimpleLoggingSystem(File directory) {
+		this.setDirectory(directory);
+	}
+
+	public static Xid createXid(int key) {
+		byte[] keyByteArray = new byte[XidFactory.GLOBAL_TRANSACTION_LENGTH];
+		System.arraycopy(ByteUtils.intToByteArray(key), 0, keyByteArray, 0, 4);
+		VirtualLoggingKey xid = new VirtualLoggingKey();
+		xid.setGlobalTransactionId(keyByteArray);
+		return xid;
+	}
+
+	public File getDefaultDirectory() {
+		return this.getDirectory();
+	}
+
+	public int getMajorVersion() {
+		return 0;
+	}
+
+	public int getMinorVersion() {
+		return 8;
+	}
+
+	public String getLoggingIdentifier() {
+		return "org.bytesoft.bytejta.logging.simple";
+	}
+
+	public String getLoggingFilePrefix() {
+		return "simple-";
+	}
+
+}
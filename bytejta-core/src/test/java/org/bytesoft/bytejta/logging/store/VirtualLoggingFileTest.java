@@ -0,0 +1,223 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.bytesoft.common.utils.ByteUtils;
+import org.bytesoft.transaction.logging.store.VirtualLoggingSystem;
+import org.bytesoft.transaction.logging.store.VirtualLoggingView;
+import org.bytesoft.transaction.logging.store.VirtualLoggingViewListener;
+import org.bytesoft.transaction.xa.XidFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class VirtualLoggingFileTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+	private VirtualLoggingFile logging;
+
+	@Before
+	public void setUp() throws IOException {
+		this.file = new File(this.folder.getRoot(), "bytejta1.log");
+		this.logging = this.openLogging();
+	}
+
+	@After
+	public void tearDown() {
+		this.logging.closeQuietly();
+	}
+
+	@Test
+	public void testIntactFileNotTruncated() throws IOException {
+		this.logging.write(createRecord(1, 32));
+		this.logging.write(createRecord(2, 32));
+		long end = this.logging.getEndIndex();
+
+		this.restart();
+
+		Assert.assertEquals(0, this.logging.truncateTornTail());
+		Assert.assertEquals(end, this.logging.getEndIndex());
+		Assert.assertEquals(2, this.countRecords());
+	}
+
+	@Test
+	public void testCorruptedTailTruncated() throws IOException {
+		this.logging.write(createRecord(1, 32));
+		this.logging.write(createRecord(2, 32));
+		long position = this.logging.getEndIndex();
+		this.logging.write(createRecord(3, 32));
+		long end = this.logging.getEndIndex();
+		this.logging.put(position + VirtualLoggingViewImpl.HEADER_LENGTH, new byte[] { (byte) 0xFF, (byte) 0xFF });
+
+		this.restart();
+
+		Assert.assertEquals(end - position, this.logging.truncateTornTail());
+		Assert.assertEquals(position, this.logging.getEndIndex());
+		Assert.assertEquals(2, this.countRecords());
+	}
+
+	@Test
+	public void testUnwrittenTailTruncated() throws IOException {
+		this.logging.write(createRecord(1, 32));
+		long position = this.logging.getEndIndex();
+		this.logging.write(createRecord(2, 32));
+		this.logging.write(createRecord(3, 32));
+		long end = this.logging.getEndIndex();
+		this.logging.put(position, new byte[(int) (end - position)]); // end index flushed, records not
+
+		this.restart();
+
+		Assert.assertEquals(end - position, this.logging.truncateTornTail());
+		Assert.assertEquals(position, this.logging.getEndIndex());
+		Assert.assertEquals(1, this.countRecords());
+	}
+
+	@Test
+	public void testStaleRecordInTornTailIgnored() throws IOException {
+		this.logging.write(createRecord(1, 32));
+		long position = this.logging.getEndIndex();
+		byte[] stale = this.logging.encode(createRecord(9, 16));
+		byte[] torn = createRecord(2, stale.length);
+		System.arraycopy(stale, 0, torn, VirtualLoggingViewImpl.HEADER_LENGTH, stale.length);
+		this.logging.write(torn);
+		long end = this.logging.getEndIndex();
+		this.logging.put(position, new byte[] { (byte) 0xFF });
+
+		this.restart();
+
+		Assert.assertEquals(end - position, this.logging.truncateTornTail());
+		Assert.assertEquals(1, this.countRecords());
+	}
+
+	@Test
+	public void testCorruptionInTheMiddleRejected() throws IOException {
+		long position = this.logging.getEndIndex();
+		this.logging.write(createRecord(1, 32));
+		this.logging.write(createRecord(2, 32));
+		this.logging.write(createRecord(3, 32));
+		long end = this.logging.getEndIndex();
+		this.logging.put(position + VirtualLoggingViewImpl.HEADER_LENGTH, new byte[] { (byte) 0xFF, (byte) 0xFF });
+
+		this.restart();
+
+		try {
+			this.logging.truncateTornTail();
+			Assert.fail();
+		} catch (IllegalStateException ex) {
+			Assert.assertEquals(end, this.logging.getEndIndex());
+		}
+	}
+
+	@Test
+	public void testRecordsBeforeStartIndexNotChecked() throws IOException {
+		long position = this.logging.getEndIndex();
+		this.logging.write(createRecord(1, 32));
+		long checkpoint = this.logging.getEndIndex();
+		this.logging.write(createRecord(2, 32));
+		this.logging.put(position + VirtualLoggingViewImpl.HEADER_LENGTH, new byte[] { (byte) 0xFF, (byte) 0xFF });
+
+		this.restart();
+
+		Assert.assertEquals(0, this.logging.truncateTornTail(checkpoint));
+	}
+
+	@Test
+	public void testNewerVersionNotDowngraded() throws IOException {
+		this.logging.closeQuietly();
+		this.file = new File(this.folder.getRoot(), "bytejta2.log");
+		this.logging = this.openLogging(8, 8);
+		this.logging.write(createRecord(1, 32));
+		this.logging.closeQuietly();
+
+		this.logging = this.openLogging(7, 8);
+		Assert.assertEquals(1, this.countRecords());
+		this.logging.closeQuietly();
+
+		try {
+			this.logging = this.openLogging(7, 7);
+			Assert.fail();
+		} catch (IllegalStateException ex) {
+			this.logging = this.openLogging(8, 8);
+		}
+	}
+
+	@Test
+	public void testOlderVersionUpgraded() throws IOException {
+		this.logging.closeQuietly();
+		this.file = new File(this.folder.getRoot(), "bytejta2.log");
+		this.logging = this.openLogging(6, 6);
+		this.logging.closeQuietly();
+
+		this.logging = this.openLogging(7, 8);
+		this.logging.closeQuietly();
+
+		try {
+			this.logging = this.openLogging(6, 6);
+			Assert.fail();
+		} catch (IllegalStateException ex) {
+			this.logging = this.openLogging(7, 7);
+		}
+	}
+
+	private void restart() throws IOException {
+		this.logging.closeQuietly();
+		this.logging = this.openLogging();
+	}
+
+	private VirtualLoggingFile openLogging() throws IOException {
+		return this.openLogging(VirtualLoggingFile.DEFAULT_MINOR_VERSION, VirtualLoggingFile.DEFAULT_MINOR_VERSION);
+	}
+
+	private VirtualLoggingFile openLogging(int minor, int maximum) throws IOException {
+		VirtualLoggingFile logging = new VirtualLoggingFile(this.file, VirtualLoggingFile.DEFAULT_MAJOR_VERSION, minor);
+		logging.setMinimumMinorVersion(Math.min(minor, 6));
+		logging.setMaximumMinorVersion(maximum);
+		logging.setIdentifier("org.bytesoft.bytejta.logging".getBytes());
+		logging.setFramed(true);
+		logging.initialize(true);
+		return logging;
+	}
+
+	private int countRecords() {
+		final int[] count = new int[1];
+		this.logging.traversal(new VirtualLoggingViewListener() {
+			public void recvOperation(VirtualLoggingView view) {
+				count[0]++;
+			}
+		});
+		return count[0];
+	}
+
+	static byte[] createRecord(int key, int size) {
+		byte[] byteArray = new byte[VirtualLoggingViewImpl.HEADER_LENGTH + size];
+		System.arraycopy(ByteUtils.intToByteArray(key), 0, byteArray, 0, 4);
+		byteArray[XidFactory.GLOBAL_TRANSACTION_LENGTH] = (byte) VirtualLoggingSystem.OPERATOR_CREATE;
+		System.arraycopy(ByteUtils.intToByteArray(size), 0, byteArray, XidFactory.GLOBAL_TRANSACTION_LENGTH + 1, 4);
+		for (int i = VirtualLoggingViewImpl.HEADER_LENGTH; i < byteArray.length; i++) {
+			byteArray[i] = (byte) (key + i);
+		}
+		return byteArray;
+	}
+
+}
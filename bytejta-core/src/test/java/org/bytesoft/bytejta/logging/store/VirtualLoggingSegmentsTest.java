@@ -0,0 +1,163 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.transaction.xa.Xid;
+
+import org.bytesoft.transaction.logging.store.VirtualLoggingView;
+import org.bytesoft.transaction.logging.store.VirtualLoggingViewListener;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class VirtualLoggingSegmentsTest {
+	static final int SEGMENT_SIZE = 1024 * 4;
+	static final int VALUE_SIZE = 900; // four records a segment
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private SimpleLoggingSystem loggingSystem;
+	private VirtualLoggingIndex index;
+	private VirtualLoggingSegments segments;
+
+	@Before
+	public void setUp() throws IOException {
+		this.loggingSystem = new SimpleLoggingSystem(this.folder.getRoot());
+		this.loggingSystem.setFramed(true);
+		this.segments = this.openSegments();
+	}
+
+	@After
+	public void tearDown() {
+		this.segments.close();
+	}
+
+	@Test
+	public void testDeleteRetainedWhileOlderSegmentHoldsDeadRecords() throws IOException {
+		this.create(1, 2, 3, 4); // segment 1, one dead record is below the garbage ratio
+		this.create(5);
+		this.delete(1);
+		this.create(6, 7, 8); // segment 2
+		this.create(9);
+		this.delete(5, 6, 7); // segment 3, active
+
+		this.segments.compact();
+		Assert.assertEquals(3, this.countSegments());
+
+		this.restart();
+
+		Assert.assertFalse(this.index.contains(SimpleLoggingSystem.createXid(1)));
+		for (int key = 2; key <= 4; key++) {
+			Assert.assertTrue(this.index.contains(SimpleLoggingSystem.createXid(key)));
+		}
+		Assert.assertFalse(this.index.contains(SimpleLoggingSystem.createXid(5)));
+		Assert.assertTrue(this.index.contains(SimpleLoggingSystem.createXid(8)));
+		Assert.assertTrue(this.index.contains(SimpleLoggingSystem.createXid(9)));
+	}
+
+	@Test
+	public void testDeleteDroppedOnceOlderSegmentIsGone() throws IOException {
+		this.create(1, 2, 3, 4); // segment 1, all dead
+		this.create(5);
+		this.delete(1, 2, 3, 4);
+		this.create(6, 7, 8); // segment 2, the deletes are dead once segment 1 is removed
+		this.create(9, 10);
+		this.delete(5, 6); // segment 3, active
+
+		this.segments.compact();
+		Assert.assertEquals(2, this.countSegments());
+		Assert.assertEquals(2 + 4, this.countRecords());
+
+		this.restart();
+
+		Assert.assertEquals(4, this.index.size());
+		for (int key = 1; key <= 6; key++) {
+			Assert.assertFalse(this.index.contains(SimpleLoggingSystem.createXid(key)));
+		}
+	}
+
+	@Test
+	public void testActiveSegmentNotCompacted() throws IOException {
+		this.create(1, 2);
+		this.delete(1, 2);
+
+		this.segments.compact();
+
+		this.restart();
+		Assert.assertEquals(0, this.index.size());
+		Assert.assertEquals(1, this.countSegments());
+	}
+
+	private void create(int... keys) {
+		for (int i = 0; i < keys.length; i++) {
+			Xid xid = SimpleLoggingSystem.createXid(keys[i]);
+			this.write(VirtualLoggingRecords.createCreateRecord(xid, new byte[VALUE_SIZE]));
+		}
+	}
+
+	private void delete(int... keys) {
+		for (int i = 0; i < keys.length; i++) {
+			this.write(VirtualLoggingRecords.createDeleteRecord(SimpleLoggingSystem.createXid(keys[i])));
+		}
+	}
+
+	private void write(byte[] byteArray) {
+		this.index.register(byteArray, this.segments.write(byteArray));
+	}
+
+	private int countRecords() {
+		final int[] count = new int[1];
+		this.segments.traversalViews(new VirtualLoggingViewListener() {
+			public void recvOperation(VirtualLoggingView view) {
+				count[0]++;
+			}
+		});
+		return count[0];
+	}
+
+	private int countSegments() {
+		int count = 0;
+		File[] files = this.folder.getRoot().listFiles();
+		for (int i = 0; i < files.length; i++) {
+			String name = files[i].getName();
+			count += name.endsWith(VirtualLoggingSegments.SEGMENT_SUFFIX) ? 1 : 0;
+		}
+		return count;
+	}
+
+	private void restart() throws IOException {
+		this.segments.close();
+		this.segments = this.openSegments();
+	}
+
+	private VirtualLoggingSegments openSegments() throws IOException {
+		this.index = new VirtualLoggingIndex();
+		VirtualLoggingSegments loggingSegments = new VirtualLoggingSegments(this.loggingSystem, this.index,
+				this.folder.getRoot());
+		loggingSegments.setSegmentSize(SEGMENT_SIZE);
+		loggingSegments.setGarbageRatio(0.5);
+		loggingSegments.initialize();
+		return loggingSegments;
+	}
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2014-2016 yangming.liu<bytefox@126.com>.
+ *
+ * This copyrighted material is made available to anyone wishing to use, modify,
+ * copy, or redistribute it subject to the terms and conditions of the GNU
+ * Lesser General Public License, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this distribution; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.bytesoft.bytejta.logging.store;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class VirtualLoggingSystemImplTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test(expected = IllegalStateException.class)
+	public void testCheckpointOfSegmentsRejected() throws IOException {
+		SimpleLoggingSystem loggingSystem = new SimpleLoggingSystem(this.folder.getRoot());
+		loggingSystem.setSegmented(true);
+		loggingSystem.setCheckpointInterval(60);
+		loggingSystem.construct();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testLockFreeAppendOfSegmentsRejected() throws IOException {
+		SimpleLoggingSystem loggingSystem = new SimpleLoggingSystem(this.folder.getRoot());
+		loggingSystem.setSegmented(true);
+		loggingSystem.setLockFree(true);
+		loggingSystem.construct();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testLockFreeAppendOfGroupCommitRejected() throws IOException {
+		SimpleLoggingSystem loggingSystem = new SimpleLoggingSystem(this.folder.getRoot());
+		loggingSystem.setGroupCommit(true);
+		loggingSystem.setLockFree(true);
+		loggingSystem.construct();
+	}
+
+	@Test
+	public void testRejectedBeforeFilesCreated() {
+		SimpleLoggingSystem loggingSystem = new SimpleLoggingSystem(this.folder.getRoot());
+		loggingSystem.setSegmented(true);
+		loggingSystem.setCheckpointInterval(60);
+		try {
+			loggingSystem.construct();
+			Assert.fail();
+		} catch (IOException ex) {
+			Assert.fail();
+		} catch (IllegalStateException ex) {
+			Assert.assertEquals(0, this.folder.getRoot().list().length);
+		}
+	}
+
+}